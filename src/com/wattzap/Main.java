@@ -20,6 +20,7 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.EventQueue;
 import java.awt.Toolkit;
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 
@@ -43,11 +44,14 @@ import com.wattzap.model.UserPreferences;
 import com.wattzap.model.ant.AdvancedSpeedCadenceListener;
 import com.wattzap.model.ant.Ant;
 import com.wattzap.model.ant.AntListener;
+import com.wattzap.model.ant.AntRecorder;
+import com.wattzap.model.ant.AntReplay;
 import com.wattzap.model.ant.CadenceListener;
 import com.wattzap.model.ant.DummySpeedCadenceListener;
 import com.wattzap.model.ant.HeartRateListener;
 import com.wattzap.model.ant.PowerListener;
 import com.wattzap.model.ant.SpeedListener;
+import com.wattzap.utils.PowerCurveBackfill;
 import com.wattzap.view.AntOdometer;
 import com.wattzap.view.ControlPanel;
 import com.wattzap.view.MainFrame;
@@ -67,6 +71,9 @@ import com.wattzap.view.VideoPlayer;
 public class Main implements Runnable {
 	private static Logger logger = LogManager.getLogger("Main");
 	private final static UserPreferences userPrefs = UserPreferences.INSTANCE;
+	private static File antRecord = null;
+	private static File antReplay = null;
+	private static double replaySpeed = 1;
 
 	public static void main(String[] args) {
 		// Debug
@@ -91,9 +98,19 @@ public class Main implements Runnable {
 		
 
 		if (args.length > 0) {
-			for (String s: args) {
+			for (int i = 0; i < args.length; i++) {
+				String s = args[i];
 				if ("-R".equals(s)) {
 					UserPreferences.INSTANCE.factoryReset();
+				} else if ("-A".equals(s) && i + 1 < args.length) {
+					// record ANT messages
+					antRecord = new File(args[++i]);
+				} else if ("-P".equals(s) && i + 1 < args.length) {
+					// replay ANT messages instead of using the stick
+					antReplay = new File(args[++i]);
+				} else if ("-X".equals(s) && i + 1 < args.length) {
+					// replay speed, 0 as fast as possible
+					replaySpeed = Double.parseDouble(args[++i]);
 				}
 	        }
 		}
@@ -114,6 +131,7 @@ public class Main implements Runnable {
 		logger.info("Setting log level => " + level.toString());
 
 		logger.info("Database Version " + userPrefs.getDBVersion());
+		PowerCurveBackfill.start();
 		try {
 			for (LookAndFeelInfo info : UIManager.getInstalledLookAndFeels()) {
 				if ("Nimbus".equals(info.getName())) {
@@ -173,7 +191,24 @@ public class Main implements Runnable {
 				AntListener listener = new PowerListener();
 				antListeners.put(listener.getName(), listener);
 			}
-			new Ant(antListeners).register();
+			if (antReplay != null) {
+				new AntReplay(antReplay, antListeners, replaySpeed).register();
+			} else {
+				Ant ant = new Ant(antListeners);
+				if (antRecord != null) {
+					final AntRecorder recorder = new AntRecorder(antRecord);
+					ant.setRecorder(recorder);
+					// the application is left with System.exit()
+					Runtime.getRuntime().addShutdownHook(
+							new Thread("ANT Recorder") {
+								@Override
+								public void run() {
+									recorder.close();
+								}
+							});
+				}
+				ant.register();
+			}
 			odo = new AntOdometer();
 		} catch (Exception e) {
 			JOptionPane.showMessageDialog(frame, "ANT+ " + e.getMessage(),
@@ -0,0 +1,314 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.controller;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers messages to a callback on its own executor instead of the
+ * sender's thread, so a slow view doesn't hold up the ANT reader.
+ *
+ * Messages wait in a bounded queue. When it is full the oldest message is
+ * dropped, messages registered with COALESCE replace a message of the same
+ * type still waiting in the queue instead, so a busy view only sees the
+ * latest SPEED. Messages registered with KEEP are never dropped, the queue
+ * grows past its capacity for them.
+ *
+ * Pooled messages are retained while they are queued and released once the
+ * callback has returned.
+ *
+ * Created by MessageBus.registerAsync(), one per callback.
+ */
+public class AsyncSubscriber implements MessageCallback, Runnable {
+	public enum Overflow {
+		DROP_OLDEST, COALESCE, KEEP
+	}
+
+	private final MessageCallback target;
+	private final Executor executor;
+	private final int capacity;
+	private final EnumMap<Messages, Overflow> messages = new EnumMap<Messages, Overflow>(
+			Messages.class);
+	private final ArrayDeque<Pending> queue;
+	// delivered entries for reuse, at most capacity of them
+	private final ArrayDeque<Pending> free;
+	// the queued entry of each COALESCE message type
+	private final EnumMap<Messages, Pending> waiting = new EnumMap<Messages, Pending>(
+			Messages.class);
+	private boolean scheduled = false;
+
+	// statistics, guarded by queue
+	private int maxDepth = 0;
+	private long delivered = 0;
+	private long dropped = 0;
+	private long coalesced = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+
+	private static Logger logger = LogManager.getLogger("AsyncSubscriber");
+
+	private static class Pending {
+		Messages m;
+		Overflow overflow;
+		Object o;
+		long queued;
+	}
+
+	AsyncSubscriber(MessageCallback target, Executor executor, int capacity) {
+		this.target = target;
+		this.executor = executor;
+		this.capacity = Math.max(capacity, 1);
+		queue = new ArrayDeque<Pending>(this.capacity);
+		free = new ArrayDeque<Pending>(this.capacity);
+	}
+
+	void add(Messages m, Overflow overflow) {
+		synchronized (queue) {
+			messages.put(m, overflow);
+		}
+	}
+
+	/**
+	 * Stops delivering a message type, anything queued for it is discarded.
+	 *
+	 * @return false if the message type wasn't registered
+	 */
+	boolean remove(Messages m) {
+		synchronized (queue) {
+			if (messages.remove(m) == null) {
+				return false;
+			}
+			for (Iterator<Pending> it = queue.iterator(); it.hasNext();) {
+				Pending p = it.next();
+				if (p.m == m) {
+					it.remove();
+					release(p.o);
+				}
+			}
+			waiting.remove(m);
+			return true;
+		}
+	}
+
+	boolean isEmpty() {
+		synchronized (queue) {
+			return messages.isEmpty();
+		}
+	}
+
+	/**
+	 * Called on the sender's thread, queues the message
+	 */
+	@Override
+	public void callback(Messages m, Object o) {
+		long now = System.nanoTime();
+		synchronized (queue) {
+			Overflow overflow = messages.get(m);
+			if (overflow == null) {
+				// unregistered while the sender was iterating
+				return;
+			}
+
+			if (overflow == Overflow.COALESCE) {
+				Pending p = waiting.get(m);
+				if (p != null) {
+					// keeps its place and queued time, latest value wins
+					retain(o);
+					release(p.o);
+					p.o = o;
+					coalesced++;
+					return;
+				}
+			}
+
+			Pending p = null;
+			if (queue.size() >= capacity) {
+				p = dropOldest();
+			}
+			if (p == null) {
+				p = free.poll();
+				if (p == null) {
+					p = new Pending();
+				}
+			}
+			retain(o);
+			p.m = m;
+			p.overflow = overflow;
+			p.o = o;
+			p.queued = now;
+			queue.add(p);
+			if (overflow == Overflow.COALESCE) {
+				waiting.put(m, p);
+			}
+			if (queue.size() > maxDepth) {
+				maxDepth = queue.size();
+			}
+
+			if (!scheduled) {
+				scheduled = true;
+				executor.execute(this);
+			}
+		}
+	}
+
+	/**
+	 * Runs on the executor, delivers everything queued
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			Messages m;
+			Object o;
+			synchronized (queue) {
+				Pending p = queue.poll();
+				if (p == null) {
+					scheduled = false;
+					return;
+				}
+				dequeued(p);
+				m = p.m;
+				o = p.o;
+
+				long latency = System.nanoTime() - p.queued;
+				totalLatency += latency;
+				if (latency > maxLatency) {
+					maxLatency = latency;
+				}
+				delivered++;
+				p.o = null;
+				if (free.size() < capacity) {
+					free.add(p);
+				}
+			}
+
+			try {
+				target.callback(m, o);
+			} catch (RuntimeException e) {
+				// don't let one bad message stop delivery
+				logger.error(target.getClass().getSimpleName() + " " + m + " "
+						+ e.getLocalizedMessage(), e);
+			} finally {
+				release(o);
+			}
+		}
+	}
+
+	/*
+	 * Called with the lock held, removes the oldest message that isn't KEEP
+	 * 
+	 * @return the removed entry for reuse, null if everything queued is KEEP
+	 */
+	private Pending dropOldest() {
+		for (Iterator<Pending> it = queue.iterator(); it.hasNext();) {
+			Pending p = it.next();
+			if (p.overflow != Overflow.KEEP) {
+				it.remove();
+				dequeued(p);
+				release(p.o);
+				dropped++;
+				return p;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Called with the lock held when p leaves the queue
+	 */
+	private void dequeued(Pending p) {
+		if (waiting.get(p.m) == p) {
+			waiting.remove(p.m);
+		}
+	}
+
+	private static void retain(Object o) {
+		if (o instanceof Pooled) {
+			((Pooled) o).retain();
+		}
+	}
+
+	private static void release(Object o) {
+		if (o instanceof Pooled) {
+			((Pooled) o).release();
+		}
+	}
+
+	public MessageCallback getTarget() {
+		return target;
+	}
+
+	public int getDepth() {
+		synchronized (queue) {
+			return queue.size();
+		}
+	}
+
+	public int getMaxDepth() {
+		synchronized (queue) {
+			return maxDepth;
+		}
+	}
+
+	public long getDelivered() {
+		synchronized (queue) {
+			return delivered;
+		}
+	}
+
+	public long getDropped() {
+		synchronized (queue) {
+			return dropped;
+		}
+	}
+
+	public long getCoalesced() {
+		synchronized (queue) {
+			return coalesced;
+		}
+	}
+
+	/**
+	 * @return average time from send to delivery in nanoseconds
+	 */
+	public long getAverageLatency() {
+		synchronized (queue) {
+			return delivered == 0 ? 0 : totalLatency / delivered;
+		}
+	}
+
+	public long getMaxLatency() {
+		synchronized (queue) {
+			return maxLatency;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (queue) {
+			return target.getClass().getSimpleName() + " delivered "
+					+ delivered + ", dropped " + dropped + ", coalesced "
+					+ coalesced + ", depth " + queue.size() + "/" + maxDepth
+					+ ", latency " + (getAverageLatency() / 1000) + "us avg "
+					+ (maxLatency / 1000) + "us max";
+		}
+	}
+}
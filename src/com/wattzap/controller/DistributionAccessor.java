@@ -15,7 +15,7 @@
  */
 package com.wattzap.controller;
 
-import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 
 /**
  * Used by distribution graphs to determine graph key
@@ -24,29 +24,63 @@ import com.wattzap.model.dto.Telemetry;
  * @date 17 April 2014
  */
 public abstract class DistributionAccessor {
+	// getValue() for samples that are never counted
+	public static final int IGNORE = Integer.MIN_VALUE;
+
 	public int scale = 0;
 	public boolean keepZeroes = true;
 
 	/**
+	 * Raw value of the sample, before bucketing. Called from several threads
+	 * when rides are scanned in parallel.
 	 * 
 	 * @param t
-	 * @return value or -1 if it should be ignored
+	 *            ride data
+	 * @param i
+	 *            sample index
+	 * @return value or IGNORE if it should be ignored
 	 */
-	public abstract int getKey(Telemetry t);
-	
+	public abstract int getValue(TelemetrySeries t, int i);
+
+	/**
+	 * Samples only counted when zeroes are kept, when that doesn't just
+	 * depend on the value.
+	 */
+	public boolean isZero(TelemetrySeries t, int i) {
+		return false;
+	}
+
+	/**
+	 * 
+	 * @param t
+	 *            ride data
+	 * @param i
+	 *            sample index
+	 * @return key or -1 if it should be ignored
+	 */
+	public int getKey(TelemetrySeries t, int i) {
+		int v = getValue(t, i);
+		if (v == IGNORE || (!keepZeroes && isZero(t, i))) {
+			return -1;
+		}
+		return getKey(v);
+	}
+
 	/**
 	 * Typical case
 	 * 
 	 * @param v
-	 * @return
+	 *            value from getValue()
+	 * @return key or -1 if it should be ignored
 	 */
-	protected int getKey(int v) {
+	public int getKey(int v) {
 		if (!keepZeroes && v < scale) {
 			return -1;
 		}
 		return (int) v / scale;
 
 	}
+
 	public String getValueLabel(int v) {
 		return "" + (v * scale) + " - " + ((v * scale) + scale);
 	}
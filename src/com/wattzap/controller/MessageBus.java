@@ -15,9 +15,15 @@
  */
 package com.wattzap.controller;
 
-import java.util.EnumMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.swing.SwingUtilities;
 
 /**
  * Message Bus implementation
@@ -37,11 +43,34 @@ import java.util.Map;
  */
 public enum MessageBus {
 	INSTANCE;
-	Map<Messages, HashSet<MessageCallback>> objects;
+
+	/*
+	 * Callbacks for each message, indexed by ordinal. The arrays are never
+	 * modified, register and unregister swap in a new copy under the bus
+	 * lock so send can iterate its snapshot without locking.
+	 */
+	private final AtomicReferenceArray<MessageCallback[]> objects;
+	// callbacks registered with registerAsync and their queues
+	private final Map<MessageCallback, AsyncSubscriber> async = new ConcurrentHashMap<MessageCallback, AsyncSubscriber>();
+
+	/**
+	 * Runs async callbacks on the Swing event thread, for views
+	 */
+	public static final Executor EDT = new Executor() {
+		@Override
+		public void execute(Runnable r) {
+			SwingUtilities.invokeLater(r);
+		}
+	};
 
 	MessageBus() {
-		objects = new EnumMap<Messages, HashSet<MessageCallback>>(
-				Messages.class);
+		// enum statics aren't initialized yet, so no shared constant
+		MessageCallback[] none = new MessageCallback[0];
+		Messages[] messages = Messages.values();
+		objects = new AtomicReferenceArray<MessageCallback[]>(messages.length);
+		for (Messages m : messages) {
+			objects.set(m.ordinal(), none);
+		}
 	}
 
 	/**
@@ -53,33 +82,90 @@ public enum MessageBus {
 	 *            - Callback implementation - classes implement MessageCallback
 	 *            interface.
 	 */
-	public void register(Messages m, MessageCallback o) {
-		HashSet<MessageCallback> listeners;
-		if (objects.containsKey(m)) {
-			listeners = objects.get(m);
-		} else {
-			listeners = new HashSet<MessageCallback>();
-			objects.put(m, listeners);
+	public synchronized void register(Messages m, MessageCallback o) {
+		MessageCallback[] listeners = objects.get(m.ordinal());
+		if (indexOf(listeners, o) >= 0) {
+			return;
 		}
-		listeners.add(o);
+		MessageCallback[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+		copy[listeners.length] = o;
+		objects.set(m.ordinal(), copy);
 	}
 
-	// TODO Implement this
-	public boolean unregister(Messages m, MessageCallback o) {
-		if (objects.containsKey(m)) {
-			HashSet<MessageCallback> listeners = objects.get(m);
-			return listeners.remove(o);
+	/**
+	 * Register a callback to receive messages on its own executor rather
+	 * than the sender's thread. A callback has one queue shared by all the
+	 * messages it registers asynchronously, the executor and capacity are
+	 * taken from the first registration.
+	 * 
+	 * @param m
+	 *            - Message type to register (from Messages enum)
+	 * @param o
+	 *            - Callback implementation
+	 * @param executor
+	 *            - runs the callback, eg. EDT for Swing views
+	 * @param capacity
+	 *            - queued messages before the oldest is dropped
+	 * @param overflow
+	 *            - COALESCE keeps only the latest queued message of this type
+	 */
+	public synchronized void registerAsync(Messages m, MessageCallback o,
+			Executor executor, int capacity, AsyncSubscriber.Overflow overflow) {
+		AsyncSubscriber subscriber = async.get(o);
+		if (subscriber == null) {
+			subscriber = new AsyncSubscriber(o, executor, capacity);
+			async.put(o, subscriber);
+		}
+		subscriber.add(m, overflow);
+		register(m, subscriber);
+	}
+
+	/**
+	 * @return queue statistics for callbacks registered with registerAsync
+	 */
+	public List<AsyncSubscriber> getAsyncSubscribers() {
+		return new ArrayList<AsyncSubscriber>(async.values());
+	}
+
+	public synchronized boolean unregister(Messages m, MessageCallback o) {
+		AsyncSubscriber subscriber = async.get(o);
+		if (subscriber != null && subscriber.remove(m)) {
+			if (subscriber.isEmpty()) {
+				async.remove(o);
+			}
+			o = subscriber;
 		}
-		
-		return false;
-	};
 
+		MessageCallback[] listeners = objects.get(m.ordinal());
+		int i = indexOf(listeners, o);
+		if (i < 0) {
+			return false;
+		}
+		MessageCallback[] copy = new MessageCallback[listeners.length - 1];
+		System.arraycopy(listeners, 0, copy, 0, i);
+		System.arraycopy(listeners, i + 1, copy, i, copy.length - i);
+		objects.set(m.ordinal(), copy);
+		return true;
+	}
+
+	/**
+	 * Calls every callback registered for m on this thread, or queues the
+	 * message for async callbacks. Callbacks registered or unregistered
+	 * during a send take effect from the next send.
+	 */
 	public void send(Messages m, Object o) {
-		HashSet<MessageCallback> listeners = objects.get(m);
-		if (listeners != null) {
-			for (MessageCallback callback : listeners) {
-				callback.callback(m, o);
+		MessageCallback[] listeners = objects.get(m.ordinal());
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].callback(m, o);
+		}
+	}
+
+	private static int indexOf(MessageCallback[] listeners, MessageCallback o) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i].equals(o)) {
+				return i;
 			}
 		}
+		return -1;
 	}
 }
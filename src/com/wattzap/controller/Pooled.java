@@ -0,0 +1,30 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.controller;
+
+/**
+ * A message object its sender fills in again for later messages, see
+ * TelemetryPool.
+ * 
+ * Callbacks may read it while they are called. To keep it afterwards they
+ * must retain() it and release() it when they are done, AsyncSubscriber does
+ * this while the message waits in its queue.
+ */
+public interface Pooled {
+	void retain();
+
+	void release();
+}
@@ -18,7 +18,6 @@ package com.wattzap.controller;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
-import java.util.ArrayList;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -27,7 +26,7 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.wattzap.model.UserPreferences;
-import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.social.SelfLoopsAPI;
 import com.wattzap.utils.TcxWriter;
 import com.wattzap.view.Workouts;
@@ -60,7 +59,7 @@ public class SocialSharingController implements ActionListener {
 	public void actionPerformed(ActionEvent e) {
 		String command = e.getActionCommand();
 		if (selfLoopsUpload.equals(command)) {
-			ArrayList<Telemetry> data = trainingDisplay.getData();
+			TelemetrySeries data = trainingDisplay.getData();
 			if (data == null || data.size() == 0) {
 				JOptionPane.showMessageDialog(mainFrame,
 						userPrefs.getString("noDataUpload"),
@@ -70,7 +69,7 @@ public class SocialSharingController implements ActionListener {
 				return;
 			}
 			TcxWriter writer = new TcxWriter();
-			String fileName = writer.save(data, 0);
+			String fileName = writer.save(data.toList(), 0);
 			
 			try {
 				SelfLoopsAPI.uploadActivity(userPrefs.getSLUser(),
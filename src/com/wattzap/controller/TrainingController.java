@@ -17,7 +17,6 @@ package com.wattzap.controller;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -26,7 +25,7 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.wattzap.model.UserPreferences;
-import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.utils.TcxWriter;
 import com.wattzap.view.Workouts;
@@ -64,7 +63,7 @@ public class TrainingController implements ActionListener {
 	public void actionPerformed(ActionEvent e) {
 		String command = e.getActionCommand();
 		if (save.equals(command)) {
-			ArrayList<Telemetry> data = trainingDisplay.getData();
+			TelemetrySeries data = trainingDisplay.getData();
 			if (data == null || data.size() == 0) {
 				JOptionPane.showMessageDialog(mainFrame,
 						userPrefs.getString("noDataSave"),
@@ -75,9 +74,8 @@ public class TrainingController implements ActionListener {
 			}
 
 			int dialogButton = JOptionPane.YES_NO_OPTION;
-			Telemetry zero = data.get(0);
 			int gpsData = 1;
-			if (zero != null && zero.getLatitude() <= 90) {
+			if (data.getLatitude(0) <= 90) {
 				// gpsData == 0 is Yes
 				gpsData = JOptionPane.showConfirmDialog(mainFrame,
 						userPrefs.getString("saveGPS"),
@@ -85,8 +83,9 @@ public class TrainingController implements ActionListener {
 			}
 			TcxWriter writer = new TcxWriter();
 
-			String fileName = writer.save(data, gpsData);
-			WorkoutData workoutData = TrainingAnalysis.analyze(data);
+			String fileName = writer.save(data.toList(), gpsData);
+			// analyzed as it was recorded
+			WorkoutData workoutData = trainingDisplay.getSummary();
 			workoutData.setTcxFile(fileName);
 			workoutData.setFtp(UserPreferences.INSTANCE.getMaxPower());
 			workoutData.setDescription(trainingDisplay.getName());
@@ -103,8 +102,7 @@ public class TrainingController implements ActionListener {
 				workouts.updateModel();
 			}
 		} else if (analyze.equals(command)) {
-			ArrayList<Telemetry> data = trainingDisplay.getData();
-			WorkoutData wData = TrainingAnalysis.analyze(data);
+			WorkoutData wData = trainingDisplay.getSummary();
 			if (wData != null) {
 				wData.setFtp(UserPreferences.INSTANCE.getMaxPower());
 				analysis.show(wData);
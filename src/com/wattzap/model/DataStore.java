@@ -15,6 +15,9 @@
 */
 package com.wattzap.model;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -22,7 +25,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.crypto.Cipher;
@@ -54,6 +62,60 @@ public class DataStore {
 
 	private Logger logger = LogManager.getLogger("DataStore");
 
+	private static final String SELECT_PROP = "SELECT v FROM props WHERE username = ? and k = ?";
+	private static final String COUNT_PROP = " SELECT COUNT(*) FROM props WHERE username = ? and k = ?";
+	private static final String INSERT_PROP = "INSERT INTO props (v, username, k) values(  ?, ?, ?)";
+	private static final String UPDATE_PROP = "UPDATE props SET v=? WHERE username=? and k=?";
+	// set while workouts from before dbVersion 1.4 have no power curve
+	public static final String CURVE_BACKFILL = "curveBackfill";
+
+	// prepared once and reused until the store is closed, keyed by SQL
+	private final HashMap<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+	private final HashMap<String, StatementStats> stats = new HashMap<String, StatementStats>();
+
+	/**
+	 * Execution count and time for one SQL statement
+	 */
+	public static class StatementStats {
+		private long prepares = 0;
+		private long count = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+
+		private StatementStats() {
+		}
+
+		private StatementStats(StatementStats st) {
+			prepares = st.prepares;
+			count = st.count;
+			totalNanos = st.totalNanos;
+			maxNanos = st.maxNanos;
+		}
+
+		public long getPrepares() {
+			return prepares;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "prepared " + prepares + ", executed " + count + ", total "
+					+ (totalNanos / 1000000) + "ms, max "
+					+ (maxNanos / 1000000) + "ms";
+		}
+	}
+
 	public DataStore(String wd, String key) {
 		SecretKeyFactory keyGenerator;
 		try {
@@ -97,15 +159,29 @@ public class DataStore {
 			if (dbVersion == null) {
 				s2 = conn.createStatement();
 				s2.execute(WorkoutData.dbTable12());
+				s2.execute(WorkoutData.dbTablePowerCurves());
 
-				insertProp("", "dbVersion", "1.3");
-			} else if (dbVersion.equals("1.2")){
-				s2 = conn.createStatement();
-
-				// s2.execute("DROP TABLE workouts");
-				//System.out.println("adding column");
-				s2.execute("ALTER TABLE workouts ADD COLUMN source INTEGER  DEFAULT 1");
-				insertProp("", "dbVersion", "1.3");
+				insertProp("", "dbVersion", "1.4");
+			} else {
+				if (dbVersion.equals("1.2")) {
+					s2 = conn.createStatement();
+
+					// s2.execute("DROP TABLE workouts");
+					//System.out.println("adding column");
+					s2.execute("ALTER TABLE workouts ADD COLUMN source INTEGER  DEFAULT 1");
+					insertProp("", "dbVersion", "1.3");
+					dbVersion = "1.3";
+				}
+				if (dbVersion.equals("1.3")) {
+					if (s2 == null) {
+						s2 = conn.createStatement();
+					}
+					// curves for existing workouts are filled in from their
+					// files in the background, see PowerCurveBackfill
+					s2.execute(WorkoutData.dbTablePowerCurves());
+					insertProp("", CURVE_BACKFILL, "pending");
+					insertProp("", "dbVersion", "1.4");
+				}
 			}
 
 		} catch (SQLException sqle) {
@@ -130,71 +206,120 @@ public class DataStore {
 	}
 
 	/**
-	 * Save workout values to database
+	 * Save workout values and power curve to database
 	 * 
 	 * @param user
 	 * @param data
 	 */
-	public void saveWorkOut(String user, WorkoutData data) {
+	public synchronized void saveWorkOut(String user, WorkoutData data) {
+		saveWorkOuts(user, Collections.singletonList(data));
+	}
+
+	/**
+	 * Save several workouts in one JDBC batch and a single transaction. Used
+	 * by the bulk importer, if the batch fails none of the workouts are
+	 * saved. Power curves are saved in the same transaction and merged into
+	 * the season best for the year of each workout.
+	 * 
+	 * @param user
+	 * @param workouts
+	 * @return true if the workouts were committed, false if the batch was
+	 *         rolled back
+	 */
+	public synchronized boolean saveWorkOuts(String user,
+			List<WorkoutData> workouts) {
+		if (workouts.isEmpty()) {
+			return true;
+		}
+
 		PreparedStatement psInsert = null;
+		boolean autoCommit = true;
+		boolean committed = false;
+		long start = System.nanoTime();
 		try {
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
 
-			psInsert = conn.prepareStatement(WorkoutData.insert());
+			psInsert = prepare(WorkoutData.insert());
+			for (WorkoutData data : workouts) {
+				setInsertValues(psInsert, user, data);
+				psInsert.addBatch();
+			}
+			psInsert.executeBatch();
+			timed(WorkoutData.insert(), start);
 
-			psInsert.setString(1, user);
-			psInsert.setString(2, data.getTcxFile());
-			// Power
-			psInsert.setInt(3, data.getFiveSecondPwr());
-			psInsert.setInt(4, data.getOneMinutePwr());
-			psInsert.setInt(5, data.getFiveMinutePwr());
-			psInsert.setInt(6, data.getTwentyMinutePwr());
-
-			psInsert.setInt(7, data.getQuadraticPower());
-			psInsert.setInt(8, data.getTotalPower());
-			psInsert.setInt(9, data.getMaxPower());
-			psInsert.setInt(10, data.getAvePower());
-			psInsert.setInt(11, data.getFtp());
-
-			psInsert.setInt(12, data.getMaxHR());
-			psInsert.setInt(13, data.getAveHR());
-			psInsert.setInt(14, data.getMinHR());
-			psInsert.setInt(15, data.getFtHR());
-
-			psInsert.setInt(16, data.getMaxCadence());
-			psInsert.setInt(17, data.getAveCadence());
-
-			psInsert.setDouble(18, data.getDistanceMeters());
-			psInsert.setDouble(19, data.getWeight());
-
-			psInsert.setTime(20, new java.sql.Time(data.getTime()));
-			psInsert.setDate(21, new java.sql.Date(data.getDate()));
-			
-			psInsert.setString(22, data.getDescription());
-			psInsert.setInt(23, data.getSource()); // Wattzap
-			/*int i =*/ psInsert.executeUpdate();
+			for (WorkoutData data : workouts) {
+				if (data.getPowerCurve() != null) {
+					writeCurve(user, data.getTcxFile(), data.getPowerCurve());
+					mergeSeasonBest(user, data.getDate(), data.getPowerCurve());
+				}
+			}
 
 			conn.commit();
+			committed = true;
 		} catch (SQLException e) {
 			logger.error(e.getLocalizedMessage());
+			try {
+				conn.rollback();
+			} catch (SQLException e1) {
+				logger.error(e1.getLocalizedMessage());
+			}
 		} finally {
 			try {
 				if (psInsert != null) {
-					psInsert.close();
+					psInsert.clearBatch();
 				}
+				conn.setAutoCommit(autoCommit);
 			} catch (SQLException e) {
 				logger.error(e.getLocalizedMessage());
 			}
 		}
+		return committed;
+	}
+
+	private void setInsertValues(PreparedStatement psInsert, String user,
+			WorkoutData data) throws SQLException {
+		psInsert.setString(1, user);
+		psInsert.setString(2, data.getTcxFile());
+		// Power
+		psInsert.setInt(3, data.getFiveSecondPwr());
+		psInsert.setInt(4, data.getOneMinutePwr());
+		psInsert.setInt(5, data.getFiveMinutePwr());
+		psInsert.setInt(6, data.getTwentyMinutePwr());
+
+		psInsert.setInt(7, data.getQuadraticPower());
+		psInsert.setInt(8, data.getTotalPower());
+		psInsert.setInt(9, data.getMaxPower());
+		psInsert.setInt(10, data.getAvePower());
+		psInsert.setInt(11, data.getFtp());
+
+		psInsert.setInt(12, data.getMaxHR());
+		psInsert.setInt(13, data.getAveHR());
+		psInsert.setInt(14, data.getMinHR());
+		psInsert.setInt(15, data.getFtHR());
+
+		psInsert.setInt(16, data.getMaxCadence());
+		psInsert.setInt(17, data.getAveCadence());
+
+		psInsert.setDouble(18, data.getDistanceMeters());
+		psInsert.setDouble(19, data.getWeight());
+
+		psInsert.setTime(20, new java.sql.Time(data.getTime()));
+		psInsert.setDate(21, new java.sql.Date(data.getDate()));
+
+		psInsert.setString(22, data.getDescription());
+		psInsert.setInt(23, data.getSource()); // Wattzap
 	}
 
 	/**
 	 * Updates any calculated values
 	 */
-	public void updateWorkout(String user, WorkoutData data) {
+	public synchronized void updateWorkout(String user, WorkoutData data) {
 		PreparedStatement psUpdate = null;
+		long start = System.nanoTime();
 		try {
 
-			psUpdate = conn.prepareStatement(WorkoutData.updateAnalysis());
+			psUpdate = prepare(WorkoutData.updateAnalysis());
 
 			// Power
 			psUpdate.setInt(1, data.getFiveSecondPwr());
@@ -220,29 +345,29 @@ public class DataStore {
 			psUpdate.setString(17, data.getTcxFile());
 			
 			psUpdate.executeUpdate();
+			timed(WorkoutData.updateAnalysis(), start);
+
+			if (data.getPowerCurve() != null) {
+				writeCurve(user, data.getTcxFile(), data.getPowerCurve());
+				// the new curve may be lower, rebuild the season on next read
+				dropSeasonBest(user, data.getTcxFile());
+			}
 
 			conn.commit();
 		} catch (SQLException e) {
 			logger.error(e.getLocalizedMessage());
-		} finally {
-			try {
-				if (psUpdate != null) {
-					psUpdate.close();
-				}
-			} catch (SQLException e) {
-				logger.error(e.getLocalizedMessage());
-			}
 		}
 	}	
 
-	public WorkoutData getWorkout(String user, String name) {
+	public synchronized WorkoutData getWorkout(String user, String name) {
 		PreparedStatement s = null;
 		ResultSet rs = null;
 
 		WorkoutData data = null;
 
+		long start = System.nanoTime();
 		try {
-			s = conn.prepareStatement(WorkoutData.selectWorkout());
+			s = prepare(WorkoutData.selectWorkout());
 			s.setString(1, user);
 			s.setString(2, name);
 			rs = s.executeQuery();
@@ -280,59 +405,51 @@ public class DataStore {
 			logger.error(e.getLocalizedMessage());
 		} finally {
 			try {
-				if (s != null) {
-					s.close();
-				}
 				if (rs != null) {
 					rs.close();
 				}
 			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.error(e.getLocalizedMessage());
 			}
+			timed(WorkoutData.selectWorkout(), start);
 		}
 
 		return data;
 	}
 	
-	public WorkoutData deleteWorkout(String user, String name) {
+	public synchronized WorkoutData deleteWorkout(String user, String name) {
 		PreparedStatement s = null;
-		ResultSet rs = null;
 
 		WorkoutData data = null;
 
+		long start = System.nanoTime();
 		try {
-			s = conn.prepareStatement(WorkoutData.delete());
+			dropSeasonBest(user, name);
+			deleteCurve(user, name);
+
+			start = System.nanoTime();
+			s = prepare(WorkoutData.delete());
 			s.setString(1, user);
 			s.setString(2, name);
 			s.executeUpdate();
 		} catch (SQLException e) {
 			logger.error(e.getLocalizedMessage());
 		} finally {
-			try {
-				if (s != null) {
-					s.close();
-				}
-				if (rs != null) {
-					rs.close();
-				}
-			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+			timed(WorkoutData.delete(), start);
 		}
 
 		return data;
 	}
 	
-	public List<WorkoutData> listWorkouts(String user) {
+	public synchronized List<WorkoutData> listWorkouts(String user) {
 		PreparedStatement s = null;
 		ResultSet rs = null;
 
 		List<WorkoutData> workouts = null;
 
+		long start = System.nanoTime();
 		try {
-			s = conn.prepareStatement(WorkoutData.select());
+			s = prepare(WorkoutData.select());
 			s.setString(1, user);
 			// s.setString(2, k);
 			rs = s.executeQuery();
@@ -379,21 +496,255 @@ public class DataStore {
 			logger.error(e.getLocalizedMessage());
 		} finally {
 			try {
-				if (s != null) {
-					s.close();
-				}
 				if (rs != null) {
 					rs.close();
 				}
 			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.error(e.getLocalizedMessage());
 			}
+			timed(WorkoutData.select(), start);
 		}
 
 		return workouts;
 	}
 
+	/**
+	 * @param user
+	 * @param name
+	 *            workout file name
+	 * @return the stored power curve, null if the workout doesn't have one
+	 *         yet
+	 */
+	public synchronized double[] getPowerCurve(String user, String name) {
+		try {
+			return readCurve(user, name);
+		} catch (SQLException e) {
+			logger.error(e.getLocalizedMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Stores the power curve of a workout already in the database, used to
+	 * fill in curves for workouts saved before they were kept. The curve is
+	 * merged into the season best for the workout's year.
+	 * 
+	 * @param user
+	 * @param data
+	 *            workout with its date and power curve set
+	 */
+	public synchronized void savePowerCurve(String user, WorkoutData data) {
+		if (data.getPowerCurve() == null) {
+			return;
+		}
+		try {
+			writeCurve(user, data.getTcxFile(), data.getPowerCurve());
+			mergeSeasonBest(user, data.getDate(), data.getPowerCurve());
+			conn.commit();
+		} catch (SQLException e) {
+			logger.error(e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Workouts saved before power curves were kept, only file name and date
+	 * are set.
+	 * 
+	 * @param user
+	 * @return workouts that have no stored power curve
+	 */
+	public synchronized List<WorkoutData> listWorkoutsWithoutCurve(String user) {
+		List<WorkoutData> workouts = new ArrayList<WorkoutData>();
+		ResultSet rs = null;
+		long start = System.nanoTime();
+		try {
+			PreparedStatement s = prepare(WorkoutData.selectWithoutPowerCurve());
+			s.setString(1, user);
+			rs = s.executeQuery();
+			while (rs.next()) {
+				WorkoutData data = new WorkoutData();
+				data.setTcxFile(rs.getString(1));
+				data.setDate(rs.getDate(2).getTime());
+				workouts.add(data);
+			}
+		} catch (SQLException e) {
+			logger.error(e.getLocalizedMessage());
+		} finally {
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+			} catch (SQLException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+			timed(WorkoutData.selectWithoutPowerCurve(), start);
+		}
+		return workouts;
+	}
+
+	/**
+	 * Best power at each duration over all workouts in a calendar year. The
+	 * merged curve is stored and kept up to date as workouts are saved, if
+	 * it has been dropped (a workout deleted or reanalyzed) it is rebuilt
+	 * from the stored workout curves.
+	 * 
+	 * @param user
+	 * @param year
+	 * @return season best curve, empty if there are no curves that year
+	 */
+	public synchronized double[] getSeasonBest(String user, int year) {
+		String name = WorkoutData.SEASON_PREFIX + year;
+		PreparedStatement s = null;
+		ResultSet rs = null;
+		try {
+			double[] best = readCurve(user, name);
+			if (best != null) {
+				return best;
+			}
+
+			Calendar cal = Calendar.getInstance();
+			cal.clear();
+			cal.set(year, Calendar.JANUARY, 1);
+			long from = cal.getTimeInMillis();
+			cal.set(year + 1, Calendar.JANUARY, 1);
+			long to = cal.getTimeInMillis();
+
+			long start = System.nanoTime();
+			s = prepare(WorkoutData.selectPowerCurves());
+			s.setString(1, user);
+			s.setDate(2, new java.sql.Date(from));
+			s.setDate(3, new java.sql.Date(to));
+			rs = s.executeQuery();
+			best = new double[0];
+			while (rs.next()) {
+				best = merge(best, fromCurveBytes(rs.getBlob(1)));
+			}
+			rs.close();
+			rs = null;
+			timed(WorkoutData.selectPowerCurves(), start);
+
+			writeCurve(user, name, best);
+			conn.commit();
+			return best;
+		} catch (SQLException e) {
+			logger.error(e.getLocalizedMessage());
+		} finally {
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+			} catch (SQLException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+		return new double[0];
+	}
+
+	private double[] readCurve(String user, String name) throws SQLException {
+		ResultSet rs = null;
+		long start = System.nanoTime();
+		try {
+			PreparedStatement s = prepare(WorkoutData.selectPowerCurve());
+			s.setString(1, user);
+			s.setString(2, name);
+			rs = s.executeQuery();
+			if (rs.next()) {
+				return fromCurveBytes(rs.getBlob(1));
+			}
+			return null;
+		} finally {
+			if (rs != null) {
+				rs.close();
+			}
+			timed(WorkoutData.selectPowerCurve(), start);
+		}
+	}
+
+	private void writeCurve(String user, String name, double[] curve)
+			throws SQLException {
+		long start = System.nanoTime();
+		PreparedStatement ps = prepare(WorkoutData.updatePowerCurve());
+		ps.setBytes(1, toCurveBytes(curve));
+		ps.setString(2, user);
+		ps.setString(3, name);
+		int rows = ps.executeUpdate();
+		timed(WorkoutData.updatePowerCurve(), start);
+		if (rows == 0) {
+			start = System.nanoTime();
+			ps = prepare(WorkoutData.insertPowerCurve());
+			ps.setBytes(1, toCurveBytes(curve));
+			ps.setString(2, user);
+			ps.setString(3, name);
+			ps.executeUpdate();
+			timed(WorkoutData.insertPowerCurve(), start);
+		}
+	}
+
+	private void deleteCurve(String user, String name) throws SQLException {
+		long start = System.nanoTime();
+		PreparedStatement ps = prepare(WorkoutData.deletePowerCurve());
+		ps.setString(1, user);
+		ps.setString(2, name);
+		ps.executeUpdate();
+		timed(WorkoutData.deletePowerCurve(), start);
+	}
+
+	/*
+	 * Merges a new workout into its season best. A season which hasn't been
+	 * built yet is left alone, it will include this workout when it is.
+	 */
+	private void mergeSeasonBest(String user, long date, double[] curve)
+			throws SQLException {
+		String name = WorkoutData.SEASON_PREFIX + year(date);
+		double[] best = readCurve(user, name);
+		if (best != null) {
+			writeCurve(user, name, merge(best, curve));
+		}
+	}
+
+	private void dropSeasonBest(String user, String workout)
+			throws SQLException {
+		WorkoutData data = getWorkout(user, workout);
+		if (data != null) {
+			deleteCurve(user, WorkoutData.SEASON_PREFIX + year(data.getDate()));
+		}
+	}
+
+	private static int year(long date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(date);
+		return cal.get(Calendar.YEAR);
+	}
+
+	private static double[] merge(double[] a, double[] b) {
+		double[] m = Arrays.copyOf(a, Math.max(a.length, b.length));
+		for (int i = 0; i < b.length; i++) {
+			if (b[i] > m[i]) {
+				m[i] = b[i];
+			}
+		}
+		return m;
+	}
+
+	// curves are stored as 4 byte floats, plenty for watts
+	private static byte[] toCurveBytes(double[] curve) {
+		ByteBuffer buf = ByteBuffer.allocate(curve.length * 4);
+		for (double p : curve) {
+			buf.putFloat((float) p);
+		}
+		return buf.array();
+	}
+
+	private static double[] fromCurveBytes(Blob blob) throws SQLException {
+		FloatBuffer buf = ByteBuffer.wrap(blob.getBytes(1, (int) blob.length()))
+				.asFloatBuffer();
+		double[] curve = new double[buf.remaining()];
+		for (int i = 0; i < curve.length; i++) {
+			curve[i] = buf.get(i);
+		}
+		return curve;
+	}
+
 	/**
 	 * Encrypts values before writing to database using DES. If there is an
 	 * exception nothing is written.
@@ -402,7 +753,7 @@ public class DataStore {
 	 * @param k
 	 * @param v
 	 */
-	public void insertPropCrypt(String user, String k, String v) {
+	public synchronized void insertPropCrypt(String user, String k, String v) {
 		byte[] clearTextBytes;
 		try {
 			clearTextBytes = v.getBytes("UTF8");
@@ -416,18 +767,19 @@ public class DataStore {
 
 	}
 
-	public void insertProp(String user, String k, String v) {
-		PreparedStatement psInsert = null;
+	public synchronized void insertProp(String user, String k, String v) {
+		String sql = null;
+		long start = 0;
 		try {
 			int count = this.getRows(user, k);
+			start = System.nanoTime();
+			PreparedStatement psInsert;
 			if (count == 0) {
-				psInsert = conn
-						.prepareStatement("INSERT INTO props (v, username, k) values(  ?, ?, ?)");
-
+				sql = INSERT_PROP;
+				psInsert = prepare(sql);
 			} else {
-				psInsert = conn
-						.prepareStatement("UPDATE props SET v=? WHERE username=? and k=?");
-
+				sql = UPDATE_PROP;
+				psInsert = prepare(sql);
 			}
 			psInsert.setString(1, v);
 			psInsert.setString(2, user);
@@ -438,17 +790,87 @@ public class DataStore {
 		} catch (SQLException e) {
 			logger.error(e.getLocalizedMessage());
 		} finally {
+			if (sql != null) {
+				timed(sql, start);
+			}
+		}
+	}
+
+	/**
+	 * Writes a batch of properties in a single transaction. Existing rows are
+	 * updated in one JDBC batch and any keys that matched no row are then
+	 * inserted in a second batch. This version of Derby has no MERGE
+	 * statement so this is as close to an upsert as we can get.
+	 * 
+	 * @param props
+	 *            list of {username, key, value} rows
+	 */
+	public synchronized void insertProps(List<String[]> props) {
+		if (props.isEmpty()) {
+			return;
+		}
+
+		PreparedStatement psUpdate = null;
+		PreparedStatement psInsert = null;
+		boolean autoCommit = true;
+		long start = System.nanoTime();
+		try {
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+
+			psUpdate = prepare(UPDATE_PROP);
+			for (String[] p : props) {
+				psUpdate.setString(1, p[2]);
+				psUpdate.setString(2, p[0]);
+				psUpdate.setString(3, p[1]);
+				psUpdate.addBatch();
+			}
+			int[] counts = psUpdate.executeBatch();
+			timed(UPDATE_PROP, start);
+
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] == 0) {
+					if (psInsert == null) {
+						psInsert = prepare(INSERT_PROP);
+					}
+					String[] p = props.get(i);
+					psInsert.setString(1, p[2]);
+					psInsert.setString(2, p[0]);
+					psInsert.setString(3, p[1]);
+					psInsert.addBatch();
+				}
+			}
+			if (psInsert != null) {
+				start = System.nanoTime();
+				psInsert.executeBatch();
+				timed(INSERT_PROP, start);
+			}
+
+			conn.commit();
+		} catch (SQLException e) {
+			logger.error(e.getLocalizedMessage());
 			try {
+				conn.rollback();
+			} catch (SQLException e1) {
+				logger.error(e1.getLocalizedMessage());
+			}
+		} finally {
+			try {
+				// statements are reused, don't leave a failed batch behind
+				if (psUpdate != null) {
+					psUpdate.clearBatch();
+				}
 				if (psInsert != null) {
-					psInsert.close();
+					psInsert.clearBatch();
 				}
+				conn.setAutoCommit(autoCommit);
 			} catch (SQLException e) {
 				logger.error(e.getLocalizedMessage());
 			}
 		}
 	}
 
-	public String getPropCrypt(String user, String k) {
+	public synchronized String getPropCrypt(String user, String k) {
 		String v = getProp(user, k);
 		try {
 			byte[] cipherBytes = toByteArray(v);
@@ -462,13 +884,14 @@ public class DataStore {
 		return v;
 	}
 
-	public String getProp(String user, String k) {
+	public synchronized String getProp(String user, String k) {
 		PreparedStatement s = null;
 		ResultSet rs = null;
 		String value = null;
 
+		long start = System.nanoTime();
 		try {
-			s = conn.prepareStatement("SELECT v FROM props WHERE username = ? and k = ?");
+			s = prepare(SELECT_PROP);
 			s.setString(1, user);
 			s.setString(2, k);
 			rs = s.executeQuery();
@@ -480,28 +903,63 @@ public class DataStore {
 			logger.error(e.getLocalizedMessage());
 		} finally {
 			try {
-				if (s != null) {
-					s.close();
-				}
 				if (rs != null) {
 					rs.close();
 				}
 			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.error(e.getLocalizedMessage());
 			}
+			timed(SELECT_PROP, start);
 		}
 
 		return value;
 	}
 
-	public int getRows(String user, String k) {
+	/**
+	 * Reads the whole props table in a single query, used to prime the
+	 * preferences cache at startup.
+	 * 
+	 * @return list of {username, key, value} rows
+	 */
+	public synchronized List<String[]> getAllProps() {
+		Statement s = null;
+		ResultSet rs = null;
+		List<String[]> props = new ArrayList<String[]>();
+
+		try {
+			s = conn.createStatement();
+			rs = s.executeQuery("SELECT username, k, v FROM props");
+
+			while (rs.next()) {
+				props.add(new String[] { rs.getString(1), rs.getString(2),
+						rs.getString(3) });
+			}
+		} catch (SQLException e) {
+			logger.error(e.getLocalizedMessage());
+		} finally {
+			try {
+				if (rs != null) {
+					rs.close();
+				}
+				if (s != null) {
+					s.close();
+				}
+			} catch (SQLException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+
+		return props;
+	}
+
+	public synchronized int getRows(String user, String k) {
 		PreparedStatement s = null;
 		ResultSet rs = null;
 		int count = -1;
 
+		long start = System.nanoTime();
 		try {
-			s = conn.prepareStatement(" SELECT COUNT(*) FROM props WHERE username = ? and k = ?");
+			s = prepare(COUNT_PROP);
 			// s =
 			// conn.prepareStatement(" SELECT v FROM props WHERE username = ? and k = ?");
 			s.setString(1, user);
@@ -517,22 +975,31 @@ public class DataStore {
 			logger.error(e.getLocalizedMessage());
 		} finally {
 			try {
-				if (s != null) {
-					s.close();
-				}
 				if (rs != null) {
 					rs.close();
 				}
 			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				logger.error(e.getLocalizedMessage());
 			}
+			timed(COUNT_PROP, start);
 		}
 
 		return count;
 	}
 
-	public void close() {
+	public synchronized void close() {
+		for (PreparedStatement ps : statements.values()) {
+			try {
+				ps.close();
+			} catch (SQLException e) {
+				logger.error(e.getLocalizedMessage());
+			}
+		}
+		statements.clear();
+		for (Map.Entry<String, StatementStats> e : stats.entrySet()) {
+			logger.info(e.getValue() + " " + e.getKey());
+		}
+
 		try {
 			if (conn != null) {
 				conn.close();
@@ -569,6 +1036,54 @@ public class DataStore {
 		}
 	}
 
+	/**
+	 * Returns a prepared statement for this SQL, preparing it on first use.
+	 * Statements stay open until the store is closed so callers must not
+	 * close them.
+	 */
+	private PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement ps = statements.get(sql);
+		if (ps == null) {
+			ps = conn.prepareStatement(sql);
+			statements.put(sql, ps);
+			stats(sql).prepares++;
+		}
+		return ps;
+	}
+
+	private StatementStats stats(String sql) {
+		StatementStats st = stats.get(sql);
+		if (st == null) {
+			st = new StatementStats();
+			stats.put(sql, st);
+		}
+		return st;
+	}
+
+	private void timed(String sql, long start) {
+		long t = System.nanoTime() - start;
+		StatementStats st = stats(sql);
+		st.count++;
+		st.totalNanos += t;
+		if (t > st.maxNanos) {
+			st.maxNanos = t;
+		}
+	}
+
+	/**
+	 * Timings for each statement executed since the store was opened
+	 * 
+	 * @return snapshot of the statistics keyed by SQL, later statements
+	 *         don't change it
+	 */
+	public synchronized Map<String, StatementStats> getStatementStats() {
+		HashMap<String, StatementStats> copy = new HashMap<String, StatementStats>();
+		for (Map.Entry<String, StatementStats> e : stats.entrySet()) {
+			copy.put(e.getKey(), new StatementStats(e.getValue()));
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+
 	/**
 	 * Prints details of an SQLException chain to <code>System.err</code>.
 	 * Details included are SQL State, Error code, Exception message.
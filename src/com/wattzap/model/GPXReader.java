@@ -15,15 +15,24 @@
 */
 package com.wattzap.model;
 
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.util.Date;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import org.apache.commons.lang3.ArrayUtils;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.jfree.data.xy.XYSeries;
 
 import com.gpxcreator.gpxpanel.GPXFile;
-import com.gpxcreator.gpxpanel.Track;
 import com.gpxcreator.gpxpanel.Waypoint;
 import com.gpxcreator.gpxpanel.WaypointGroup;
 import com.wattzap.model.dto.Point;
@@ -44,6 +53,8 @@ import com.wattzap.utils.Rolling;
 @RouteAnnotation
 public class GPXReader extends RouteReader {
 	private GPXFile gpxFile;
+	// index of the first point of each track segment
+	private List<Integer> segmentStarts = new ArrayList<Integer>();
 	private XYSeries series;
 	private String fileName;
 	private static final int gradientDistance = 100; // distance to calculate
@@ -79,7 +90,25 @@ public class GPXReader extends RouteReader {
 		return fileName;
 	}
 
-	public GPXFile getGpxFile() {
+	/**
+	 * Map track, built from the points the first time it is asked for
+	 */
+	public synchronized GPXFile getGpxFile() {
+		if (gpxFile == null && points != null) {
+			gpxFile = new GPXFile();
+			for (int i = 0; i < segmentStarts.size(); i++) {
+				int end = i + 1 < segmentStarts.size() ? segmentStarts
+						.get(i + 1) : points.length;
+				WaypointGroup path = gpxFile.addRoute().getPath();
+				for (int j = segmentStarts.get(i); j < end; j++) {
+					Waypoint wp = new Waypoint(points[j].getLatitude(),
+							points[j].getLongitude());
+					wp.setEle(points[j].getElevation());
+					path.addWaypoint(wp);
+				}
+			}
+			gpxFile.updateAllProperties();
+		}
 		return gpxFile;
 	}
 
@@ -109,51 +138,150 @@ public class GPXReader extends RouteReader {
 	 */
 	public void load(String filename) {
 		points = null;
-		gpxFile = new GPXFile(new File(filename));
+		gpxFile = null;
+		segmentStarts = new ArrayList<Integer>();
+		maxSlope = 0;
+		minSlope = 0;
 		fileName = filename.substring(0, filename.lastIndexOf('.'));
 
-		List<Track> routes = gpxFile.getTracks();
-		if (routes.size() == 0) {
-			throw new RuntimeException("No tracks in file");
-		}
-		Track route = routes.get(0);
-		if (route == null) {
-			System.err.println("no route in GPX file");
+		File source = new File(filename);
+		RouteCache.Entry cached = getCache().get(source);
+		if (cached != null) {
+			points = cached.points;
+			series = cached.series;
+			gpxFile = cached.gpxFile;
+			maxSlope = cached.maxSlope;
+			minSlope = cached.minSlope;
 			return;
 		}
 
-		List<WaypointGroup> segs = route.getTracksegs();
 		this.series = new XYSeries("");
+		Parser parser = new Parser();
+		try {
+			InputStream in = new BufferedInputStream(new FileInputStream(
+					source));
+			try {
+				XMLStreamReader xml = XMLInputFactory.newInstance()
+						.createXMLStreamReader(in);
+				try {
+					parser.parse(xml);
+				} finally {
+					xml.close();
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read file "
+					+ e.getLocalizedMessage());
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Invalid GPX file "
+					+ e.getLocalizedMessage());
+		}
+
+		if (parser.tracks == 0) {
+			throw new RuntimeException("No tracks in file");
+		}
+		if (!parser.route.isEmpty()) {
+			points = parser.route.toArray(new Point[parser.route.size()]);
+		}
+		getCache().put(this, source);
+	}
+
+	/*
+	 * Streams the first track of a GPX file. Waypoints of a segment are
+	 * collected in primitive arrays, reused for each segment, then turned into
+	 * points with distance, speed and gradient.
+	 */
+	private class Parser {
+		int tracks = 0;
+		final List<Point> route = new ArrayList<Point>();
+
+		// current segment
+		int size = 0;
+		double[] lat = new double[1024];
+		double[] lon = new double[1024];
+		double[] ele = new double[1024];
+		long[] time = new long[1024];
 
 		double distance = 0.0;
-		long startTime = System.currentTimeMillis();
+		long startTime = 0;
+		long lastSegTime = 0;
+
+		void parse(XMLStreamReader xml) throws XMLStreamException {
+			boolean inPoint = false;
+			while (xml.hasNext()) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = xml.getLocalName();
+					if ("trk".equals(name)) {
+						tracks++;
+					} else if (tracks != 1) {
+						continue;
+					} else if ("trkseg".equals(name)) {
+						size = 0;
+					} else if ("trkpt".equals(name)) {
+						inPoint = true;
+						add(Double.parseDouble(xml.getAttributeValue(null,
+								"lat")), Double.parseDouble(xml
+								.getAttributeValue(null, "lon")));
+					} else if (inPoint && "ele".equals(name)) {
+						ele[size - 1] = Double.parseDouble(xml
+								.getElementText().trim());
+					} else if (inPoint && "time".equals(name)) {
+						time[size - 1] = DatatypeConverter
+								.parseDateTime(xml.getElementText().trim())
+								.getTimeInMillis();
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = xml.getLocalName();
+					if ("trkpt".equals(name)) {
+						inPoint = false;
+					} else if ("trkseg".equals(name) && tracks == 1) {
+						segment();
+					} else if ("trk".equals(name)) {
+						// only the first track is used
+						return;
+					}
+				}
+			}
+		}
+
+		private void add(double latitude, double longitude) {
+			if (size == lat.length) {
+				int length = size * 2;
+				lat = Arrays.copyOf(lat, length);
+				lon = Arrays.copyOf(lon, length);
+				ele = Arrays.copyOf(ele, length);
+				time = Arrays.copyOf(time, length);
+			}
+			lat[size] = latitude;
+			lon[size] = longitude;
+			ele[size] = 0;
+			time[size] = 0;
+			size++;
+		}
 
 		/*
-		 * A GPX file can contain more than 1 segment. There may, or may not, be
-		 * a distance gap between segments. For example, due to a tunnel. We
-		 * treat each segment independently even if they correspond to a
+		 * A GPX file can contain more than 1 segment. There may, or may not,
+		 * be a distance gap between segments. For example, due to a tunnel.
+		 * We treat each segment independently even if they correspond to a
 		 * contiguous video.
 		 */
-		long lastSegTime = 0;
-		for (WaypointGroup group : segs) {
+		private void segment() {
+			if (size == 0) {
+				return;
+			}
+			int first = route.size();
+			segmentStarts.add(first);
 
 			Rolling altitude = new Rolling(10);
-			List<Waypoint> waypoints = group.getWaypoints();
-
-			// group.correctElevation(true);
-			Point[] segment = new Point[group.getNumPts()];
-
-			Waypoint last = null;
-			int index = 0;
 			long currentTime = 0;
-			for (Waypoint wp : waypoints) {
-				Date d = wp.getTime();
-				if (d != null) {
-					currentTime = d.getTime();
+			for (int i = 0; i < size; i++) {
+				if (time[i] != 0) {
+					currentTime = time[i];
 				}
-
-				if (index == 0) {
-					last = wp;
+				if (i == 0) {
 					if (lastSegTime > 0 && currentTime > 0) {
 						startTime += currentTime - lastSegTime;
 					} else {
@@ -162,85 +290,84 @@ public class GPXReader extends RouteReader {
 				}
 
 				Point p = new Point();
-				p.setElevation(wp.getEle());
-				p.setLatitude(wp.getLat());
-				p.setLongitude(wp.getLon());
+				p.setElevation(ele[i]);
+				p.setLatitude(lat[i]);
+				p.setLongitude(lon[i]);
 				// TODO need to deduct gap time
 
-				double leg = distance(wp.getLat(), last.getLat(), wp.getLon(),
-						last.getLon(), last.getEle(), wp.getEle());
+				double leg = 0;
+				if (i > 0) {
+					leg = distance(lat[i], lat[i - 1], lon[i], lon[i - 1],
+							ele[i - 1], ele[i]);
+				}
 				distance += leg;
 				p.setDistanceFromStart(distance);
 
 				// smooth altitudes a bit
-				altitude.add(wp.getEle());
-				series.add(distance / 1000, altitude.getAverage());
+				altitude.add(ele[i]);
+				series.add(distance / 1000, altitude.getAverage(), false);
 
 				// speed = distance / time
 				if (currentTime > 0) {
 					p.setTime(currentTime - startTime);
 
-					long t = currentTime - last.getTime().getTime();
+					long t = currentTime - time[i > 0 ? i - 1 : 0];
 					p.setSpeed((leg * 3600 / t));
 				}
-				segment[index++] = p;
-				last = wp;
-			}// for
+				route.add(p);
+			}
 
 			if (currentTime > 0) {
-				lastSegTime = last.getTime().getTime();
+				lastSegTime = time[size - 1];
 			}
 			// set initial speed
-			segment[0].setSpeed(segment[1].getSpeed());
-
-			/*
-			 * Calculate the gradient, we do this using blocks of 100 meters
-			 * using a moving average of 10 values.
-			 */
-			int i = 0;
-			int j = 0;
-			Rolling gradient = new Rolling(10);
-			for (Point p : segment) {
-				if (p.getDistanceFromStart() > segment[i]
-						.getDistanceFromStart() + gradientDistance) {
-					double slope = 100
-							* (p.getElevation() - segment[i].getElevation())
-							/ (p.getDistanceFromStart() - segment[i]
-									.getDistanceFromStart());
-					gradient.add(slope);
-					if (slope > maxSlope) {
-						maxSlope = slope;
-					}
-					if (slope < minSlope) {
-						minSlope = slope;
-					}
-					segment[i++].setGradient(gradient.getAverage());
-				}
-				j++;
+			if (size > 1) {
+				route.get(first).setSpeed(route.get(first + 1).getSpeed());
 			}
+			gradient(route.subList(first, route.size()));
+		}
+	}
 
-			while (i < j - 1) {
+	/*
+	 * Calculate the gradient, we do this using blocks of 100 meters using a
+	 * moving average of 10 values.
+	 */
+	private void gradient(List<Point> segment) {
+		int i = 0;
+		int j = 0;
+		Rolling gradient = new Rolling(10);
+		for (Point p : segment) {
+			if (p.getDistanceFromStart() > segment.get(i)
+					.getDistanceFromStart() + gradientDistance) {
 				double slope = 100
-						* (segment[j - 1].getElevation() - segment[i]
-								.getElevation())
-						/ (segment[j - 1].getDistanceFromStart() - segment[i]
+						* (p.getElevation() - segment.get(i).getElevation())
+						/ (p.getDistanceFromStart() - segment.get(i)
 								.getDistanceFromStart());
 				gradient.add(slope);
-				segment[i++].setGradient(gradient.getAverage());
+				if (slope > maxSlope) {
+					maxSlope = slope;
+				}
+				if (slope < minSlope) {
+					minSlope = slope;
+				}
+				segment.get(i++).setGradient(gradient.getAverage());
 			}
-			segment[i++].setGradient(gradient.getAverage());
-			// gradient done
-
-			// resistance levels - use blocks of 500 meters
-			// levels done
+			j++;
+		}
 
-			// combine segment
-			points = ArrayUtils.addAll(points, segment);
+		while (i < j - 1) {
+			double slope = 100
+					* (segment.get(j - 1).getElevation() - segment.get(i)
+							.getElevation())
+					/ (segment.get(j - 1).getDistanceFromStart() - segment
+							.get(i).getDistanceFromStart());
+			gradient.add(slope);
+			segment.get(i++).setGradient(gradient.getAverage());
 		}
+		segment.get(i++).setGradient(gradient.getAverage());
 	}
 
 	public void close() {
-		currentPoint = 0;
 	}
 
 	/**
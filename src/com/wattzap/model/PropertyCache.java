@@ -0,0 +1,201 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Write-through cache in front of the props table. The whole table is read
+ * once when the cache is created, reads are then served from memory and
+ * writes update memory immediately.
+ *
+ * Writes are queued and written to the DataStore shortly afterwards on a
+ * background thread. Repeated writes to the same key are coalesced so a
+ * burst of settings (window bounds, closing the preferences dialog) costs a
+ * single transaction.
+ *
+ * Values which are not in the table are read from the DataStore once and
+ * remembered as missing, so a getter with a default value only ever costs
+ * one query.
+ */
+public class PropertyCache {
+	// marks a key known not to be in the props table
+	private static final String MISSING = new String("\u0000missing");
+
+	// how long writes are held back so that bursts land in one transaction
+	private static final long FLUSH_DELAY = 500;
+
+	private final DataStore ds;
+	private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<String, String>();
+	private final LinkedHashMap<String, String[]> pending = new LinkedHashMap<String, String[]>();
+	private final Object flushLock = new Object();
+	private boolean flushScheduled = false;
+	private final ScheduledThreadPoolExecutor writer;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong flushed = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	private static Logger logger = LogManager.getLogger("PropertyCache");
+
+	public PropertyCache(DataStore ds) {
+		this.ds = ds;
+
+		List<String[]> props = ds.getAllProps();
+		for (String[] p : props) {
+			if (p[2] != null) {
+				cache.put(key(p[0], p[1]), p[2]);
+			}
+		}
+		logger.info("Loaded " + cache.size() + " properties");
+
+		writer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Property Writer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// close() flushes on the calling thread, don't wait for the delay
+		writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	public String getProp(String user, String k) {
+		String key = key(user, k);
+		String v = cache.get(key);
+		if (v != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+			v = ds.getProp(user, k);
+			// don't overwrite a value set while we were reading
+			String old = cache.putIfAbsent(key, v == null ? MISSING : v);
+			if (old != null) {
+				v = old;
+			}
+		}
+
+		if (v == MISSING) {
+			return null;
+		}
+		return v;
+	}
+
+	public void insertProp(String user, String k, String v) {
+		String key = key(user, k);
+		cache.put(key, v == null ? MISSING : v);
+		writes.incrementAndGet();
+
+		synchronized (pending) {
+			// a later write to the same key replaces the queued one
+			pending.put(key, new String[] { user, k, v });
+			if (!flushScheduled && !writer.isShutdown()) {
+				flushScheduled = true;
+				writer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						flush();
+					}
+				}, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		if (writer.isShutdown()) {
+			// closed, nothing will pick this up
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all queued properties to the DataStore in one batch.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<String[]> batch;
+			synchronized (pending) {
+				flushScheduled = false;
+				if (pending.isEmpty()) {
+					return;
+				}
+				batch = new ArrayList<String[]>(pending.values());
+				pending.clear();
+			}
+
+			ds.insertProps(batch);
+			flushed.addAndGet(batch.size());
+			batches.incrementAndGet();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getWrites() {
+		return writes.get();
+	}
+
+	public long getFlushed() {
+		return flushed.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Writes anything still queued to the DataStore. Must be called before
+	 * the DataStore is closed.
+	 */
+	public void close() {
+		if (writer.isShutdown()) {
+			return;
+		}
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+				logger.error("Timed out writing properties");
+			}
+		} catch (InterruptedException e) {
+			logger.error(e.getLocalizedMessage());
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		logger.info("hits " + hits.get() + ", misses " + misses.get()
+				+ ", writes " + writes.get() + ", flushed " + flushed.get()
+				+ " in " + batches.get() + " batches");
+	}
+
+	private static String key(String user, String k) {
+		return user + '\u0000' + k;
+	}
+}
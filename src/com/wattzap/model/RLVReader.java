@@ -1,18 +1,22 @@
 package com.wattzap.model;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.io.StringWriter;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import lt.overdrive.trackparser.domain.Track;
 import lt.overdrive.trackparser.domain.TrackPoint;
@@ -33,6 +37,7 @@ import com.wattzap.controller.Messages;
 import com.wattzap.model.dto.Point;
 import com.wattzap.model.dto.TrainingData;
 import com.wattzap.model.dto.TrainingItem;
+import com.wattzap.utils.DaemonPool;
 
 /*
  * Wrapper class for Tacx Real Life Video Routes
@@ -52,7 +57,6 @@ public class RLVReader extends RouteReader {
 	public static final int PGMF_INFORMATION = 1010;
 	public static final int PGMF_PROGRAM = 1020;
 
-	private Charset iso88591charset = Charset.forName("ISO-8859-1");
 	private double totalDistance = 0.0;
 
 	private String fileName;
@@ -77,6 +81,10 @@ public class RLVReader extends RouteReader {
 
 	private static Logger logger = LogManager.getLogger("RLV Reader");
 
+	// shared by all readers, the threads die when idle
+	private static final ExecutorService loader = DaemonPool.create(
+			"RLV Loader", 2);
+
 	@Override
 	public String getExtension() {
 		return "rlv";
@@ -140,11 +148,65 @@ public class RLVReader extends RouteReader {
 
 		filename = filename.substring(0, filename.lastIndexOf('.'));
 		this.fileName = filename;
+
+		/*
+		 * Only distance based routes are cached, time based routes scale
+		 * power to the rider's FTP and send the training program.
+		 */
+		File[] sources = { new File(filename + ".rlv"),
+				new File(filename + ".pgmf"), new File(filename + ".tcx") };
+		RouteCache.Entry cached = getCache().get(sources);
+		if (cached != null) {
+			courseName = cached.name;
+			programType = cached.routeType;
+			timeDist = DISTANCE;
+			totalDistance = cached.distance;
+			minSlope = cached.minSlope;
+			maxSlope = cached.maxSlope;
+			points = cached.points;
+			series = cached.series;
+			gpxFile = cached.gpxFile;
+			return;
+		}
 		this.series = new XYSeries("");
 
-		ArrayList<Point> pgmfSegment = readPGMF(filename + ".pgmf");
-		ArrayList<Point> rlvSegment = readRLV(filename + ".rlv");
-		ArrayList<Point> tcxSegment = readTCX(filename + ".tcx");
+		/*
+		 * The three files are independent until they are merged, the video
+		 * mapping and the tcx track are read on the loader pool while this
+		 * thread reads the program.
+		 */
+		long loadStart = System.nanoTime();
+		final String base = filename;
+		Phase rlvPhase = new Phase() {
+			@Override
+			ArrayList<Point> read() {
+				return readRLV(base + ".rlv");
+			}
+		};
+		Phase tcxPhase = new Phase() {
+			@Override
+			ArrayList<Point> read() {
+				return readTCX(base + ".tcx");
+			}
+		};
+		Future<ArrayList<Point>> rlvTask = loader.submit(rlvPhase);
+		Future<ArrayList<Point>> tcxTask = loader.submit(tcxPhase);
+
+		long pgmfTime = System.nanoTime();
+		ArrayList<Point> pgmfSegment;
+		ArrayList<Point> rlvSegment;
+		ArrayList<Point> tcxSegment;
+		try {
+			pgmfSegment = readPGMF(filename + ".pgmf");
+			pgmfTime = System.nanoTime() - pgmfTime;
+			rlvSegment = get(rlvTask);
+			tcxSegment = get(tcxTask);
+		} catch (RuntimeException e) {
+			rlvTask.cancel(true);
+			tcxTask.cancel(true);
+			throw e;
+		}
+		long mergeStart = System.nanoTime();
 		gpxFile = null;
 
 		WaypointGroup path = null;
@@ -404,9 +466,49 @@ public class RLVReader extends RouteReader {
 				lastFrame = frame;
 			}
 			points = pgmfSegment.toArray(new Point[pgmfSegment.size()]);
+			getCache().put(this, sources);
 			break;
 		}// switch
 
+		long end = System.nanoTime();
+		logger.info("Loaded " + courseName + " pgmf " + pgmfTime / 1000000
+				+ "ms, rlv " + rlvPhase.nanos / 1000000 + "ms, tcx "
+				+ tcxPhase.nanos / 1000000 + "ms, merge "
+				+ (end - mergeStart) / 1000000 + "ms, total "
+				+ (end - loadStart) / 1000000 + "ms");
+	}
+
+	/*
+	 * A file read on the loader pool, records how long it took
+	 */
+	private abstract class Phase implements Callable<ArrayList<Point>> {
+		long nanos;
+
+		@Override
+		public ArrayList<Point> call() {
+			long start = System.nanoTime();
+			try {
+				return read();
+			} finally {
+				nanos = System.nanoTime() - start;
+			}
+		}
+
+		abstract ArrayList<Point> read();
+	}
+
+	private static ArrayList<Point> get(Future<ArrayList<Point>> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted loading route");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
 	}
 
 	public void close() {
@@ -459,39 +561,31 @@ public class RLVReader extends RouteReader {
 	private final ArrayList<Point> readPGMF(String fileName) {
 		ArrayList<Point> p = new ArrayList<Point>();
 		maxPower = 0f;
-		DataInputStream din = null;
 
 		try {
-			din = new DataInputStream(new FileInputStream(fileName));
-
-			/*
-			 * To read a Java short primitive from file, use byte readShort()
-			 * method of Java DataInputStream class.
-			 * 
-			 * This method reads 2 bytes and returns it as a short value.
-			 */
+			ByteBuffer buf = map(fileName);
 
-			int v = readLEShort(din);
+			int v = readLEShort(buf);
 			if (v != PGMF_FINGERPRINT) {
 				throw new RuntimeException("Not an PGMF file " + v);
 			}
 
-			v = readLEShort(din);
+			v = readLEShort(buf);
 
 			// record size
-			v = readLEShort(din);
+			v = readLEShort(buf);
 			// number of records
-			v = readLEShort(din);
+			v = readLEShort(buf);
 
-			while (din.available() > 0) {
+			while (buf.hasRemaining()) {
 
-				int recordType = readLEShort(din);
+				int recordType = readLEShort(buf);
 				switch (recordType) {
 				case PGMF_INFORMATION:
-					readPGMFInfo(din);
+					readPGMFInfo(buf);
 					break;
 				case PGMF_PROGRAM:
-					List<Point> segment = readPGMFProgram(din);
+					List<Point> segment = readPGMFProgram(buf);
 					p.addAll(segment);
 					break;
 
@@ -499,21 +593,13 @@ public class RLVReader extends RouteReader {
 					logger.error("Wrong record type for offset " + recordType);
 				}
 			}
-
-			din.close();
 		} catch (FileNotFoundException fe) {
 			logger.error("FileNotFoundException : " + fe);
 			throw new RuntimeException("No PGMF file found for ");
 		} catch (IOException ioe) {
 			logger.error("IOException : " + ioe);
-		} finally {
-			try {
-				if (din != null) {
-					din.close();
-				}
-			} catch (IOException e) {
-				logger.error("IOException : " + e);
-			}
+		} catch (BufferUnderflowException e) {
+			logger.error("Truncated PGMF file " + fileName);
 		}
 
 		return p;
@@ -534,7 +620,7 @@ public class RLVReader extends RouteReader {
 	 * not just the section that this run relates to.
 	 * http://www.whitepeak.org/FortiusFile.aspx?file=.pgmf
 	 */
-	private void readPGMFInfo(DataInputStream din) throws IOException {
+	private void readPGMFInfo(ByteBuffer din) {
 		int version = readLEShort(din);
 		logger.debug("*** Read Course Info Version : " + version);
 
@@ -600,8 +686,7 @@ public class RLVReader extends RouteReader {
 	 * 
 	 * @value RollingFriction Float
 	 */
-	private final List<Point> readPGMFProgram(DataInputStream din)
-			throws IOException {
+	private final List<Point> readPGMFProgram(ByteBuffer din) {
 		int version = readLEShort(din);
 
 		logger.debug("*** Read Course Info Version : " + version);
@@ -697,45 +782,37 @@ public class RLVReader extends RouteReader {
 
 	private final ArrayList<Point> readRLV(String file) {
 		ArrayList<Point> p = new ArrayList<Point>();
-		DataInputStream din = null;
 
 		try {
-			din = new DataInputStream(new FileInputStream(file));
-
-			/*
-			 * To read a Java short primitive from file, use byte readShort()
-			 * method of Java DataInputStream class.
-			 * 
-			 * This method reads 2 bytes and returns it as a short value.
-			 */
+			ByteBuffer buf = map(file);
 
-			int v = readLEShort(din);
+			int v = readLEShort(buf);
 
 			if (v != RLV_FINGERPRINT) {
 				throw new RuntimeException("Not an RLV file");
 			}
 
-			v = readLEShort(din);
-			v = readLEShort(din);
-			v = readLEShort(din);
+			v = readLEShort(buf);
+			v = readLEShort(buf);
+			v = readLEShort(buf);
 
-			while (din.available() > 0) {
+			while (buf.hasRemaining()) {
 
-				int recordType = readLEShort(din);
+				int recordType = readLEShort(buf);
 
 				switch (recordType) {
 				case RLV_VIDEO_INFO:
-					readRLVInfo(din);
+					readRLVInfo(buf);
 					break;
 				case RLV_FRAME_DISTANCE_MAPPING:
-					ArrayList<Point> segment = readFrameDistanceMapping(din);
+					ArrayList<Point> segment = readFrameDistanceMapping(buf);
 					p.addAll(segment);
 					break;
 				case RLV_INFOBOX:
-					readInfoBox(din);
+					readInfoBox(buf);
 					break;
 				case RLV_COURSE_INFO:
-					readCourseInfo(din);
+					readCourseInfo(buf);
 					break;
 
 				default:
@@ -746,20 +823,14 @@ public class RLVReader extends RouteReader {
 			logger.error("FileNotFoundException : " + fe);
 		} catch (IOException ioe) {
 			logger.error("IOException : " + ioe);
-		} finally {
-			try {
-				if (din != null) {
-					din.close();
-				}
-			} catch (IOException e) {
-				logger.error("IOException : " + e);
-			}
+		} catch (BufferUnderflowException e) {
+			logger.error("Truncated RLV file " + file);
 		}
 
 		return p;
 	}
 
-	private void readRLVInfo(DataInputStream din) throws IOException {
+	private void readRLVInfo(ByteBuffer din) {
 
 		int version = readLEShort(din);
 		logger.info("Version : " + version);
@@ -788,8 +859,7 @@ public class RLVReader extends RouteReader {
 	/*
 	 * RLV Record contains: frame No and distance per Frame
 	 */
-	private final ArrayList<Point> readFrameDistanceMapping(DataInputStream din)
-			throws IOException {
+	private final ArrayList<Point> readFrameDistanceMapping(ByteBuffer din) {
 		int version = readLEShort(din);
 		long rib = readLEInt(din);
 		long sob = readLEInt(din);
@@ -830,7 +900,7 @@ public class RLVReader extends RouteReader {
 	 * 
 	 * [Frame Int32, Command Int32,...]
 	 */
-	private void readInfoBox(DataInputStream din) throws IOException {
+	private void readInfoBox(ByteBuffer din) {
 		int version = readLEShort(din);
 		logger.info("Read Info Box Version : " + version);
 
@@ -862,7 +932,7 @@ public class RLVReader extends RouteReader {
 	 * (m), depending on program type) CourseSegmentName 66 Char[] TextFile 522
 	 * Char[]
 	 */
-	private void readCourseInfo(DataInputStream din) throws IOException {
+	private void readCourseInfo(ByteBuffer din) {
 		int version = readLEShort(din);
 		logger.info("*** Read Course Info Version : " + version);
 
@@ -886,58 +956,53 @@ public class RLVReader extends RouteReader {
 
 	}
 
-	private int readLEShort(DataInputStream din) throws IOException {
-		int b1 = din.readUnsignedByte();
-		int b2 = din.readUnsignedByte();
-
-		return (b2 << 8) + b1;
+	/*
+	 * Maps the whole file, Tacx files are little endian. Records are decoded
+	 * straight from the mapping rather than a byte at a time from a stream.
+	 */
+	private static ByteBuffer map(String fileName) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(
+					ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
 	}
 
-	public static int readLEInt(DataInputStream dataInStream)
-			throws IOException {
-		byte[] byteBuffer = new byte[4];
-
-		dataInStream.readFully(byteBuffer, 0, 4);
-		return (byteBuffer[3]) << 24 | (byteBuffer[2] & 0xff) << 16
-				| (byteBuffer[1] & 0xff) << 8 | (byteBuffer[0] & 0xff);
+	private static int readLEShort(ByteBuffer buf) {
+		return buf.getShort() & 0xffff;
 	}
 
-	public float readLittleFloat(DataInputStream dis) throws IOException {
-		return Float.intBitsToFloat(readLEInt(dis));
+	private static int readLEInt(ByteBuffer buf) {
+		return buf.getInt();
 	}
 
-	public long readLELong(DataInputStream dataInStream) throws IOException {
-		byte[] byteBuffer = new byte[8];
-
-		dataInStream.readFully(byteBuffer, 0, 8);
-		return (byteBuffer[7]) << 56 | (byteBuffer[6] & 0xff) << 48
-				| (byteBuffer[5] & 0xff) << 40 | (byteBuffer[4] & 0xff) << 32
-				| (byteBuffer[3] & 0xff) << 24 | (byteBuffer[2] & 0xff) << 16
-				| (byteBuffer[1] & 0xff) << 8 | (byteBuffer[0] & 0xff);
+	private static float readLittleFloat(ByteBuffer buf) {
+		return buf.getFloat();
 	}
 
-	public double readLittleDouble(DataInputStream dis) throws IOException {
-		return Double.longBitsToDouble(readLELong(dis));
+	private static double readLittleDouble(ByteBuffer buf) {
+		return buf.getDouble();
 	}
 
 	/*
 	 * Input is ISO-8859-1 in 2 bytes
 	 */
-	private String readTacxString(DataInputStream dis, int len)
-			throws IOException {
-		StringBuilder sb = new StringBuilder();
+	private static String readTacxString(ByteBuffer buf, int len) {
+		StringBuilder sb = new StringBuilder(len / 2);
 		for (int i = 0; i < len; i += 2) {
-			int b1 = dis.readUnsignedByte();
-			int b2 = dis.readUnsignedByte();
+			int b1 = buf.get() & 0xff;
+			int b2 = buf.get() & 0xff;
 			if (b1 == 0 && b2 == 0) {
 				continue;
 			}
-			ByteBuffer inputBuffer = ByteBuffer.wrap(new byte[] { (byte) b1,
-					(byte) b2 });
-			CharBuffer cb = iso88591charset.decode(inputBuffer);
-			sb.append(cb.get(0));
+			// ISO-8859-1 maps bytes straight to chars
+			sb.append((char) b1);
 		}
 		return sb.toString();
 
 	}
-}
+}
\ No newline at end of file
@@ -0,0 +1,335 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.jfree.data.xy.XYSeries;
+
+import com.gpxcreator.gpxpanel.GPXFile;
+import com.gpxcreator.gpxpanel.Route;
+import com.gpxcreator.gpxpanel.Track;
+import com.gpxcreator.gpxpanel.Waypoint;
+import com.gpxcreator.gpxpanel.WaypointGroup;
+import com.wattzap.model.dto.Point;
+
+/**
+ * Cache of parsed routes, so opening a route again skips parsing, smoothing
+ * and the gradient calculation.
+ *
+ * One file per route, named from a hash of the route's path. The header
+ * records the path, size and modification time of every file the route was
+ * built from, an entry is only used if they all still match. The rest of the
+ * file is the points, the profile series and the map track, it is memory
+ * mapped to read it back.
+ */
+public class RouteCache {
+	private static final int MAGIC = 0x575A5243; // "WZRC"
+	private static final short VERSION = 1;
+	private static final String EXTENSION = ".wzr";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File dir;
+
+	private static Logger logger = LogManager.getLogger("Route Cache");
+
+	/**
+	 * Values restored from the cache
+	 */
+	static class Entry {
+		String name;
+		int routeType;
+		double distance;
+		double minSlope;
+		double maxSlope;
+		Point[] points;
+		XYSeries series;
+		GPXFile gpxFile;
+	}
+
+	public RouteCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * @param sources
+	 *            the route file first, followed by any other files it was
+	 *            built from. Files that don't exist are allowed, creating
+	 *            them later invalidates the entry.
+	 * @return the cached route or null if there isn't a valid entry
+	 */
+	Entry get(File... sources) {
+		File f = cacheFile(sources[0]);
+		if (!f.exists()) {
+			return null;
+		}
+
+		boolean corrupt = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			try {
+				FileChannel ch = raf.getChannel();
+				MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+						0, ch.size());
+				if (!readHeader(buf, sources)) {
+					return null;
+				}
+				return readEntry(buf);
+			} finally {
+				raf.close();
+			}
+		} catch (BufferUnderflowException e) {
+			logger.error("Truncated cache file " + f);
+			corrupt = true;
+		} catch (RuntimeException e) {
+			// anything else a damaged file can throw while decoding
+			logger.error("Corrupt cache file " + f + " " + e);
+			corrupt = true;
+		} catch (IOException e) {
+			logger.error("Can't read cache file " + f + " "
+					+ e.getLocalizedMessage());
+		}
+		if (corrupt) {
+			// a miss, the route is parsed and cached again
+			f.delete();
+		}
+		return null;
+	}
+
+	/**
+	 * Stores a loaded route. Failures are logged, the route is simply parsed
+	 * again next time.
+	 */
+	void put(RouteReader reader, File... sources) {
+		if (reader.getPoints() == null) {
+			return;
+		}
+		if (!dir.exists() && !dir.mkdirs()) {
+			logger.error("Can't create cache directory " + dir);
+			return;
+		}
+
+		File f = cacheFile(sources[0]);
+		File tmp = new File(f.getPath() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				writeHeader(out, sources);
+				writeEntry(out, reader);
+			} finally {
+				out.close();
+			}
+			// replace in one step, a reader never sees half an entry
+			f.delete();
+			if (!tmp.renameTo(f)) {
+				logger.error("Can't rename cache file " + tmp);
+				tmp.delete();
+			}
+		} catch (IOException e) {
+			logger.error("Can't write cache file " + f + " "
+					+ e.getLocalizedMessage());
+			tmp.delete();
+		}
+	}
+
+	private File cacheFile(File source) {
+		String path = source.getAbsolutePath();
+		return new File(dir, String.format("%08x", path.hashCode()) + "-"
+				+ source.getName() + EXTENSION);
+	}
+
+	private static void writeHeader(DataOutputStream out, File[] sources)
+			throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeInt(sources.length);
+		for (File s : sources) {
+			writeString(out, s.getAbsolutePath());
+			out.writeLong(s.exists() ? s.length() : -1);
+			out.writeLong(s.lastModified());
+		}
+	}
+
+	private static boolean readHeader(ByteBuffer buf, File[] sources) {
+		if (buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+			return false;
+		}
+		if (buf.getInt() != sources.length) {
+			return false;
+		}
+		for (File s : sources) {
+			// a hash collision is just a miss, the entry is overwritten
+			if (!s.getAbsolutePath().equals(readString(buf))) {
+				return false;
+			}
+			if (buf.getLong() != (s.exists() ? s.length() : -1)
+					|| buf.getLong() != s.lastModified()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeEntry(DataOutputStream out, RouteReader reader)
+			throws IOException {
+		String name = reader.getName();
+		writeString(out, name == null ? "" : name);
+		out.writeInt(reader.routeType());
+		out.writeDouble(reader.getDistanceMeters());
+		out.writeDouble(reader.getMinSlope());
+		out.writeDouble(reader.getMaxSlope());
+
+		Point[] points = reader.getPoints();
+		out.writeInt(points.length);
+		for (Point p : points) {
+			out.writeDouble(p.getLatitude());
+			out.writeDouble(p.getLongitude());
+			out.writeDouble(p.getElevation());
+			out.writeDouble(p.getDistanceFromStart());
+			out.writeDouble(p.getGradient());
+			out.writeInt(p.getPower());
+			out.writeDouble(p.getSpeed());
+			out.writeLong(p.getTime());
+		}
+
+		XYSeries series = reader.getSeries();
+		int count = series == null ? 0 : series.getItemCount();
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeDouble(series.getX(i).doubleValue());
+			out.writeDouble(series.getY(i).doubleValue());
+		}
+
+		// map track, each segment or route path as a group
+		List<WaypointGroup> groups = new ArrayList<WaypointGroup>();
+		GPXFile gpx = reader.getGpxFile();
+		if (gpx != null) {
+			for (Route r : gpx.getRoutes()) {
+				groups.add(r.getPath());
+			}
+			for (Track t : gpx.getTracks()) {
+				groups.addAll(t.getTracksegs());
+			}
+		}
+		out.writeInt(groups.size());
+		for (WaypointGroup g : groups) {
+			List<Waypoint> waypoints = g.getWaypoints();
+			out.writeInt(waypoints.size());
+			for (Waypoint wp : waypoints) {
+				out.writeDouble(wp.getLat());
+				out.writeDouble(wp.getLon());
+				out.writeDouble(wp.getEle());
+			}
+		}
+	}
+
+	private static Entry readEntry(ByteBuffer buf) {
+		Entry e = new Entry();
+		e.name = readString(buf);
+		e.routeType = buf.getInt();
+		e.distance = buf.getDouble();
+		e.minSlope = buf.getDouble();
+		e.maxSlope = buf.getDouble();
+
+		// latitude, longitude, elevation, distance, gradient, power, speed
+		// and time
+		e.points = new Point[readCount(buf, 7 * 8 + 4)];
+		for (int i = 0; i < e.points.length; i++) {
+			Point p = new Point();
+			p.setLatitude(buf.getDouble());
+			p.setLongitude(buf.getDouble());
+			p.setElevation(buf.getDouble());
+			p.setDistanceFromStart(buf.getDouble());
+			p.setGradient(buf.getDouble());
+			p.setPower(buf.getInt());
+			p.setSpeed(buf.getDouble());
+			p.setTime(buf.getLong());
+			e.points[i] = p;
+		}
+
+		e.series = new XYSeries("");
+		int count = readCount(buf, 2 * 8);
+		for (int i = 0; i < count; i++) {
+			e.series.add(buf.getDouble(), buf.getDouble(), false);
+		}
+
+		// at least a waypoint count each
+		int groups = readCount(buf, 4);
+		if (groups > 0) {
+			e.gpxFile = new GPXFile();
+		}
+		for (int i = 0; i < groups; i++) {
+			WaypointGroup path = e.gpxFile.addRoute().getPath();
+			int waypoints = readCount(buf, 3 * 8);
+			for (int j = 0; j < waypoints; j++) {
+				Waypoint wp = new Waypoint(buf.getDouble(), buf.getDouble());
+				wp.setEle(buf.getDouble());
+				path.addWaypoint(wp);
+			}
+		}
+		if (groups > 0) {
+			e.gpxFile.updateAllProperties();
+		}
+		return e;
+	}
+
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] b = s.getBytes(UTF8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * Reads an item count, a count the rest of the buffer can't hold means a
+	 * damaged file rather than a huge allocation.
+	 * 
+	 * @param size
+	 *            bytes per item
+	 */
+	private static int readCount(ByteBuffer buf, int size) {
+		int count = buf.getInt();
+		if (count < 0 || count > buf.remaining() / size) {
+			throw new BufferUnderflowException();
+		}
+		return count;
+	}
+
+	private static String readString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0 || length > buf.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		byte[] b = new byte[length];
+		buf.get(b);
+		return new String(b, UTF8);
+	}
+}
@@ -0,0 +1,164 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model;
+
+import com.wattzap.model.dto.Point;
+
+/**
+ * Distance index over the points of a route.
+ *
+ * The index is immutable and can be shared by any number of threads, lookups
+ * are a binary search over the cumulative distances. Callers that move
+ * forward along the route use their own Cursor, which starts from the last
+ * position found so a lookup is usually a step or two.
+ *
+ * Distances are assumed to be non decreasing, as the readers build them.
+ */
+public class RouteIndex {
+	// points checked linearly from the cursor before falling back to search
+	private static final int SCAN = 8;
+
+	private final Point[] points;
+	private final double[] distances;
+
+	public RouteIndex(Point[] points) {
+		this.points = points;
+		int n = points == null ? 0 : points.length;
+		distances = new double[n];
+		for (int i = 0; i < n; i++) {
+			distances[i] = points[i].getDistanceFromStart();
+		}
+	}
+
+	boolean isFor(Point[] p) {
+		return p == points;
+	}
+
+	public int size() {
+		return distances.length;
+	}
+
+	/**
+	 * @return the point at or immediately before meters, the first point
+	 *         before the start, null past the end of the route
+	 */
+	public Point getPoint(double meters) {
+		return at(search(meters, 0));
+	}
+
+	/**
+	 * @return a new point interpolated at meters, null past the end of the
+	 *         route
+	 */
+	public Point interpolate(double meters) {
+		return interpolate(meters, search(meters, 0), new Point());
+	}
+
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Remembers where the last lookup ended. Not thread safe, each caller
+	 * should have its own.
+	 */
+	public class Cursor {
+		private int next = 0;
+		private final Point point = new Point();
+
+		public Point getPoint(double meters) {
+			next = search(meters, next);
+			return at(next);
+		}
+
+		/**
+		 * @return the point interpolated at meters, null past the end of the
+		 *         route. The same Point is reused by the next call.
+		 */
+		public Point interpolate(double meters) {
+			next = search(meters, next);
+			return RouteIndex.this.interpolate(meters, next, point);
+		}
+	}
+
+	/*
+	 * First index with a distance at or after meters, distances.length if
+	 * there isn't one. The hint is a previous result.
+	 */
+	private int search(double meters, int hint) {
+		int n = distances.length;
+		int lo = 0;
+		int hi = n;
+		if (hint > 0 && hint <= n && distances[hint - 1] < meters) {
+			// moving forward, usually only a point or two
+			lo = hint;
+			for (int i = 0; i < SCAN && lo < n; i++) {
+				if (distances[lo] >= meters) {
+					return lo;
+				}
+				lo++;
+			}
+		} else if (hint >= 0 && hint < n && distances[hint] >= meters) {
+			hi = hint;
+		}
+
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (distances[mid] < meters) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private Point at(int next) {
+		if (next == distances.length) {
+			return null;
+		}
+		return next > 0 ? points[next - 1] : points[0];
+	}
+
+	private Point interpolate(double meters, int next, Point p) {
+		if (next == distances.length) {
+			return null;
+		}
+
+		Point a = points[next > 0 ? next - 1 : 0];
+		Point b = points[next];
+		double span = distances[next] - distances[next > 0 ? next - 1 : 0];
+		double f = 0;
+		if (next > 0 && span > 0) {
+			f = (meters - distances[next - 1]) / span;
+		}
+
+		p.setDistanceFromStart(next > 0 ? meters : a.getDistanceFromStart());
+		p.setElevation(lerp(a.getElevation(), b.getElevation(), f));
+		p.setGradient(lerp(a.getGradient(), b.getGradient(), f));
+		p.setLatitude(lerp(a.getLatitude(), b.getLatitude(), f));
+		p.setLongitude(lerp(a.getLongitude(), b.getLongitude(), f));
+		p.setSpeed(lerp(a.getSpeed(), b.getSpeed(), f));
+		p.setTime(Math.round(lerp(a.getTime(), b.getTime(), f)));
+		// power programs are steps
+		p.setPower(a.getPower());
+		return p;
+	}
+
+	private static double lerp(double a, double b, double f) {
+		return a + (b - a) * f;
+	}
+}
@@ -15,6 +15,8 @@
  */
 package com.wattzap.model;
 
+import java.io.File;
+
 import org.jfree.data.xy.XYSeries;
 
 import com.gpxcreator.gpxpanel.GPXFile;
@@ -32,7 +34,19 @@ public abstract class RouteReader {
 	public final static int SLOPE = 1;
 	public final static int HEARTRATE = 2;
 	Point[] points = null;
-	int currentPoint = 0;
+	private volatile RouteIndex index = null;
+
+	// parsed routes, shared by all readers
+	static RouteCache cache = null;
+
+	static synchronized RouteCache getCache() {
+		if (cache == null) {
+			cache = new RouteCache(new File(
+					UserPreferences.INSTANCE.getUserDataDirectory(),
+					"routecache"));
+		}
+		return cache;
+	}
 
 	public abstract String getExtension();
 
@@ -50,31 +64,38 @@ public abstract class RouteReader {
 	public abstract XYSeries getSeries();
 
 	/**
-	 * returns a point relative to the current position
+	 * Distance index over the current points, rebuilt when a route is loaded.
+	 * Safe to use from any thread.
 	 */
-	public Point getPoint(double distance) {
-		while (currentPoint < points.length
-				&& (points[currentPoint].getDistanceFromStart() < (distance * 1000))) {
-			currentPoint++;
-		}// while
-		if (currentPoint == points.length) {
-			return null;
-		} else if (currentPoint > 0) {
-			return points[currentPoint - 1];
-		} else {
-			return points[0];
+	public RouteIndex getIndex() {
+		Point[] p = points;
+		RouteIndex i = index;
+		if (i == null || !i.isFor(p)) {
+			i = new RouteIndex(p);
+			index = i;
 		}
+		return i;
+	}
+
+	/**
+	 * Returns the point at or immediately before distance
+	 * 
+	 * @param distance
+	 *            in km
+	 * @return null past the end of the route
+	 */
+	public Point getPoint(double distance) {
+		return getIndex().getPoint(distance * 1000);
 	}
 
 	/**
-	 * Returns a Point relative to the start of the track, resets current point
+	 * Returns a Point relative to the start of the track
 	 * 
 	 * @param distance
 	 * @return
 	 */
 	public Point getAbsolutePoint(double distance) {
 		if (points != null) {
-			currentPoint = 0;
 			return getPoint(distance);
 		}
 		return null;
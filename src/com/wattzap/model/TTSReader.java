@@ -5,10 +5,12 @@
  */
 package com.wattzap.model;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -36,8 +38,6 @@ public class TTSReader extends RouteReader {
 	private static double frameRate;
 	private ArrayList<Point> pointList = null;
 	private ProgramPoint[] programList = null;
-	private List<byte[]> content;
-	private byte[] pre;
 
 	private static String currentFile;
 	private static int imageId;
@@ -129,8 +129,24 @@ public class TTSReader extends RouteReader {
 	@Override
 	public void load(String fileName) {
 		this.fileName = fileName.substring(0, fileName.lastIndexOf('.'));
+
+		File source = new File(fileName);
+		RouteCache.Entry cached = getCache().get(source);
+		if (cached != null) {
+			ttsName = cached.name;
+			totalDistance = cached.distance;
+			minSlope = cached.minSlope;
+			maxSlope = cached.maxSlope;
+			points = cached.points;
+			series = cached.series;
+			gpxFile = cached.gpxFile == null ? new GPXFile() : cached.gpxFile;
+			return;
+		}
+
 		parseFile(fileName);
-		
+		if (points != null) {
+			getCache().put(this, source);
+		}
 	}
 
 	@Override
@@ -162,72 +178,82 @@ public class TTSReader extends RouteReader {
 		return minSlope;
 	}
 
+	/*
+	 * The file is mapped and walked in place. Headers are 14 bytes, the first
+	 * short of a header is at most 20. Each header is followed by its data
+	 * block, width * count bytes long, which is decrypted with a key made from
+	 * the header.
+	 */
 	private void parseFile(String fileName) {
-
-		content = new ArrayList<byte[]>();
-		pre = new byte[2];
-		int lastSize = -1;
-		InputStream is = null;
+		pointList = new ArrayList<Point>();
+		gpxFile = new GPXFile();
+		series = new XYSeries("");
+		keyH = null;
+		blockType = -1;
+		version = -1;
+		stringId = -1;
+		stringType = StringType.BLOCK;
 
 		try {
-			is = new FileInputStream(fileName);
-			for (;;) {
-				if (!readData(is, pre, false)) {
-					break;
-				}
-				if (isHeader(pre)) {
-					byte[] header = new byte[14];
-					if (readData(is, header, true)) {
-						content.add(header);
-						lastSize = getUInt(header, 6) * getUInt(header, 10);
-					} else {
+			ByteBuffer buf = map(fileName);
+			int lastSize = -1;
+			int pos = 0;
+			while (buf.limit() - pos >= 2) {
+				if (isHeader(buf, pos)) {
+					if (buf.limit() - pos < HEADER) {
 						throw new IllegalArgumentException("Cannot read header");
 					}
+					header(buf, pos);
+					lastSize = buf.getInt(pos + 6) * buf.getInt(pos + 10);
+					pos += HEADER;
 
 					// one byte data.. unconditionally read as data, no-one is
 					// able
 					// to check it
 					if (lastSize < 2) {
-						byte[] data = new byte[lastSize];
-						if (readData(is, data, false)) {
-							content.add(data);
-						} else {
+						if (lastSize < 0 || buf.limit() - pos < lastSize) {
 							throw new IllegalArgumentException("Cannot read "
 									+ lastSize + "b data");
 						}
+						data(buf, pos, lastSize);
+						pos += lastSize;
 						lastSize = -1;
 					}
 				} else {
 					if (lastSize < 2) {
 						throw new IllegalArgumentException(
-								"Data not allowed, header " + getUShort(pre, 0));
+								"Data not allowed, header "
+										+ (buf.getShort(pos) & 0xffff));
 					}
-					byte[] data = new byte[lastSize];
-					if (readData(is, data, true)) {
-						content.add(data);
-					} else {
+					if (buf.limit() - pos < lastSize) {
 						throw new IllegalArgumentException("Cannot read "
 								+ lastSize + "b data");
 					}
+					data(buf, pos, lastSize);
+					pos += lastSize;
 					lastSize = -1;
 				}
-			}// for
+			}// while
 		} catch (IOException ex) {
 			logger.error("Cannot read " + fileName + "::"
 					+ ex.getLocalizedMessage());
 		} catch (IllegalArgumentException ex) {
 			logger.error("Wrong file format " + fileName + "::"
 					+ ex.getLocalizedMessage());
+		}
+		mergePoints();
+	}
+
+	private static ByteBuffer map(String fileName) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(
+					ByteOrder.LITTLE_ENDIAN);
 		} finally {
-			try {
-				if (is != null) {
-					is.close();
-				}
-			} catch (IOException e) {
-				logger.error("IOException : " + e);
-			}
+			// the mapping stays valid after the channel is closed
+			raf.close();
 		}
-		loadHeaders();
 	}
 
 	private static String toHex(byte bb) {
@@ -264,114 +290,102 @@ public class TTSReader extends RouteReader {
 		NONPRINTABLE, BLOCK, STRING, IMAGE, CRC
 	};
 
-	private void loadHeaders() {
-		pointList = new ArrayList<Point>();
-		gpxFile = new GPXFile();
-		series = new XYSeries("");
-
-		int[] key2 = rehashKey(key, 17);
-		int[] keyH = null;
-
-		int blockType = -1;
-		int version = -1;
-		int stringId = -1;
-		StringType stringType = StringType.BLOCK;
-
-		int fingerprint = 0;
-		int bytes = 0;
-		for (byte[] data : content) {
-			if (isHeader(data)) {
-				String hdr = bytes + " [" + Integer.toHexString(bytes) + "]: "
-						+ getUShort(data, 0) + "." + getUShort(data, 2) + " v"
-						+ getUShort(data, 4) + " " + getUInt(data, 6) + "x"
-						+ getUInt(data, 10);
-				logger.debug(hdr);
-				fingerprint = getUInt(data, 6);
-				keyH = encryptHeader(iarr(data), key2);
-
-				stringType = StringType.NONPRINTABLE;
-				switch (getUShort(data, 2)) {
-				case 10: // crc of the data?
-					// I don't know how to compute it.. and to which data it
-					// belongs..
-					// for sure I'm not going to check these, I assume file is
-					// not broken
-					// (why it can be?)
-					stringType = StringType.CRC;
-					break;
-				case 110: // UTF-16 string
-					stringType = StringType.STRING;
-					stringId = getUShort(data, 0);
-					break;
-				case 120: // image fingerprint
-					stringId = getUShort(data, 0) + 1000;
-					break;
-				case 121: // imageType? always 01
-					break;
-				case 122: // image bytes, name is present in previous string
-							// from the block
-					stringType = StringType.IMAGE;
-					break;
-				default:
-					stringType = StringType.BLOCK;
-					blockType = getUShort(data, 2);
-					version = getUShort(data, 4);
-					logger.debug("\nblock type " + blockType + " version "
-							+ version);
-					stringId = -1;
-					break;
-				}
-			} else {
-				int[] decrD = decryptData(iarr(data), keyH);
-
-				keyH = null;
-				logger.debug("::");
+	private static final int HEADER = 14;
+	private static final int[] key2 = rehashKey(key, 17);
+
+	// state carried from a header to its data block
+	private int[] keyH = null;
+	private int blockType = -1;
+	private int version = -1;
+	private int stringId = -1;
+	private StringType stringType = StringType.BLOCK;
+
+	private void header(ByteBuffer buf, int pos) {
+		int id = buf.getShort(pos) & 0xffff;
+		int type = buf.getShort(pos + 2) & 0xffff;
+		if (logger.isDebugEnabled()) {
+			logger.debug(pos + " [" + Integer.toHexString(pos) + "]: " + id
+					+ "." + type + " v" + (buf.getShort(pos + 4) & 0xffff)
+					+ " " + buf.getInt(pos + 6) + "x" + buf.getInt(pos + 10));
+		}
+		keyH = encryptHeader(buf, pos, key2);
+
+		stringType = StringType.NONPRINTABLE;
+		switch (type) {
+		case 10: // crc of the data?
+			// I don't know how to compute it.. and to which data it
+			// belongs..
+			// for sure I'm not going to check these, I assume file is
+			// not broken
+			// (why it can be?)
+			stringType = StringType.CRC;
+			break;
+		case 110: // UTF-16 string
+			stringType = StringType.STRING;
+			stringId = id;
+			break;
+		case 120: // image fingerprint
+			stringId = id + 1000;
+			break;
+		case 121: // imageType? always 01
+			break;
+		case 122: // image bytes, name is present in previous string
+					// from the block
+			stringType = StringType.IMAGE;
+			break;
+		default:
+			stringType = StringType.BLOCK;
+			blockType = type;
+			version = buf.getShort(pos + 4) & 0xffff;
+			logger.debug("\nblock type " + blockType + " version "
+					+ version);
+			stringId = -1;
+			break;
+		}
+	}
 
-				String result = null;
-				switch (stringType) {
-				case CRC:
-					break;
-				case IMAGE:
-					logger.debug("[image " + blockType + "."
-							+ (stringId - 1000) + "]");
-					/*
-					 * try { result = currentFile + "." + (imageId++) + ".png";
-					 * FileOutputStream file = new FileOutputStream(result);
-					 * file.write(barr(decrD)); file.close(); } catch
-					 * (IOException e) { result = "cannot create: " + e; }
-					 */
-					break;
-				case STRING:
-					if (strings.containsKey(blockType + stringId)) {
-						logger.debug("[" + strings.get(blockType + stringId)
-								+ "]");
-					} else {
-						logger.debug("[" + blockType + "." + stringId + "]");
-					}
-					StringBuilder str = new StringBuilder();
-					for (int i = 0; i < decrD.length / 2; i++) {
-						char c = (char) (decrD[2 * i] | (int) decrD[2 * i + 1] << 8);
-						str.append(c);
-					}
-					result = str.toString();
-					switch (blockType + stringId) {
-					case 5002: // Video Name
-						ttsName = result;
-						break;
-					default:
-						logger.debug("[" + result + "]");
-					}
+	private void data(ByteBuffer buf, int pos, int length) {
+		int[] k = keyH;
+		keyH = null;
+		logger.debug("::");
 
-					break;
-				case BLOCK:
-					blockProcessing(blockType, version, barr(decrD));
-					break;
-				}
+		switch (stringType) {
+		case CRC:
+			break;
+		case IMAGE:
+			logger.debug("[image " + blockType + "." + (stringId - 1000)
+					+ "]");
+			break;
+		case STRING:
+			if (strings.containsKey(blockType + stringId)) {
+				logger.debug("[" + strings.get(blockType + stringId) + "]");
+			} else {
+				logger.debug("[" + blockType + "." + stringId + "]");
+			}
+			StringBuilder str = new StringBuilder(length / 2);
+			for (int i = 0; i < length / 2; i++) {
+				int lo = k[(2 * i) % k.length] ^ buf.get(pos + 2 * i);
+				int hi = k[(2 * i + 1) % k.length] ^ buf.get(pos + 2 * i + 1);
+				str.append((char) (lo | hi << 8));
+			}
+			String result = str.toString();
+			switch (blockType + stringId) {
+			case 5002: // Video Name
+				ttsName = result;
+				break;
+			default:
+				logger.debug("[" + result + "]");
 			}
-			logger.debug("\n");
-			bytes += data.length;
+			break;
+		case BLOCK:
+			blockProcessing(blockType, version, decryptData(buf, pos, length, k));
+			break;
+		default:
+			break;
 		}
+	}
 
+	private void mergePoints() {
 		// merge program points
 		int pointCount = 0;
 		long lastDistance = 0;
@@ -782,124 +796,32 @@ public class TTSReader extends RouteReader {
 		return ret;
 	}
 
-	private static int[] encryptHeader(int[] A_0, int[] key2) {
-		int[] bytes = key2;
-		int[] numArray = new int[bytes.length];
-		int index1 = 0;
-		int index2 = 0;
-		int num = 6;
-		while (true) {
-			switch (num) {
-			case 0:
-				index1 = 0;
-				num = 2;
-				continue;
-			case 1:
-				if (index2 < bytes.length) {
-					numArray[index2] = (A_0[index1] ^ bytes[index2]);
-					num = 5;
-					continue;
-				} else {
-					num = 3;
-					continue;
-				}
-			case 2:
-				++index2;
-				num = 4;
-				continue;
-			case 3:
-				return numArray;
-			case 4:
-			case 6:
-				num = 1;
-				continue;
-			case 5:
-				if (index1++ >= A_0.length - 1) {
-					num = 0;
-					continue;
-				} else {
-					num = 2;
-					continue;
-				}
-			default:
-				throw new IllegalArgumentException("Restart function?");
-			}
+	/*
+	 * Data key is the rehashed key XORed with the (signed) header bytes, the
+	 * header repeating along the key.
+	 */
+	private static int[] encryptHeader(ByteBuffer buf, int pos, int[] key2) {
+		int[] numArray = new int[key2.length];
+		for (int i = 0; i < key2.length; i++) {
+			numArray[i] = buf.get(pos + i % HEADER) ^ key2[i];
 		}
+		return numArray;
 	}
 
-	private static int[] decryptData(int[] A_0, int[] A_1) {
-		int[] numArray = new int[A_0.length];
-		int index = 0;
-		int num1 = 5;
-
-		int num2 = -1000;
-		int e = 0; // set before each block
-		while (true) {
-			switch (num1) {
-			case 0:
-				return numArray;
-			case 1:
+	/*
+	 * Decrypts a data block straight from the file, the key repeats along the
+	 * data.
+	 */
+	private static byte[] decryptData(ByteBuffer buf, int pos, int length,
+			int[] key) {
+		byte[] data = new byte[length];
+		for (int i = 0, e = 0; i < length; i++) {
+			data[i] = (byte) (key[e] ^ buf.get(pos + i));
+			if (++e == key.length) {
 				e = 0;
-				num1 = 4;
-				continue;
-			case 2:
-				if (index < A_0.length) {
-					numArray[index] = A_1[e] ^ A_0[index];
-					num2 = e++;
-					num1 = 6;
-					continue;
-				} else {
-					num1 = 0;
-					continue;
-				}
-			case 3:
-			case 5:
-				num1 = 2;
-				continue;
-			case 4:
-				++index;
-				num1 = 3;
-				continue;
-			case 6:
-				if (num2 >= A_1.length - 1) {
-					num1 = 1;
-					continue;
-				} else {
-					num1 = 4;
-					continue;
-				}
-			default:
-				throw new IllegalArgumentException("Restart function?");
 			}
 		}
-	}
-
-	private static int[] iarr(byte[] a) {
-		int[] r = new int[a.length];
-		for (int i = 0; i < a.length; i++) {
-			r[i] = (int) a[i];
-		}
-		return r;
-	}
-
-	private static byte[] barr(int[] a) {
-		byte[] r = new byte[a.length];
-		for (int i = 0; i < a.length; i++) {
-			r[i] = (byte) a[i];
-		}
-		return r;
-	}
-
-	private boolean readData(InputStream is, byte[] buffer, boolean copyPre)
-			throws IOException {
-		int first = 0;
-		if (copyPre) {
-			buffer[0] = pre[0];
-			buffer[1] = pre[1];
-			first = 2;
-		}
-		return (is.read(buffer, first, buffer.length - first) == buffer.length
-				- first);
+		return data;
 	}
 
 	private static int getUByte(byte[] buffer, int offset) {
@@ -952,11 +874,8 @@ public class TTSReader extends RouteReader {
 		return b.toString();
 	}
 
-	private static boolean isHeader(byte[] buffer) {
-		if (buffer.length < 2) {
-			return false;
-		}
-		return getUShort(buffer, 0) <= 20;
+	private static boolean isHeader(ByteBuffer buf, int pos) {
+		return (buf.getShort(pos) & 0xffff) <= 20;
 	}
 
 	class gpsPoint {
@@ -30,6 +30,7 @@ import com.wattzap.controller.Messages;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.model.power.Power;
 import com.wattzap.model.power.PowerProfiles;
+import com.wattzap.model.power.PowerTable;
 import com.wattzap.utils.TcxWriter;
 import com.wattzap.view.Workouts;
 
@@ -44,6 +45,7 @@ public enum UserPreferences {
 	private Power powerProfile;
 	String user;
 	private final DataStore ds;
+	private final PropertyCache props;
 	private static int evalTime = 240;
 	private static String workingDirectory = null;
 	private static String userDataDirectory = null;
@@ -56,6 +58,7 @@ public enum UserPreferences {
 		user = System.getProperty("user.name");
 		String wd = getWD();
 		ds = new DataStore(wd, cryptKey);
+		props = new PropertyCache(ds);
 
 		Locale currentLocale = getLocale();
 		messages = ResourceBundle.getBundle("MessageBundle", currentLocale);
@@ -87,6 +90,13 @@ public enum UserPreferences {
 		ds.saveWorkOut(user, data);
 	}
 
+	/**
+	 * @return false if none of the workouts could be saved
+	 */
+	public boolean addWorkouts(List<WorkoutData> workouts) {
+		return ds.saveWorkOuts(user, workouts);
+	}
+
 	public void updateWorkout(WorkoutData data) {
 		ds.updateWorkout(user, data);
 	}
@@ -99,10 +109,38 @@ public enum UserPreferences {
 		ds.deleteWorkout(user, name);
 	}
 
+	public double[] getPowerCurve(String name) {
+		return ds.getPowerCurve(user, name);
+	}
+
+	public void savePowerCurve(WorkoutData data) {
+		ds.savePowerCurve(user, data);
+	}
+
+	public double[] getSeasonBest(int year) {
+		return ds.getSeasonBest(user, year);
+	}
+
 	public List<WorkoutData> listWorkouts() {
 		return ds.listWorkouts(user);
 	}
 
+	public List<WorkoutData> listWorkoutsWithoutCurve() {
+		return ds.listWorkoutsWithoutCurve(user);
+	}
+
+	/**
+	 * @return true until curves for workouts saved before dbVersion 1.4 have
+	 *         been computed, season bests are partial until then
+	 */
+	public boolean isCurveBackfillPending() {
+		return "pending".equals(get("", DataStore.CURVE_BACKFILL, null));
+	}
+
+	public void setCurveBackfillDone() {
+		set("", DataStore.CURVE_BACKFILL, "done");
+	}
+
 	public String getDBVersion() {
 		return get("", "dbVersion", "1.2");
 	}
@@ -302,6 +340,26 @@ public enum UserPreferences {
 		return powerProfile;
 	}
 
+	/**
+	 * @return the power profile for the sensor listeners, behind lookup
+	 *         tables unless they are turned off
+	 */
+	public Power getSensorPowerProfile() {
+		Power p = getPowerProfile();
+		if (p != null && isPowerTables()) {
+			return PowerTable.of(p);
+		}
+		return p;
+	}
+
+	public boolean isPowerTables() {
+		return getBoolean("powerTables", true);
+	}
+
+	public void setPowerTables(boolean value) {
+		setBoolean("powerTables", value);
+	}
+
 	public void setPowerProfile(String profile) {
 		String p = get(user, "profile", null);
 		if (!profile.equals(p)) {
@@ -428,7 +486,7 @@ public enum UserPreferences {
 	// Data Access Functions
 
 	private double getDouble(String key, double d) {
-		String v = ds.getProp(user, key);
+		String v = props.getProp(user, key);
 		if (v != null) {
 			try {
 				d = Double.parseDouble(v);
@@ -441,11 +499,11 @@ public enum UserPreferences {
 	}
 
 	private void setDouble(String key, double d) {
-		ds.insertProp(user, key, Double.toString(d));
+		props.insertProp(user, key, Double.toString(d));
 	}
 
 	private int getInt(String user, String key, int i) {
-		String v = ds.getProp(user, key);
+		String v = props.getProp(user, key);
 		if (v != null) {
 			try {
 				i = Integer.parseInt(v);
@@ -471,7 +529,7 @@ public enum UserPreferences {
 	}
 
 	private void setInt(String user, String key, int i) {
-		ds.insertProp(user, key, Integer.toString(i));
+		props.insertProp(user, key, Integer.toString(i));
 	}
 
 	private void setIntCrypt(String user, String key, int i) {
@@ -479,7 +537,7 @@ public enum UserPreferences {
 	}
 
 	private boolean getBoolean(String key, boolean b) {
-		String v = ds.getProp(user, key);
+		String v = props.getProp(user, key);
 		if (v != null) {
 			try {
 				b = Boolean.parseBoolean(v);
@@ -492,11 +550,11 @@ public enum UserPreferences {
 	}
 
 	private void setBoolean(String key, boolean b) {
-		ds.insertProp(user, key, Boolean.toString(b));
+		props.insertProp(user, key, Boolean.toString(b));
 	}
 
 	private String get(String user, String key, String s) {
-		String v = ds.getProp(user, key);
+		String v = props.getProp(user, key);
 		if (v != null) {
 			s = v;
 		}
@@ -505,10 +563,15 @@ public enum UserPreferences {
 	}
 
 	private void set(String user, String key, String s) {
-		ds.insertProp(user, key, s);
+		props.insertProp(user, key, s);
+	}
+
+	public PropertyCache getPropertyCache() {
+		return props;
 	}
 
 	public void shutDown() {
+		props.close();
 		ds.close();
 	}
 
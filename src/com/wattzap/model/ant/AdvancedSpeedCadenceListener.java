@@ -23,6 +23,7 @@ import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.Messages;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetryPool;
 
 /**
  * (c) 2013-2015 David George / Wattzap.com
@@ -95,12 +96,15 @@ public class AdvancedSpeedCadenceListener extends AntListener {
 		// Bytes 6 and 7: speed rotation count.
 		int sR = data[6] | (data[7] << 8);
 
-		logger.debug("tC " + tC + " cR " + cR + " tS " + tS + " sR " + sR);
+		if (logger.isDebugEnabled()) {
+			logger.debug("tC " + tC + " cR " + cR + " tS " + tS + " sR " + sR);
+		}
 
 		if (speedListener != null) {
 			Telemetry t = speedListener.getTelemetry(tS, sR);
 			if (t != null) {
 				MessageBus.INSTANCE.send(Messages.SPEED, t);
+				TelemetryPool.release(t);
 			}
 		}
 
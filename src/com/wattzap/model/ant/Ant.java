@@ -55,6 +55,7 @@ public class Ant implements MessageCallback {
 
 	private HashMap<String,AntListener> antListeners;
 	private HashMap<String,Channel> antChannels;
+	private AntRecorder recorder = null;
 	
 	private UserPreferences userPrefs = UserPreferences.INSTANCE;
 
@@ -127,9 +128,17 @@ public class Ant implements MessageCallback {
 		key.setName("N:ANT+");
 	}
 
+	/**
+	 * Records the messages of channels opened from now on
+	 */
+	public void setRecorder(AntRecorder recorder) {
+		this.recorder = recorder;
+	}
+
 	public void register() {
 		MessageBus.INSTANCE.register(Messages.START, this);
 		MessageBus.INSTANCE.register(Messages.STOP, this);
+		MessageBus.INSTANCE.register(Messages.CLOSE, this);
 	}
 
 	public static void setupLogging() {
@@ -216,6 +225,9 @@ public class Ant implements MessageCallback {
 		}
 		// cleans up : gives up control of usb device etc.
 		node.stop();
+		if (recorder != null) {
+			recorder.flush();
+		}
 	}
 	
 	public void open() {
@@ -255,7 +267,12 @@ public class Ant implements MessageCallback {
 
 		// registers our Heart Rate and Speed and Cadence callbacks with the
 		// channel
-		channel.registerRxListener(listener, BroadcastDataMessage.class);
+		if (recorder != null) {
+			channel.registerRxListener(recorder.wrap(listener),
+					BroadcastDataMessage.class);
+		} else {
+			channel.registerRxListener(listener, BroadcastDataMessage.class);
+		}
 
 		// ******* start device specific configuration ******
 		channel.setId(listener.getChannelId(), listener.getDeviceType(),
@@ -370,6 +387,12 @@ public class Ant implements MessageCallback {
 		case START:
 			open();
 			break;
+		case CLOSE:
+			// route closed, the recorder is closed when the application exits
+			if (recorder != null) {
+				recorder.flush();
+			}
+			break;
 		}
 	}
 	
@@ -0,0 +1,156 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.ant;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.cowboycoders.ant.messages.data.BroadcastDataMessage;
+
+/**
+ * Records the broadcast messages received on each ANT channel so a session
+ * can be replayed later with AntReplay.
+ * 
+ * The log is a header (magic, version) followed by records:
+ * 
+ * CHANNEL: [0][channel index][name as UTF]
+ * 
+ * DATA: [1][channel index][ms since previous DATA as int][length][payload]
+ * 
+ * A channel record is written the first time its channel has data.
+ */
+public class AntRecorder {
+	static final int MAGIC = 0x575A4152; // WZAR
+	static final int VERSION = 1;
+	static final byte CHANNEL = 0;
+	static final byte DATA = 1;
+
+	private final static Logger logger = LogManager.getLogger("AntRecorder");
+
+	private final File file;
+	private DataOutputStream out;
+	private final HashMap<String, Integer> channels = new HashMap<String, Integer>();
+	private long last = System.nanoTime();
+	private long count = 0;
+
+	public AntRecorder(File file) throws IOException {
+		this.file = file;
+		out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		logger.info("Recording ANT messages to " + file);
+	}
+
+	/**
+	 * @return a listener that records each message before passing it on
+	 */
+	public AntListener wrap(final AntListener listener) {
+		return new AntListener() {
+			@Override
+			public void receiveMessage(BroadcastDataMessage message) {
+				record(listener.getName(), message.getPrimitiveData());
+				listener.receiveMessage(message);
+			}
+
+			@Override
+			public int getChannelId() {
+				return listener.getChannelId();
+			}
+
+			@Override
+			public int getChannelPeriod() {
+				return listener.getChannelPeriod();
+			}
+
+			@Override
+			public int getDeviceType() {
+				return listener.getDeviceType();
+			}
+
+			@Override
+			public String getName() {
+				return listener.getName();
+			}
+		};
+	}
+
+	/*
+	 * Channels receive on their own threads
+	 */
+	synchronized void record(String name, byte[] data) {
+		if (out == null) {
+			return;
+		}
+
+		long now = System.nanoTime();
+		try {
+			Integer channel = channels.get(name);
+			if (channel == null) {
+				channel = channels.size();
+				channels.put(name, channel);
+				out.writeByte(CHANNEL);
+				out.writeByte(channel);
+				out.writeUTF(name);
+			}
+			out.writeByte(DATA);
+			out.writeByte(channel);
+			out.writeInt((int) ((now - last) / 1000000));
+			out.writeByte(data.length);
+			out.write(data);
+			// keep the remainder so the delay doesn't drift
+			last = now - (now - last) % 1000000;
+			count++;
+		} catch (IOException e) {
+			logger.error("Stopped recording to " + file + ": "
+					+ e.getLocalizedMessage());
+			close();
+		}
+	}
+
+	/**
+	 * Writes everything recorded so far
+	 */
+	public synchronized void flush() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.flush();
+		} catch (IOException e) {
+			logger.error(e.getLocalizedMessage());
+		}
+	}
+
+	public synchronized void close() {
+		if (out == null) {
+			return;
+		}
+		try {
+			out.close();
+		} catch (IOException e) {
+			logger.error(e.getLocalizedMessage());
+		}
+		out = null;
+		logger.info("Recorded " + count + " ANT messages to " + file);
+	}
+}
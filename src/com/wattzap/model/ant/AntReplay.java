@@ -0,0 +1,211 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.ant;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.cowboycoders.ant.messages.data.BroadcastDataMessage;
+
+import com.wattzap.controller.MessageBus;
+import com.wattzap.controller.MessageCallback;
+import com.wattzap.controller.Messages;
+
+/**
+ * Feeds a log written by AntRecorder to the ANT listeners in place of an ANT
+ * stick.
+ * 
+ * Messages are delivered with the recorded timing divided by speed, a speed
+ * of 0 replays as fast as the listeners take them. Channels without a
+ * listener are skipped.
+ */
+public class AntReplay implements MessageCallback, Runnable {
+	private final static Logger logger = LogManager.getLogger("AntReplay");
+
+	private final File file;
+	private final Map<String, AntListener> listeners;
+	private final double speed;
+	private Thread thread = null;
+	private boolean paused = false;
+
+	public AntReplay(File file, Map<String, AntListener> listeners,
+			double speed) {
+		this.file = file;
+		this.listeners = listeners;
+		this.speed = speed;
+	}
+
+	public void register() {
+		MessageBus.INSTANCE.register(Messages.START, this);
+		MessageBus.INSTANCE.register(Messages.STOP, this);
+		MessageBus.INSTANCE.register(Messages.CLOSE, this);
+	}
+
+	/*
+	 * STOP pauses the replay where it is and START carries on from there, the
+	 * log is only read from the start again after CLOSE
+	 */
+	@Override
+	public synchronized void callback(Messages message, Object o) {
+		switch (message) {
+		case START:
+			if (thread == null) {
+				paused = false;
+				thread = new Thread(this, "ANT Replay");
+				thread.setDaemon(true);
+				thread.start();
+			} else if (paused) {
+				paused = false;
+				notifyAll();
+			}
+			break;
+		case STOP:
+			if (thread != null) {
+				paused = true;
+			}
+			break;
+		case CLOSE:
+			if (thread != null) {
+				thread.interrupt();
+				thread = null;
+				paused = false;
+			}
+			break;
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			long n = replay();
+			logger.info("Replayed " + n + " ANT messages from " + file);
+		} catch (InterruptedException e) {
+			logger.info("ANT replay stopped");
+		} catch (IOException e) {
+			logger.error("Cannot replay " + file + ": "
+					+ e.getLocalizedMessage());
+		}
+	}
+
+	/*
+	 * Waits for up to wait ms, and for as long as the replay is paused
+	 * 
+	 * @return nanoseconds spent paused, to be left out of the replay clock
+	 */
+	private synchronized long sleep(long wait) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (!paused && wait > 0) {
+			wait(wait);
+		}
+		if (!paused) {
+			return 0;
+		}
+		long t = System.nanoTime();
+		while (paused) {
+			wait();
+		}
+		return System.nanoTime() - t;
+	}
+
+	/**
+	 * Replays the whole log on the calling thread
+	 * 
+	 * @return the number of messages delivered
+	 */
+	public long replay() throws IOException, InterruptedException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != AntRecorder.MAGIC) {
+				throw new IOException("not an ANT recording");
+			}
+			int version = in.readInt();
+			if (version != AntRecorder.VERSION) {
+				throw new IOException("unsupported version " + version);
+			}
+
+			// listener for each channel index, null if not replayed
+			ArrayList<AntListener> channels = new ArrayList<AntListener>();
+			long start = System.nanoTime();
+			long time = 0;
+			long count = 0;
+			while (true) {
+				int type;
+				try {
+					type = in.readByte();
+				} catch (EOFException e) {
+					// recording ended
+					break;
+				}
+
+				int channel = in.readUnsignedByte();
+				switch (type) {
+				case AntRecorder.CHANNEL:
+					String name = in.readUTF();
+					while (channels.size() <= channel) {
+						channels.add(null);
+					}
+					channels.set(channel, listeners.get(name));
+					break;
+				case AntRecorder.DATA:
+					time += in.readInt();
+					byte[] data = new byte[in.readUnsignedByte()];
+					in.readFully(data);
+					AntListener listener = channel < channels.size() ? channels
+							.get(channel) : null;
+					if (listener == null) {
+						break;
+					}
+
+					while (true) {
+						long wait = 0;
+						if (speed > 0) {
+							wait = (long) (time / speed)
+									- (System.nanoTime() - start) / 1000000;
+						}
+						long idle = sleep(wait);
+						if (idle == 0 && wait <= 0) {
+							break;
+						}
+						start += idle;
+					}
+
+					// listeners may keep the message, don't reuse it
+					BroadcastDataMessage message = new BroadcastDataMessage();
+					message.setData(data);
+					listener.receiveMessage(message);
+					count++;
+					break;
+				default:
+					throw new IOException("bad record type " + type);
+				}
+			}
+			return count;
+		} finally {
+			in.close();
+		}
+	}
+}
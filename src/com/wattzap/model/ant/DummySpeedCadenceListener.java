@@ -15,19 +15,18 @@
  */
 package com.wattzap.model.ant;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
-
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
+import com.wattzap.model.RouteIndex;
 import com.wattzap.model.RouteReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Point;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetryPool;
 import com.wattzap.model.power.Power;
 import com.wattzap.utils.Rolling;
 
@@ -43,9 +42,13 @@ public class DummySpeedCadenceListener extends Thread implements
 		MessageCallback {
 	private boolean running = true;
 	private double distance = 0.0;
+	// SPEED messages, see TelemetryPool for who owns them
+	private final TelemetryPool pool = new TelemetryPool(8);
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
 
 	RouteReader routeData = null;
+	// forward lookups along the route
+	RouteIndex.Cursor routeCursor;
 	Rolling rPower;
 
 	double mass;
@@ -76,7 +79,7 @@ public class DummySpeedCadenceListener extends Thread implements
 			if (running) {
 				Point p;
 
-				Telemetry t = new Telemetry();
+				Telemetry t = pool.acquire();
 
 				// half FTP
 				// int powerWatts = (int)
@@ -91,7 +94,7 @@ public class DummySpeedCadenceListener extends Thread implements
 						&& routeData != null) {
 
 					if (routeData.routeType() == RouteReader.SLOPE) {
-						p = routeData.getPoint(distance);
+						p = routeCursor.interpolate(distance * 1000);
 
 						/*
 						 * increase power for hills to FTP
@@ -113,10 +116,7 @@ public class DummySpeedCadenceListener extends Thread implements
 												.getResistance());
 							}
 
-							BigDecimal bd = new BigDecimal(speed).setScale(2,
-									RoundingMode.HALF_UP);
-
-							t.setVirtualSpeed(bd.intValue());
+							t.setVirtualSpeed(round2(speed));
 
 							// we need to now calculate video speed but we need
 							// to
@@ -134,7 +134,7 @@ public class DummySpeedCadenceListener extends Thread implements
 						// TODO For power files we just want to play at normal
 						// speed. OK we no there is no ANT here.
 
-						p = routeData.getPoint(distance);
+						p = routeCursor.interpolate(distance * 1000);
 						// power comes from video (gradient)
 						// powerWatts = (int) ((p.getGradient()) +
 						// (Math.random() * 4));
@@ -151,10 +151,7 @@ public class DummySpeedCadenceListener extends Thread implements
 							// speed corresponding to this power
 							speed = power.getSpeed(powerWatts,
 									userPrefs.getResistance());
-							BigDecimal bd = new BigDecimal(speed).setScale(2,
-									RoundingMode.HALF_UP);
-
-							t.setVirtualSpeed(bd.intValue());
+							t.setVirtualSpeed(round2(speed));
 							t.setResistance(userPrefs
 									.getResistance());
 							if (routeData.getExtension().equals("pwr")) {
@@ -169,7 +166,7 @@ public class DummySpeedCadenceListener extends Thread implements
 				t.setPower(powerWatts);
 
 				if (routeData != null) {
-					p = routeData.getPoint(distance);
+					p = routeCursor.interpolate(distance * 1000);
 					if (p == null) {
 						// end of the road
 						t.setDistanceMeters(distance * 1000);
@@ -177,6 +174,7 @@ public class DummySpeedCadenceListener extends Thread implements
 						t.setSpeed(0);
 						t.setTime(System.currentTimeMillis());
 						MessageBus.INSTANCE.send(Messages.SPEED, t);
+						TelemetryPool.release(t);
 						return;
 					}
 					t.setElevation(p.getElevation());
@@ -190,6 +188,7 @@ public class DummySpeedCadenceListener extends Thread implements
 				t.setTime(System.currentTimeMillis());
 
 				MessageBus.INSTANCE.send(Messages.SPEED, t);
+				TelemetryPool.release(t);
 
 				// d = s * t
 				distance += (speed / 3600) * 0.25;
@@ -198,6 +197,14 @@ public class DummySpeedCadenceListener extends Thread implements
 
 	}
 
+	/*
+	 * Whole part of speed rounded to 2 decimal places, without a BigDecimal
+	 * every tick
+	 */
+	private static int round2(double speed) {
+		return (int) (Math.round(speed * 100) / 100.0);
+	}
+
 	public void callback(Messages message, Object o) {
 		switch (message) {
 
@@ -206,7 +213,7 @@ public class DummySpeedCadenceListener extends Thread implements
 			mass = userPrefs.getTotalWeight();
 			wheelSize = userPrefs.getWheelSizeCM();
 			resistance = userPrefs.getResistance();
-			power = userPrefs.getPowerProfile();
+			power = userPrefs.getSensorPowerProfile();
 			virtualPower = userPrefs.isVirtualPower();
 			if (this.getState() == Thread.State.NEW) {
 				start();
@@ -230,7 +237,8 @@ public class DummySpeedCadenceListener extends Thread implements
 			}
 
 			this.routeData = (RouteReader) o;
-			power = userPrefs.getPowerProfile();
+			routeCursor = routeData.getIndex().cursor();
+			power = userPrefs.getSensorPowerProfile();
 			power.setGrades(routeData.getMaxSlope(), routeData.getMinSlope());
 
 			distance = 0.0;
@@ -20,10 +20,12 @@ import org.cowboycoders.ant.messages.data.BroadcastDataMessage;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
+import com.wattzap.model.RouteIndex;
 import com.wattzap.model.RouteReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Point;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetryPool;
 import com.wattzap.model.power.Power;
 import com.wattzap.utils.Rolling;
 
@@ -47,14 +49,19 @@ public class PowerListener extends AntListener implements MessageCallback {
 
 	private int count = -1;
 
+	// SPEED messages, see TelemetryPool for who owns them
+	private final TelemetryPool pool = new TelemetryPool(8);
+
 	RouteReader routeData;
+	// forward lookups along the route
+	RouteIndex.Cursor routeCursor;
 	private double mass;
-	private Rolling averagePower;
+	Rolling averagePower;
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
 
 	// initialize for pairing
 	private double wheelSize = userPrefs.getWheelSizeCM();
-	private Power power = userPrefs.getPowerProfile();
+	Power power = userPrefs.getSensorPowerProfile();
 
 	public PowerListener() {
 		MessageBus.INSTANCE.register(Messages.START, this);
@@ -69,93 +76,104 @@ public class PowerListener extends AntListener implements MessageCallback {
 
 	@Override
 	public void receiveMessage(BroadcastDataMessage message) {
-		if (message.getUnsignedData()[0] == 0x10) {
+		int[] data = message.getUnsignedData();
+		if (data[0] == 0x10) {
 			// simple power message
-			int powerWatts = 0;
-			if (message.getUnsignedData()[1] != count) {
-				powerWatts = (message.getUnsignedData()[7] << 8)
-						| message.getUnsignedData()[6];
-				powerWatts = (int) averagePower.add(powerWatts);
-				count = message.getUnsignedData()[1] & 0xFF;
-			}
-
-			int rpm = -1;
-			if (message.getUnsignedData()[3] != 255) {
-				rpm = (byte) (message.getUnsignedData()[3] & 0xFF);
-			}
+			powerPage(data);
+		}
+	}
 
-			if (lastTime == -1) {
-				lastTime = System.currentTimeMillis();
-				return;
-			}
+	/**
+	 * Sends SPEED, and CADENCE without a cadence sensor, for a standard power
+	 * only page
+	 */
+	void powerPage(int[] data) {
+		int powerWatts = 0;
+		if (data[1] != count) {
+			powerWatts = (data[7] << 8) | data[6];
+			powerWatts = (int) averagePower.add(powerWatts);
+			count = data[1] & 0xFF;
+		}
 
-			double speed = 0;
-			double distanceKM = 0;
-			double timeS = 0;
-			long currentTime = System.currentTimeMillis();
-			long tDiff = currentTime - lastTime;
-			lastTime = currentTime;
-
-			Telemetry t = new Telemetry();
-			t.setPower(powerWatts);
-
-			// if we have GPX Data and Simulspeed is enabled calculate speed
-			// based on power and gradient using magic sauce
-			if (simulSpeed && routeData != null) {
-				Point p = routeData.getPoint(distance);
-				if (routeData.routeType() == RouteReader.SLOPE) {
-					if (p == null) {
-						// end of the road
-						distance = 0.0;
-						return;
-					}
-					if (powerWatts > 0) {
-						// only works when power is positive, this is most of
-						// the time on a turbo
-						speed = (power.getRealSpeed(mass,
-								p.getGradient() / 100, powerWatts)) * 3.6;
-						// d = s * t
-						distanceKM = (speed * tDiff) / 360000;
-						// System.out.println("speed " + speed + " distanceKM "
-						// + distanceKM + " watts " + powerWatts + " mass " +
-						// mass + " tDiff " + tDiff);
-					}
-				} else {
-					// power profile, speed is the ratio of our trainer power to
-					// the expected power
-					double ratio = (powerWatts / p.getPower());
-					// speed is video speed * power ratio
-					speed = p.getSpeed() * ratio;
-					distanceKM = (speed / 3600) * timeS;
-				}
-			} else {
-				speed = power.getRealSpeed(mass, 0, powerWatts);
-				distanceKM = (speed * tDiff) / 360000;
+		int rpm = -1;
+		if (data[3] != 255) {
+			rpm = (byte) (data[3] & 0xFF);
+		}
 
-			}
+		if (lastTime == -1) {
+			lastTime = System.currentTimeMillis();
+			return;
+		}
 
-			t.setDistanceMeters(distance * 1000);
-			if (routeData != null) {
-				Point p = routeData.getPoint(distance);
+		double speed = 0;
+		double distanceKM = 0;
+		double timeS = 0;
+		long currentTime = System.currentTimeMillis();
+		long tDiff = currentTime - lastTime;
+		lastTime = currentTime;
+
+		// if we have GPX Data and Simulspeed is enabled calculate speed
+		// based on power and gradient using magic sauce
+		if (simulSpeed && routeData != null) {
+			Point p = routeCursor.interpolate(distance * 1000);
+			if (routeData.routeType() == RouteReader.SLOPE) {
 				if (p == null) {
 					// end of the road
 					distance = 0.0;
 					return;
 				}
-				t.setElevation(p.getElevation());
-				t.setGradient(p.getGradient());
-				t.setLatitude(p.getLatitude());
-				t.setLongitude(p.getLongitude());
+				if (powerWatts > 0) {
+					// only works when power is positive, this is most of
+					// the time on a turbo
+					speed = (power.getRealSpeed(mass,
+							p.getGradient() / 100, powerWatts)) * 3.6;
+					// d = s * t
+					distanceKM = (speed * tDiff) / 360000;
+					// System.out.println("speed " + speed + " distanceKM "
+					// + distanceKM + " watts " + powerWatts + " mass " +
+					// mass + " tDiff " + tDiff);
+				}
+			} else {
+				// power profile, speed is the ratio of our trainer power to
+				// the expected power
+				double ratio = (powerWatts / p.getPower());
+				// speed is video speed * power ratio
+				speed = p.getSpeed() * ratio;
+				distanceKM = (speed / 3600) * timeS;
 			}
-			t.setSpeed(speed);
-			t.setTime(currentTime);
-			distance += distanceKM;
+		} else {
+			speed = power.getRealSpeed(mass, 0, powerWatts);
+			distanceKM = (speed * tDiff) / 360000;
 
-			MessageBus.INSTANCE.send(Messages.SPEED, t);
-			if (cadenceSensor == false && rpm != -1) {
-				MessageBus.INSTANCE.send(Messages.CADENCE, rpm);
+		}
+
+		Point p = null;
+		if (routeData != null) {
+			p = routeCursor.interpolate(distance * 1000);
+			if (p == null) {
+				// end of the road
+				distance = 0.0;
+				return;
 			}
+		}
 
+		Telemetry t = pool.acquire();
+		t.setPower(powerWatts);
+		t.setDistanceMeters(distance * 1000);
+		if (p != null) {
+			t.setElevation(p.getElevation());
+			t.setGradient(p.getGradient());
+			t.setLatitude(p.getLatitude());
+			t.setLongitude(p.getLongitude());
+		}
+		t.setSpeed(speed);
+		t.setTime(currentTime);
+		distance += distanceKM;
+
+		MessageBus.INSTANCE.send(Messages.SPEED, t);
+		TelemetryPool.release(t);
+		if (cadenceSensor == false && rpm != -1) {
+			MessageBus.INSTANCE.send(Messages.CADENCE, rpm);
 		}
 	}
 
@@ -166,7 +184,7 @@ public class PowerListener extends AntListener implements MessageCallback {
 			// get up to date values
 			mass = userPrefs.getTotalWeight();
 			wheelSize = userPrefs.getWheelSizeCM();
-			power = userPrefs.getPowerProfile();
+			power = userPrefs.getSensorPowerProfile();
 			simulSpeed = userPrefs.isVirtualPower();
 			lastTime = -1;
 			averagePower = new Rolling(userPrefs.getPowerSmoothing());
@@ -176,6 +194,7 @@ public class PowerListener extends AntListener implements MessageCallback {
 			break;
 		case GPXLOAD:
 			this.routeData = (RouteReader) o;
+			routeCursor = routeData.getIndex().cursor();
 			distance = 0.0;
 			break;
 		}
@@ -22,10 +22,12 @@ import org.cowboycoders.ant.messages.data.BroadcastDataMessage;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
+import com.wattzap.model.RouteIndex;
 import com.wattzap.model.RouteReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Point;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetryPool;
 import com.wattzap.model.power.Power;
 import com.wattzap.utils.Rolling;
 
@@ -53,14 +55,19 @@ public class SpeedListener extends AntListener implements MessageCallback {
 	//private static long elapsedTimestamp = 0;
 	private double distance = 0.0;
 
+	// SPEED messages, see TelemetryPool for who owns them
+	private final TelemetryPool pool = new TelemetryPool(8);
+
 	RouteReader routeData;
+	// forward lookups along the route
+	RouteIndex.Cursor routeCursor;
 	private double mass;
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
 
 	// initialize for pairing
 	private double wheelSize = userPrefs.getWheelSizeCM();
 	private int resistance = userPrefs.getResistance();
-	private Power power = userPrefs.getPowerProfile();
+	Power power = userPrefs.getSensorPowerProfile();
 
 	public SpeedListener() {
 		MessageBus.INSTANCE.register(Messages.START, this);
@@ -70,16 +77,17 @@ public class SpeedListener extends AntListener implements MessageCallback {
 
 	@Override
 	public void receiveMessage(BroadcastDataMessage message) {
-		int time = (message.getUnsignedData()[5] << 8)
-				| message.getUnsignedData()[4];
-
-		int count = (message.getUnsignedData()[7] << 8)
-				| message.getUnsignedData()[6];
-		logger.debug("time " + time + " count " + count);
+		int[] data = message.getUnsignedData();
+		int time = (data[5] << 8) | data[4];
+		int count = (data[7] << 8) | data[6];
+		if (logger.isDebugEnabled()) {
+			logger.debug("time " + time + " count " + count);
+		}
 
 		Telemetry t = getTelemetry(time, count);
 		if (t != null) {
 			MessageBus.INSTANCE.send(Messages.SPEED, t);
+			TelemetryPool.release(t);
 		}
 	}
 
@@ -91,7 +99,9 @@ public class SpeedListener extends AntListener implements MessageCallback {
 	 *            Time since last reading
 	 * @param count
 	 *            Number of wheel rotations
-	 * @return Telemetry or null if no reliable data could be calculated.
+	 * @return Telemetry or null if no reliable data could be calculated. The
+	 *         caller must release it with TelemetryPool.release() after
+	 *         sending it.
 	 */
 	Telemetry getTelemetry(int time, int count) {
 		if (lastCount == -1) {
@@ -136,7 +146,7 @@ public class SpeedListener extends AntListener implements MessageCallback {
 
 		double speed = 0;
 		double distanceKM = 0;
-		Telemetry t = new Telemetry();
+		int powerWatts = -1;
 		
 		/*
 		 * This allows us to record a speed when we are slowing down to stop by using realtime rather than anttime for readings.
@@ -146,7 +156,7 @@ public class SpeedListener extends AntListener implements MessageCallback {
 		 * gradient is less than zero, so downhill
 		 */
 		//long timestamp = System.currentTimeMillis();
-		//if (tDiff == 0  && elapsedTimestamp > 0 && routeData != null && routeData.getPoint(distance).getGradient() < 0) {
+		//if (tDiff == 0  && elapsedTimestamp > 0 && routeData != null && routeCursor.interpolate(distance * 1000).getGradient() < 0) {
 			//tDiff = (int) (timestamp - elapsedTimestamp)*1024/1000;
 			//System.out.println(">>> " + tDiff + " sDiff " + sDiff);
 			
@@ -160,7 +170,9 @@ public class SpeedListener extends AntListener implements MessageCallback {
 					//in this case we keep old speed
 					double tmpDist = lastNotNullSpeed * (((double) tDiff) / 1024) / 3600.0;
 					sDiff = (tmpDist * 100000.0 / wheelSize); 
-					logger.debug("sDiff calculate from lastNotNullSpeed("+lastNotNullSpeed+") tmpDist("+tmpDist+"): "+ sDiff+" wheelSize:"+wheelSize );
+					if (logger.isDebugEnabled()) {
+						logger.debug("sDiff calculate from lastNotNullSpeed("+lastNotNullSpeed+") tmpDist("+tmpDist+"): "+ sDiff+" wheelSize:"+wheelSize );
+					}
 				}
 			}
 			
@@ -170,14 +182,15 @@ public class SpeedListener extends AntListener implements MessageCallback {
 
 			speed = distanceKM / (timeS / (3600));
 			lastNotNullSpeed = speed;
-			int powerWatts = power.getPower(speed, resistance);
-			logger.debug("speed: "+speed+" power:"+powerWatts+ " distanceKM:"+distanceKM+" timeS:"+timeS+" tDiff:"+tDiff+" sDiff:"+sDiff);
-			t.setPower(powerWatts);
+			powerWatts = power.getPower(speed, resistance);
+			if (logger.isDebugEnabled()) {
+				logger.debug("speed: "+speed+" power:"+powerWatts+ " distanceKM:"+distanceKM+" timeS:"+timeS+" tDiff:"+tDiff+" sDiff:"+sDiff);
+			}
 
 			// if we have GPX Data and Simulspeed is enabled calculate speed
 			// based on power and gradient using magic sauce
 			if (simulSpeed && routeData != null) {
-				Point p = routeData.getPoint(distance);
+				Point p = routeCursor.interpolate(distance * 1000);
 				
 				if (routeData.routeType() == RouteReader.SLOPE) {
 					if (p == null) {
@@ -227,14 +240,20 @@ public class SpeedListener extends AntListener implements MessageCallback {
 
 		lastTime = time;
 		lastCount = count;
-		t.setDistanceMeters(distance * 1000);
+		Point p = null;
 		if (routeData != null) {
-			Point p = routeData.getPoint(distance);
+			p = routeCursor.interpolate(distance * 1000);
 			if (p == null) {
 				// end of the road
 				distance = 0.0;
 				return null;
 			}
+		}
+
+		Telemetry t = pool.acquire();
+		t.setPower(powerWatts);
+		t.setDistanceMeters(distance * 1000);
+		if (p != null) {
 			t.setElevation(p.getElevation());
 			t.setGradient(p.getGradient());
 			t.setLatitude(p.getLatitude());
@@ -246,7 +265,9 @@ public class SpeedListener extends AntListener implements MessageCallback {
 		
 		distance += distanceKM;
 
-		logger.debug("sending " + t);
+		if (logger.isDebugEnabled()) {
+			logger.debug("sending " + t);
+		}
 		return t;
 	}
 
@@ -258,7 +279,7 @@ public class SpeedListener extends AntListener implements MessageCallback {
 			mass = userPrefs.getTotalWeight();
 			wheelSize = userPrefs.getWheelSizeCM();
 			resistance = userPrefs.getResistance();
-			power = userPrefs.getPowerProfile();
+			power = userPrefs.getSensorPowerProfile();
 			simulSpeed = userPrefs.isVirtualPower();
 			initializing = true;
 			lastCount = -1;
@@ -269,6 +290,7 @@ public class SpeedListener extends AntListener implements MessageCallback {
 			break;
 		case GPXLOAD:
 			this.routeData = (RouteReader) o;
+			routeCursor = routeData.getIndex().cursor();
 			distance = 0.0;
 			break;
 		}
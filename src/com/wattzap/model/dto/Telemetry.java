@@ -25,6 +25,9 @@ import java.io.Serializable;
  * @date 19 June 2013
  */
 public class Telemetry extends Point implements Serializable {
+	// as computed for the class that wrote journal.ser, so old journals can
+	// still be read
+	private static final long serialVersionUID = -4791579653460346729L;
 	private static final double KMTOMILES = 1.609344;
 
 	private int cadence;
@@ -42,6 +45,13 @@ public class Telemetry extends Point implements Serializable {
 	}
 
 	public Telemetry(Telemetry t) {
+		set(t);
+	}
+
+	/**
+	 * Copies t, except for the resistance
+	 */
+	public void set(Telemetry t) {
 		setSpeed(t.getSpeed());
 		cadence = t.cadence;
 		//distance = t.distance;
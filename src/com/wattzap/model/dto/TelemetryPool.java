@@ -0,0 +1,115 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.dto;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wattzap.controller.Pooled;
+
+/**
+ * Reusable Telemetry for a sender of SPEED messages, so steady riding
+ * doesn't allocate a Telemetry per sensor message.
+ * 
+ * The sender owns the pool and is the only thread to call acquire(). It
+ * fills in the frame, sends it and releases it. Callbacks may read the frame
+ * while they are called, anything they keep must be copied or retained (see
+ * Pooled). A frame is reused once every holder has released it, the pool
+ * only grows when all of its frames are still held.
+ */
+public class TelemetryPool {
+	private Frame[] frames;
+	private int next = 0;
+	private int allocated = 0;
+
+	public TelemetryPool(int size) {
+		frames = new Frame[size];
+		for (int i = 0; i < size; i++) {
+			frames[i] = new Frame();
+		}
+		allocated = size;
+	}
+
+	/**
+	 * @return a reset frame held by the caller, who must release it
+	 */
+	public Telemetry acquire() {
+		for (int i = 0; i < frames.length; i++) {
+			Frame f = frames[next];
+			next = (next + 1) % frames.length;
+			if (f.refs.compareAndSet(0, 1)) {
+				f.reset();
+				return f;
+			}
+		}
+
+		// everything is held, slow subscribers
+		int n = frames.length;
+		frames = Arrays.copyOf(frames, n * 2);
+		for (int i = n; i < frames.length; i++) {
+			frames[i] = new Frame();
+		}
+		allocated = frames.length;
+		next = (n + 1) % frames.length;
+		frames[n].refs.set(1);
+		return frames[n];
+	}
+
+	/**
+	 * Releases a frame from acquire(), anything else is ignored
+	 */
+	public static void release(Telemetry t) {
+		if (t instanceof Frame) {
+			((Frame) t).release();
+		}
+	}
+
+	/**
+	 * @return frames created, including the initial ones
+	 */
+	public int getAllocated() {
+		return allocated;
+	}
+
+	private static class Frame extends Telemetry implements Pooled {
+		private static final long serialVersionUID = 1L;
+		private final AtomicInteger refs = new AtomicInteger();
+
+		@Override
+		public void retain() {
+			refs.incrementAndGet();
+		}
+
+		@Override
+		public void release() {
+			refs.decrementAndGet();
+		}
+
+		private void reset() {
+			setSpeed(-1);
+			setPower(-1);
+			setLatitude(91);
+			setLongitude(181);
+			setHeartRate(-1);
+			setCadence(0);
+			setResistance(0);
+			setDistanceMeters(0);
+			setElevation(0);
+			setGradient(0);
+			setTime(0);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.dto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column store for a recorded or imported ride. Each Telemetry field is held
+ * in its own primitive array so analysis code can scan one or two channels
+ * without touching the rest and without an object per sample.
+ *
+ * Samples are appended in time order, arrays grow by half when full.
+ * Telemetry objects are only created on demand by get() and toList(), eg.
+ * when writing a TCX file.
+ */
+public class TelemetrySeries {
+	private static final int DEFAULT_CAPACITY = 3600;
+
+	private int size = 0;
+	private long[] time;
+	private int[] power;
+	private int[] heartRate;
+	private int[] cadence;
+	private int[] resistance;
+	private double[] speed;
+	private double[] distance;
+	private double[] elevation;
+	private double[] gradient;
+	private double[] latitude;
+	private double[] longitude;
+
+	public TelemetrySeries() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public TelemetrySeries(int capacity) {
+		capacity = Math.max(capacity, 16);
+		time = new long[capacity];
+		power = new int[capacity];
+		heartRate = new int[capacity];
+		cadence = new int[capacity];
+		resistance = new int[capacity];
+		speed = new double[capacity];
+		distance = new double[capacity];
+		elevation = new double[capacity];
+		gradient = new double[capacity];
+		latitude = new double[capacity];
+		longitude = new double[capacity];
+	}
+
+	public static TelemetrySeries fromList(List<Telemetry> data) {
+		if (data == null) {
+			return null;
+		}
+		TelemetrySeries series = new TelemetrySeries(data.size());
+		for (Telemetry t : data) {
+			series.add(t);
+		}
+		return series;
+	}
+
+	public void add(Telemetry t) {
+		ensureCapacity(size + 1);
+		time[size] = t.getTime();
+		power[size] = t.getPower();
+		heartRate[size] = t.getHeartRate();
+		cadence[size] = t.getCadence();
+		resistance[size] = t.getResistance();
+		speed[size] = t.getSpeed();
+		distance[size] = t.getDistanceMeters();
+		elevation[size] = t.getElevation();
+		gradient[size] = t.getGradient();
+		latitude[size] = t.getLatitude();
+		longitude[size] = t.getLongitude();
+		size++;
+	}
+
+	private void ensureCapacity(int min) {
+		if (min <= time.length) {
+			return;
+		}
+		int capacity = Math.max(min, time.length + (time.length >> 1));
+		time = Arrays.copyOf(time, capacity);
+		power = Arrays.copyOf(power, capacity);
+		heartRate = Arrays.copyOf(heartRate, capacity);
+		cadence = Arrays.copyOf(cadence, capacity);
+		resistance = Arrays.copyOf(resistance, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		distance = Arrays.copyOf(distance, capacity);
+		elevation = Arrays.copyOf(elevation, capacity);
+		gradient = Arrays.copyOf(gradient, capacity);
+		latitude = Arrays.copyOf(latitude, capacity);
+		longitude = Arrays.copyOf(longitude, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long getTime(int i) {
+		return time[i];
+	}
+
+	public int getPower(int i) {
+		return power[i];
+	}
+
+	public int getHeartRate(int i) {
+		return heartRate[i];
+	}
+
+	public int getCadence(int i) {
+		return cadence[i];
+	}
+
+	public int getResistance(int i) {
+		return resistance[i];
+	}
+
+	public double getSpeed(int i) {
+		return speed[i];
+	}
+
+	public double getDistanceMeters(int i) {
+		return distance[i];
+	}
+
+	public double getElevation(int i) {
+		return elevation[i];
+	}
+
+	public double getGradient(int i) {
+		return gradient[i];
+	}
+
+	public double getLatitude(int i) {
+		return latitude[i];
+	}
+
+	public double getLongitude(int i) {
+		return longitude[i];
+	}
+
+	/*
+	 * Setters for the fields importers fill in once a file has been parsed
+	 */
+	public void setPower(int i, int v) {
+		check(i);
+		power[i] = v;
+	}
+
+	public void setHeartRate(int i, int v) {
+		check(i);
+		heartRate[i] = v;
+	}
+
+	public void setCadence(int i, int v) {
+		check(i);
+		cadence[i] = v;
+	}
+
+	public void setResistance(int i, int v) {
+		check(i);
+		resistance[i] = v;
+	}
+
+	public void setDistanceMeters(int i, double v) {
+		check(i);
+		distance[i] = v;
+	}
+
+	private void check(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+					+ size);
+		}
+	}
+
+	/**
+	 * Builds a Telemetry object for one sample. Allocates, so keep it out of
+	 * loops over the whole ride.
+	 */
+	public Telemetry get(int i) {
+		check(i);
+		Telemetry t = new Telemetry();
+		t.setTime(time[i]);
+		t.setPower(power[i]);
+		t.setHeartRate(heartRate[i]);
+		t.setCadence(cadence[i]);
+		t.setResistance(resistance[i]);
+		t.setSpeed(speed[i]);
+		t.setDistanceMeters(distance[i]);
+		t.setElevation(elevation[i]);
+		t.setGradient(gradient[i]);
+		t.setLatitude(latitude[i]);
+		t.setLongitude(longitude[i]);
+		return t;
+	}
+
+	/**
+	 * @return the series as Telemetry objects, for code such as TcxWriter
+	 *         that works on Points
+	 */
+	public ArrayList<Telemetry> toList() {
+		ArrayList<Telemetry> list = new ArrayList<Telemetry>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(get(i));
+		}
+		return list;
+	}
+}
@@ -37,6 +37,8 @@ public class WorkoutData {
 	private int maxPower;
 	private int avePower;
 	private int quadraticPower;
+	// 30 second rolling, only known for rides analyzed as they are recorded
+	private int normalizedPower;
 
 	// heart rate
 	private int maxHR = 0;
@@ -64,6 +66,10 @@ public class WorkoutData {
 	private String tcxFile;
 	
 	private String description;
+
+	// mean maximal power at each MeanMaxPower.duration(i), kept in the
+	// powercurves table
+	private double[] powerCurve;
 	
 	// source type
 	public static final int WATTZAP = 1;
@@ -152,6 +158,14 @@ public class WorkoutData {
 		this.quadraticPower = quadraticPower;
 	}
 
+	public int getNormalizedPower() {
+		return normalizedPower;
+	}
+
+	public void setNormalizedPower(int normalizedPower) {
+		this.normalizedPower = normalizedPower;
+	}
+
 	public int getMaxHR() {
 		return maxHR;
 	}
@@ -216,9 +230,14 @@ public class WorkoutData {
 		this.tcxFile = tcxFile;
 	}
 
+	/*
+	 * NP / FTP, quadratic power stands in for NP when it isn't known
+	 */
 	public double getIntensity() {
 		if (ftp > 0) {
-			return (double) quadraticPower / ftp;
+			int power = normalizedPower > 0 ? normalizedPower
+					: quadraticPower;
+			return (double) power / ftp;
 		}
 
 		return 0;
@@ -249,7 +268,8 @@ public class WorkoutData {
 				+ fiveMinutePwr + ", twentyMinutePwr=" + twentyMinutePwr
 				+ ", totalPower=" + totalPower + ", maxPower=" + maxPower
 				+ ", avePower=" + avePower + ", quadraticPower="
-				+ quadraticPower + ", maxHR=" + maxHR + ", aveHR=" + aveHR
+				+ quadraticPower + ", normalizedPower=" + normalizedPower
+				+ ", maxHR=" + maxHR + ", aveHR=" + aveHR
 				+ ", minHR=" + minHR + ", ftHR=" + ftHR + ", distance="
 				+ distanceMeters + ", date=" + date + ", time=" + time + ", weight="
 				+ weight + ", tcxFile=" + tcxFile + " IF " + getIntensity()
@@ -264,6 +284,14 @@ public class WorkoutData {
 		this.maxCadence = maxCadence;
 	}
 
+	public double[] getPowerCurve() {
+		return powerCurve;
+	}
+
+	public void setPowerCurve(double[] powerCurve) {
+		this.powerCurve = powerCurve;
+	}
+
 	public int getAveCadence() {
 		return aveCadence;
 	}
@@ -307,6 +335,40 @@ public class WorkoutData {
 		return "CREATE TABLE workouts(username VARCHAR(64), filename varchar(64), fivesecp INTEGER, oneminp INTEGER, fiveminp INTEGER , twentyminp INTEGER, qp INTEGER, totalp INTEGER, maxp INTEGER, avep INTEGER, ftp INTEGER, maxhr INTEGER, avehr INTEGER, minhr INTEGER, fthr INTEGER, maxcad INTEGER, avecad INTEGER, distance DOUBLE, weight DOUBLE, ridetime TIME, ridedate DATE, description varchar(256), source INTEGER  DEFAULT 1, primary key (username, filename))";
 	}
 
+	/*
+	 * Power curves are keyed by workout file name, season bests use
+	 * SEASON_PREFIX + year.
+	 */
+	public static final String SEASON_PREFIX = "season:";
+
+	static public String dbTablePowerCurves() {
+		return "CREATE TABLE powercurves(username VARCHAR(64), filename varchar(64), curve BLOB, primary key (username, filename))";
+	}
+
+	static public String insertPowerCurve() {
+		return "INSERT INTO powercurves (curve, username, filename) VALUES (?,?,?)";
+	}
+
+	static public String updatePowerCurve() {
+		return "UPDATE powercurves SET curve = ? WHERE username = ? and filename = ?";
+	}
+
+	static public String selectPowerCurve() {
+		return "SELECT curve FROM powercurves WHERE username = ? and filename = ?";
+	}
+
+	static public String deletePowerCurve() {
+		return "DELETE FROM powercurves WHERE username = ? and filename = ?";
+	}
+
+	static public String selectPowerCurves() {
+		return "SELECT c.curve FROM powercurves c, workouts w WHERE c.username = ? and w.username = c.username and w.filename = c.filename and w.ridedate >= ? and w.ridedate < ?";
+	}
+
+	static public String selectWithoutPowerCurve() {
+		return "SELECT w.filename, w.ridedate FROM workouts w WHERE w.username = ? and NOT EXISTS (SELECT c.filename FROM powercurves c WHERE c.username = w.username and c.filename = w.filename)";
+	}
+
 	static public String delete() {
 		return "DELETE FROM workouts WHERE username=? AND filename =?";
 	}
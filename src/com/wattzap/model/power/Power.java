@@ -25,6 +25,13 @@ public abstract class Power implements Comparable<Power> {
 	private double posDivider = 1;
 	private double negDivider = 1;
 	String description;
+	// profiles are shared by the sensor threads
+	private static final ThreadLocal<Cubic> solver = new ThreadLocal<Cubic>() {
+		@Override
+		protected Cubic initialValue() {
+			return new Cubic();
+		}
+	};
 
 	/**
 	 * Returns power in watts for a given trainer resistance
@@ -123,7 +130,7 @@ public abstract class Power implements Comparable<Power> {
 		double c = (kr * mass) + (g * slope * mass);
 		double a = ka * A * d;
 
-		Cubic cubic = new Cubic();
+		Cubic cubic = solver.get();
 		cubic.solve(a, 0, c, 0.0 - power);
 
 		return cubic.x1;
@@ -0,0 +1,195 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.power;
+
+import java.util.HashMap;
+
+/**
+ * Lookup tables in front of a trainer power profile, so the sensor listeners
+ * don't evaluate the trainer curve or solve a cubic for every message.
+ * 
+ * For each resistance level there is a speed to power table, interpolated
+ * between points, and the speed for every whole watt up to MAX_POWER. The
+ * real speed is interpolated from a slope by power grid which is rebuilt
+ * when the rider's mass changes. Values outside the tables, and levels the
+ * profile doesn't have, come from the profile.
+ * 
+ * Tables are immutable once built, so one PowerTable can be shared by all
+ * the listeners.
+ */
+public class PowerTable extends Power {
+	// km/h
+	static final double SPEED_STEP = 0.05;
+	static final double MAX_SPEED = 120;
+	// watts
+	static final int MAX_POWER = 2500;
+	// real speed grid
+	static final double MIN_SLOPE = -0.25;
+	static final double MAX_SLOPE = 0.25;
+	static final double SLOPE_STEP = 0.005;
+	static final double POWER_STEP = 5;
+	static final double MAX_GRID_POWER = 2000;
+
+	private static final HashMap<Power, PowerTable> tables = new HashMap<Power, PowerTable>();
+
+	private final Power profile;
+	// by resistance, null if the profile doesn't have the level
+	private final int[][] power;
+	private final double[][] speed;
+	private volatile SpeedGrid grid = null;
+
+	PowerTable(Power profile) {
+		this.profile = profile;
+		int levels = profile.getResitanceLevels();
+		int speeds = (int) Math.round(MAX_SPEED / SPEED_STEP) + 1;
+		power = new int[levels + 1][];
+		speed = new double[levels + 1][];
+
+		// levels are numbered from 0 or 1 depending on the profile
+		for (int r = 0; r <= levels; r++) {
+			try {
+				int[] p = new int[speeds];
+				for (int i = 0; i < speeds; i++) {
+					p[i] = profile.getPower(i * SPEED_STEP, r);
+				}
+				double[] s = new double[MAX_POWER + 1];
+				for (int i = 0; i <= MAX_POWER; i++) {
+					s[i] = profile.getSpeed(i, r);
+				}
+				power[r] = p;
+				speed[r] = s;
+			} catch (RuntimeException e) {
+				// no such level
+			}
+		}
+	}
+
+	/**
+	 * @return the tables for profile, built on first use
+	 */
+	public static PowerTable of(Power profile) {
+		if (profile instanceof PowerTable) {
+			return (PowerTable) profile;
+		}
+		synchronized (tables) {
+			PowerTable t = tables.get(profile);
+			if (t == null) {
+				t = new PowerTable(profile);
+				tables.put(profile, t);
+			}
+			return t;
+		}
+	}
+
+	public Power getProfile() {
+		return profile;
+	}
+
+	@Override
+	public int getPower(double s, int resistance) {
+		if (resistance < 0 || resistance >= power.length
+				|| power[resistance] == null || !(s >= 0) || s >= MAX_SPEED) {
+			return profile.getPower(s, resistance);
+		}
+
+		int[] p = power[resistance];
+		double x = s / SPEED_STEP;
+		int i = (int) x;
+		double f = x - i;
+		return (int) Math.round(p[i] + (p[i + 1] - p[i]) * f);
+	}
+
+	@Override
+	public double getSpeed(int p, int resistance) {
+		if (resistance < 0 || resistance >= speed.length
+				|| speed[resistance] == null || p < 0 || p > MAX_POWER) {
+			return profile.getSpeed(p, resistance);
+		}
+		return speed[resistance][p];
+	}
+
+	@Override
+	public double getRealSpeed(double mass, double slope, double p) {
+		if (!(slope >= MIN_SLOPE && slope < MAX_SLOPE && p >= 0 && p < MAX_GRID_POWER)) {
+			return profile.getRealSpeed(mass, slope, p);
+		}
+
+		SpeedGrid g = grid;
+		if (g == null || g.mass != mass) {
+			// new rider weight
+			g = new SpeedGrid(mass);
+			grid = g;
+		}
+		return g.get(slope, p);
+	}
+
+	/*
+	 * Real speed by slope and power for one mass
+	 */
+	private class SpeedGrid {
+		final double mass;
+		final int columns;
+		final double[] speeds;
+
+		SpeedGrid(double mass) {
+			this.mass = mass;
+			int rows = (int) Math.round((MAX_SLOPE - MIN_SLOPE) / SLOPE_STEP) + 1;
+			columns = (int) Math.round(MAX_GRID_POWER / POWER_STEP) + 1;
+			speeds = new double[rows * columns];
+			for (int r = 0; r < rows; r++) {
+				for (int c = 0; c < columns; c++) {
+					speeds[r * columns + c] = profile.getRealSpeed(mass,
+							MIN_SLOPE + r * SLOPE_STEP, c * POWER_STEP);
+				}
+			}
+		}
+
+		double get(double slope, double p) {
+			double y = (slope - MIN_SLOPE) / SLOPE_STEP;
+			int r = (int) y;
+			double fy = y - r;
+			double x = p / POWER_STEP;
+			int c = (int) x;
+			double fx = x - c;
+
+			int i = r * columns + c;
+			double low = speeds[i] + (speeds[i + 1] - speeds[i]) * fx;
+			i += columns;
+			double high = speeds[i] + (speeds[i + 1] - speeds[i]) * fx;
+			return low + (high - low) * fy;
+		}
+	}
+
+	@Override
+	public int getResitanceLevels() {
+		return profile.getResitanceLevels();
+	}
+
+	@Override
+	public void setGrades(double max, double min) {
+		profile.setGrades(max, min);
+	}
+
+	@Override
+	public int getResistance(double gradient) {
+		return profile.getResistance(gradient);
+	}
+
+	@Override
+	public String toString() {
+		return profile.toString();
+	}
+}
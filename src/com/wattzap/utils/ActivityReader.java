@@ -19,7 +19,16 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -30,6 +39,7 @@ import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.view.training.TrainingAnalysis;
 
@@ -41,28 +51,148 @@ import com.wattzap.view.training.TrainingAnalysis;
  */
 public class ActivityReader  {
 	String workoutDir;
-	List<String> importedFiles = new ArrayList<String>();
+	List<String> importedFiles = Collections
+			.synchronizedList(new ArrayList<String>());
 	private Logger logger = LogManager.getLogger("GPSFileVisitor");
 
+	// workouts are committed to the database in batches of this size
+	private static final int BATCH_SIZE = 50;
+
+	// workout names claimed by an import in progress, stops two files with
+	// the same start time writing the same TCX file
+	private final Set<String> claimed = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Progress callback for bulk imports. Called on the importing thread, not
+	 * the Swing event thread.
+	 */
+	public interface ImportListener {
+		void progress(int done, int total, String fileName);
+	}
 
 	public List<String> getImportedFileList() {
 		return importedFiles;
 	}
 
+	/**
+	 * Stops readActivities() after the file it is waiting for, workouts
+	 * already read are still committed before it returns. Can be called from
+	 * any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
 	public void readActivity(String fileName) {
+		WorkoutData workout = importActivity(fileName);
+		if (workout != null) {
+			importedFiles.add(workout.getTcxFile());
+			UserPreferences.INSTANCE.addWorkout(workout);
+		}
+	}
+
+	/**
+	 * Imports a list of activity files. Files are parsed, analyzed and saved
+	 * as TCX in parallel on a pool with one thread per processor, the
+	 * resulting workouts are committed to the database in batches from the
+	 * calling thread. cancel() or interrupting the calling thread stops the
+	 * import, workouts already read are committed before it returns.
+	 * 
+	 * @param fileNames
+	 * @param listener
+	 *            may be null
+	 */
+	public void readActivities(List<String> fileNames, ImportListener listener) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<WorkoutData> completion = new ExecutorCompletionService<WorkoutData>(
+				pool);
+
+		long start = System.currentTimeMillis();
+		for (final String fileName : fileNames) {
+			completion.submit(new Callable<WorkoutData>() {
+				@Override
+				public WorkoutData call() {
+					return importActivity(fileName);
+				}
+			});
+		}
+		pool.shutdown();
+
+		List<WorkoutData> batch = new ArrayList<WorkoutData>();
+		try {
+			for (int done = 1; done <= fileNames.size(); done++) {
+				if (cancelled) {
+					logger.info("Import cancelled");
+					pool.shutdownNow();
+					break;
+				}
+				WorkoutData workout = completion.take().get();
+				if (workout != null) {
+					batch.add(workout);
+					if (batch.size() >= BATCH_SIZE) {
+						commit(batch);
+					}
+				}
+				if (listener != null) {
+					listener.progress(done, fileNames.size(),
+							workout == null ? null : workout.getTcxFile());
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.info("Import cancelled");
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error(e.getLocalizedMessage());
+			pool.shutdownNow();
+		} finally {
+			commit(batch);
+		}
+
+		logger.info("Imported " + importedFiles.size() + " of "
+				+ fileNames.size() + " files in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private void commit(List<WorkoutData> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (UserPreferences.INSTANCE.addWorkouts(batch)) {
+			for (WorkoutData workout : batch) {
+				importedFiles.add(workout.getTcxFile());
+			}
+		} else {
+			logger.error("Cannot save " + batch.size() + " workouts");
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Parses and analyzes one activity and writes its TCX file. Safe to call
+	 * from several threads at once.
+	 * 
+	 * @param fileName
+	 * @return workout to be added to the database, null if the file could
+	 *         not be read or the workout is already in the database
+	 */
+	private WorkoutData importActivity(String fileName) {
 			try {
-				ArrayList<Telemetry> telemetry = readTelemetry(fileName);
-				if (telemetry != null) {
+				TelemetrySeries telemetry = readSeries(fileName);
+				if (telemetry != null && !telemetry.isEmpty()) {
 
 					String workoutName = TcxWriter.getWorkoutName(telemetry
-							.get(0).getTime());
+							.getTime(0));
 					WorkoutData workout = UserPreferences.INSTANCE
 							.getWorkout(workoutName);
-					int dataSource = telemetry.get(0).getResistance();
+					int dataSource = telemetry.getResistance(0);
 
-					if (workout != null) {
+					if (workout != null || !claimed.add(workoutName)) {
 						logger.info("File already in database "
-								+ workout.getTcxFile());
+								+ workoutName);
 					} else {
 						workout = TrainingAnalysis.analyze(telemetry);
 						workout.setFtp(UserPreferences.INSTANCE.getMaxPower());
@@ -70,9 +200,9 @@ public class ActivityReader  {
 						workout.setSource(dataSource);
 
 						TcxWriter writer = new TcxWriter();
-						importedFiles.add(writer.save(telemetry, 0));
+						writer.save(telemetry.toList(), 0);
 
-						UserPreferences.INSTANCE.addWorkout(workout);
+						return workout;
 					}
 
 				}
@@ -94,19 +224,21 @@ public class ActivityReader  {
 				 */
 				e.printStackTrace();
 			}
+			return null;
 	}
 
 	/**
-	 * Reads telemetry data from file. Can be in various formats.
+	 * Reads telemetry data from file. Can be in various formats. The
+	 * importers add each point to the series as it is parsed.
 	 * 
 	 * @param fileName
 	 * @return
 	 * @throws SAXException
 	 * @throws IOException
 	 */
-	public static ArrayList<Telemetry> readTelemetry(String fileName)
+	public static TelemetrySeries readSeries(String fileName)
 			throws SAXException, IOException {
-		ArrayList<Telemetry> data = null;
+		TelemetrySeries data = null;
 		if (fileName.endsWith(".tcx")) {
 			XMLReader xr = XMLReaderFactory.createXMLReader();
 
@@ -120,8 +252,7 @@ public class ActivityReader  {
 
 			data = handler.data;
 			r.close();
-			Telemetry last = data.get(data.size() - 1);
-			last.setDistanceMeters(handler.distance);
+			data.setDistanceMeters(data.size() - 1, handler.distance);
 			return data;
 		} else if (fileName.endsWith(".fit")) {
 			FitImporter handler = new FitImporter(fileName);
@@ -150,24 +281,24 @@ public class ActivityReader  {
 
 				ArrayList<Telemetry> fitData = flHandler.data;
 				r.close();
-				long first = data.get(0).getTime();
+				long first = data.getTime(0);
 				int count = 0;
-				for (Telemetry t : data) {
+				for (int i = 0; i < data.size(); i++) {
 					if (count == fitData.size()) {
 						break; // not enough data?
 					}
-					long time = t.getTime() - first;
+					long time = data.getTime(i) - first;
 					Telemetry fl = fitData.get(count);
 					if (time < fl.getTime()) {
-						t.setCadence(fl.getCadence());
-						t.setHeartRate(fl.getHeartRate());
+						data.setCadence(i, fl.getCadence());
+						data.setHeartRate(i, fl.getHeartRate());
 					} else {
-						t.setCadence(fl.getCadence());
-						t.setHeartRate(fl.getHeartRate());
+						data.setCadence(i, fl.getCadence());
+						data.setHeartRate(i, fl.getHeartRate());
 						count++;
 					}
 				}
-				data.get(0).setResistance(WorkoutData.FITLOG);
+				data.setResistance(0, WorkoutData.FITLOG);
 			}
 		}
 
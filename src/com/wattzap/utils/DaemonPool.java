@@ -0,0 +1,55 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background pools for work shared across the application. The threads are
+ * daemons so they don't hold up exit, and they die after IDLE_SECONDS without
+ * work.
+ */
+public class DaemonPool {
+	private static final long IDLE_SECONDS = 30;
+
+	private DaemonPool() {
+	}
+
+	/**
+	 * @param name
+	 *            given to each thread
+	 * @param threads
+	 *            most tasks run at once, the rest wait in an unbounded queue
+	 */
+	public static ExecutorService create(final String name, int threads) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+				IDLE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, name);
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+}
@@ -18,7 +18,6 @@ package com.wattzap.utils;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
@@ -38,6 +37,7 @@ import com.garmin.fit.MesgListener;
 import com.wattzap.model.GPXReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.model.power.Power;
 
@@ -48,7 +48,7 @@ import com.wattzap.model.power.Power;
  * @date 22nd May 2014
  */
 public class FitImporter implements MesgListener, MesgDefinitionListener {
-	ArrayList<Telemetry> data = new ArrayList<Telemetry>();
+	TelemetrySeries data = new TelemetrySeries();
 	Telemetry last = null;
 	double totalDistance = 0;
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
@@ -74,9 +74,9 @@ public class FitImporter implements MesgListener, MesgDefinitionListener {
 			// calculate powers here???
 			if (!isPower) {
 
-				for (Telemetry point : data) {
+				for (int i = 0; i < data.size(); i++) {
 					int p = (int) Power.getPower(userPrefs.getTotalWeight(),
-							point.getGradient(), point.getSpeedKMH());
+							data.getGradient(i), data.getSpeed(i));
 
 					if (p > userPrefs.getMaxPower()
 							&& (p > (last.getPower() * 2))) {
@@ -90,10 +90,10 @@ public class FitImporter implements MesgListener, MesgDefinitionListener {
 					}
 					if (p > 0) {
 						//point.setResistance(p);
-						point.setPower(p);
+						data.setPower(i, p);
 					} else {
 						//point.setResistance(0);
-						point.setPower(0);
+						data.setPower(i, 0);
 					}
 					
 				}// for
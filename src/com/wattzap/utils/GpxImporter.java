@@ -17,7 +17,6 @@ package com.wattzap.utils;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -29,6 +28,7 @@ import org.xml.sax.helpers.DefaultHandler;
 import com.wattzap.model.GPXReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.model.power.Power;
 
@@ -45,12 +45,13 @@ public class GpxImporter extends DefaultHandler {
 	State currentState = State.UNDEFINED;
 	StringBuilder buffer = new StringBuilder();
 	// GPX files have two data formats
-	private static final SimpleDateFormat msdateFormat = new SimpleDateFormat(
+	private final SimpleDateFormat msdateFormat = new SimpleDateFormat(
 			"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
 	private final SimpleDateFormat timestampFormatter = new SimpleDateFormat(
 			"yyyy-MM-dd'T'HH:mm:ss'Z'");
-	ArrayList<Telemetry> data;
+	TelemetrySeries data;
 	Telemetry point;
+	Telemetry last = null;
 	double distance;
 	Rolling rSpeed = new Rolling(30);
 	Rolling gAve = new Rolling(30);
@@ -67,7 +68,7 @@ public class GpxImporter extends DefaultHandler {
 	public GpxImporter() {
 		super();
 		currentState = State.UNDEFINED;
-		data = new ArrayList<Telemetry>();
+		data = new TelemetrySeries();
 		distance = 0;
 		tzOffset = Calendar.getInstance().getTimeZone().getRawOffset()
 				+ Calendar.getInstance().getTimeZone().getDSTSavings();
@@ -117,10 +118,7 @@ public class GpxImporter extends DefaultHandler {
 			} else if ("trkpt".equalsIgnoreCase(name)) {
 
 				index++;
-				int current = data.size();
-				if (current > 0) {
-					Telemetry last = data.get(current - 1);
-
+				if (last != null) {
 					double d = GPXReader.distance(point.getLatitude(),
 							last.getLatitude(), point.getLongitude(),
 							last.getLongitude(), point.getElevation(),
@@ -177,6 +175,7 @@ public class GpxImporter extends DefaultHandler {
 					firstTime = point.getTime();
 				}
 				data.add(point);
+				last = point;
 				currentState = State.UNDEFINED;
 			}
 		} else if (currentState == State.EXTENSION) {
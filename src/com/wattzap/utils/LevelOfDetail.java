@@ -0,0 +1,157 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+/**
+ * Min/max pyramid over a series of values, used to draw a long ride with
+ * about two points per pixel whatever the zoom.
+ *
+ * Level k holds the index of the smallest and the largest value in each
+ * block of 2^(k+1) samples, built from the level below. A range of samples is
+ * reduced to the min and the max of each block at the first level with few
+ * enough blocks, so peaks are kept however far the chart is zoomed out. Zooming
+ * in picks a finer level, down to the raw samples.
+ */
+public class LevelOfDetail {
+	private final double[] values;
+	private final int[][] min;
+	private final int[][] max;
+
+	public LevelOfDetail(double[] values) {
+		this.values = values;
+
+		int levels = 0;
+		for (int n = values.length; n > 1; n >>= 1) {
+			levels++;
+		}
+		min = new int[levels][];
+		max = new int[levels][];
+
+		for (int k = 0; k < levels; k++) {
+			int blocks = values.length >> (k + 1);
+			min[k] = new int[blocks];
+			max[k] = new int[blocks];
+			for (int b = 0; b < blocks; b++) {
+				int lo, hi, lo2, hi2;
+				if (k == 0) {
+					lo = hi = 2 * b;
+					lo2 = hi2 = 2 * b + 1;
+				} else {
+					lo = min[k - 1][2 * b];
+					hi = max[k - 1][2 * b];
+					lo2 = min[k - 1][2 * b + 1];
+					hi2 = max[k - 1][2 * b + 1];
+				}
+				min[k][b] = values[lo2] < values[lo] ? lo2 : lo;
+				max[k][b] = values[hi2] > values[hi] ? hi2 : hi;
+			}
+		}
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public double getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Picks the samples to draw between from (inclusive) and to (exclusive).
+	 * The first and last samples are always included.
+	 * 
+	 * @param buckets
+	 *            number of blocks wanted, eg. the width in pixels
+	 * @return sample indices in order, at most about 2 * buckets + 2
+	 */
+	public int[] select(int from, int to, int buckets) {
+		from = Math.max(from, 0);
+		to = Math.min(to, values.length);
+		int n = to - from;
+		if (n <= 0) {
+			return new int[0];
+		}
+		buckets = Math.max(buckets, 1);
+		if (n <= 2 * buckets) {
+			int[] all = new int[n];
+			for (int i = 0; i < n; i++) {
+				all[i] = from + i;
+			}
+			return all;
+		}
+
+		// finest level with no more than buckets blocks in range
+		int k = 0;
+		while (k < min.length - 1 && (n >> (k + 1)) > buckets) {
+			k++;
+		}
+		int size = 1 << (k + 1);
+		// whole blocks after the first sample
+		int first = from / size + 1;
+		int last = to / size;
+
+		int[] selected = new int[2 * (last - first) + 6];
+		int count = 0;
+		selected[count++] = from;
+		// partial blocks at the edges are scanned
+		count = scan(from + 1, Math.min(first * size, to - 1), selected, count);
+		for (int b = first; b < last; b++) {
+			int lo = min[k][b];
+			int hi = max[k][b];
+			if (lo == hi) {
+				selected[count++] = lo;
+			} else {
+				selected[count++] = Math.min(lo, hi);
+				selected[count++] = Math.max(lo, hi);
+			}
+		}
+		count = scan(Math.max(last * size, first * size), to - 1, selected,
+				count);
+		if (selected[count - 1] != to - 1) {
+			selected[count++] = to - 1;
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(selected, 0, result, 0, count);
+		return result;
+	}
+
+	/*
+	 * Adds the min and max of the raw samples from..to-1
+	 */
+	private int scan(int from, int to, int[] selected, int count) {
+		if (from >= to) {
+			return count;
+		}
+		int lo = from;
+		int hi = from;
+		for (int i = from + 1; i < to; i++) {
+			if (values[i] < values[lo]) {
+				lo = i;
+			}
+			if (values[i] > values[hi]) {
+				hi = i;
+			}
+		}
+		if (lo == hi) {
+			selected[count++] = lo;
+		} else {
+			selected[count++] = Math.min(lo, hi);
+			selected[count++] = Math.max(lo, hi);
+		}
+		return count;
+	}
+}
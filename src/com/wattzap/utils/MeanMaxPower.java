@@ -0,0 +1,240 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Arrays;
+
+import com.wattzap.model.dto.TelemetrySeries;
+
+/**
+ * Mean Maximal Power curve: the best average power held for a given number
+ * of seconds anywhere in a ride.
+ *
+ * The ride is resampled to one value per second and a prefix sum is built,
+ * the best effort for one duration is then a single O(n) pass. The curve is
+ * evaluated exactly at every second up to 2 minutes and at progressively
+ * coarser steps after that (see duration()), which keeps a multi-hour ride to
+ * a few hundred passes. Any other duration can be computed exactly with
+ * best().
+ *
+ * Curves from several rides can be merged, the result is the best effort at
+ * each duration over all rides.
+ */
+public class MeanMaxPower {
+	// power is held over gaps up to this long, longer gaps count as stopped
+	static final int MAX_GAP = 60;
+	// longest stop recorded as zero power, stops a clock jump filling memory
+	static final int MAX_STOP = 3600;
+
+	private final long[] sum;
+	// best average power at each duration(i)
+	private double[] curve;
+	private boolean merged = false;
+
+	/**
+	 * Empty curve, use with merge()
+	 */
+	public MeanMaxPower() {
+		sum = new long[1];
+		curve = new double[0];
+	}
+
+	/**
+	 * Curve read back from getCurve(), eg. from the database. Behaves as a
+	 * merged curve, only points on the curve are known.
+	 */
+	public static MeanMaxPower fromCurve(double[] curve) {
+		MeanMaxPower mmp = new MeanMaxPower();
+		mmp.curve = curve.clone();
+		mmp.merged = true;
+		return mmp;
+	}
+
+	public MeanMaxPower(TelemetrySeries data) {
+		this(toSeconds(data));
+	}
+
+	/**
+	 * @param power
+	 *            one power value per second
+	 */
+	public MeanMaxPower(int[] power) {
+		sum = new long[power.length + 1];
+		for (int i = 0; i < power.length; i++) {
+			sum[i + 1] = sum[i] + power[i];
+		}
+
+		int length = power.length;
+		int points = 0;
+		while (duration(points) <= length) {
+			points++;
+		}
+		curve = new double[points];
+		for (int i = 0; i < points; i++) {
+			curve[i] = best(duration(i));
+		}
+	}
+
+	/**
+	 * Resamples a ride to one power value per second. Each sample's power
+	 * covers the time since the previous sample, negative (missing) power is
+	 * treated as zero.
+	 */
+	public static int[] toSeconds(TelemetrySeries data) {
+		if (data == null || data.size() < 2) {
+			return new int[0];
+		}
+
+		// usually one sample a second, grows for slower recording
+		int[] power = new int[data.size() + 16];
+		int seconds = 0;
+		long carry = 0;
+		for (int i = 1; i < data.size(); i++) {
+			// keep sub-second remainders so 4Hz data doesn't drift
+			carry += data.getTime(i) - data.getTime(i - 1);
+			int dt = (int) (carry / 1000);
+			carry -= dt * 1000L;
+			if (dt <= 0) {
+				continue;
+			}
+
+			int p = Math.max(0, data.getPower(i));
+			int hold = dt;
+			int stopped = 0;
+			if (dt > MAX_GAP) {
+				hold = 1;
+				stopped = Math.min(dt - 1, MAX_STOP);
+			}
+			if (seconds + hold + stopped > power.length) {
+				power = Arrays.copyOf(power,
+						Math.max(seconds + hold + stopped, power.length * 2));
+			}
+			Arrays.fill(power, seconds, seconds + hold, p);
+			// array is zero filled, just skip the stop
+			seconds += hold + stopped;
+		}
+
+		return Arrays.copyOf(power, seconds);
+	}
+
+	/**
+	 * Duration in seconds of each point on the curve: every second to 2
+	 * minutes, every 5 seconds to 10 minutes, every 15 seconds to 30 minutes,
+	 * every minute to 2 hours and every 5 minutes after that. 5s, 1m, 5m, 20m
+	 * and 60m are all exact points.
+	 */
+	public static int duration(int i) {
+		if (i < 120) {
+			return i + 1;
+		}
+		i -= 120;
+		if (i < 96) {
+			return 125 + i * 5;
+		}
+		i -= 96;
+		if (i < 80) {
+			return 615 + i * 15;
+		}
+		i -= 80;
+		if (i < 90) {
+			return 1860 + i * 60;
+		}
+		i -= 90;
+		return 7500 + i * 300;
+	}
+
+	/**
+	 * Best average power over any window of this many seconds.
+	 *
+	 * @param seconds
+	 * @return average watts, 0 if the ride is shorter than the duration
+	 */
+	public double best(int seconds) {
+		int n = sum.length - 1;
+		if (seconds <= 0 || seconds > n) {
+			return 0;
+		}
+
+		long max = 0;
+		for (int i = seconds; i <= n; i++) {
+			long s = sum[i] - sum[i - seconds];
+			if (s > max) {
+				max = s;
+			}
+		}
+		return (double) max / seconds;
+	}
+
+	/**
+	 * Best average power for a duration. Durations between points on a merged
+	 * curve return the next longer point, which is a lower bound.
+	 *
+	 * @param seconds
+	 * @return watts, 0 if no ride was long enough
+	 */
+	public int get(int seconds) {
+		for (int i = 0; i < curve.length; i++) {
+			int d = duration(i);
+			if (d == seconds || (d > seconds && merged)) {
+				return (int) curve[i];
+			} else if (d > seconds) {
+				break;
+			}
+		}
+		if (merged) {
+			return 0;
+		}
+		return (int) best(seconds);
+	}
+
+	/**
+	 * @return number of points on the curve
+	 */
+	public int size() {
+		return curve.length;
+	}
+
+	/**
+	 * @param i
+	 *            point on the curve, duration is duration(i)
+	 * @return best average power at that duration
+	 */
+	public double getPower(int i) {
+		return curve[i];
+	}
+
+	/**
+	 * @return best average power at each duration(i), for storage
+	 */
+	public double[] getCurve() {
+		return curve.clone();
+	}
+
+	/**
+	 * Takes the best of this curve and another at every duration
+	 */
+	public void merge(MeanMaxPower other) {
+		merged = true;
+		if (other.curve.length > curve.length) {
+			curve = Arrays.copyOf(curve, other.curve.length);
+		}
+		for (int i = 0; i < other.curve.length; i++) {
+			if (other.curve[i] > curve[i]) {
+				curve[i] = other.curve[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.wattzap.model.UserPreferences;
+import com.wattzap.model.dto.WorkoutData;
+
+/**
+ * Computes the power curves of workouts saved before curves were kept
+ * (dbVersion 1.4), so season bests cover every ride and not just the ones
+ * opened in the MMP view. Each curve is committed as it is computed, an
+ * interrupted run carries on at the next start.
+ */
+public class PowerCurveBackfill implements Runnable {
+	private static Logger logger = LogManager.getLogger("Power Curves");
+	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
+
+	/**
+	 * Starts the backfill on a daemon thread if the upgrade left it pending.
+	 */
+	public static void start() {
+		if (UserPreferences.INSTANCE.isCurveBackfillPending()) {
+			DaemonPool.create("Power Curves", 1).execute(
+					new PowerCurveBackfill());
+		}
+	}
+
+	@Override
+	public void run() {
+		String workoutDir = userPrefs.getUserDataDirectory()
+				+ TcxWriter.WORKOUTDIR;
+		List<WorkoutData> workouts = userPrefs.listWorkoutsWithoutCurve();
+		logger.info("Computing power curves for " + workouts.size()
+				+ " workouts");
+		for (WorkoutData data : workouts) {
+			try {
+				data.setPowerCurve(new MeanMaxPower(ActivityReader
+						.readSeries(workoutDir + data.getTcxFile()))
+						.getCurve());
+			} catch (Exception e) {
+				// left for the MMP view to retry
+				logger.error(data.getTcxFile() + " "
+						+ e.getLocalizedMessage());
+				continue;
+			}
+			userPrefs.savePowerCurve(data);
+		}
+		userPrefs.setCurveBackfillDone();
+	}
+}
@@ -0,0 +1,281 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
+
+/**
+ * Append-only journal of a ride in progress, used to recover the ride after
+ * a crash.
+ *
+ * The file is a 16 byte header followed by fixed width records, one per
+ * Telemetry point, each ending with a CRC32 of the record. Writing reuses one
+ * buffer so nothing is allocated per point, the file is synced to disk every
+ * SYNC_RECORDS points. Recovery maps the file and stops at the first short
+ * or corrupt record, anything after that is a write torn by the crash.
+ */
+public class RideJournal implements Closeable {
+	private static final int MAGIC = 0x575A4A31; // "WZJ1"
+	private static final short VERSION = 1;
+	private static final int HEADER = 16;
+	// time, 4 ints, 6 doubles
+	private static final int DATA = 8 + 4 * 4 + 6 * 8;
+	private static final int RECORD = DATA + 4;
+	// at one point a second at most this many seconds are lost on power cut
+	private static final int SYNC_RECORDS = 10;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final byte[] record = new byte[RECORD];
+	private final ByteBuffer buffer = ByteBuffer.wrap(record);
+	private final CRC32 crc = new CRC32();
+	private long records;
+	private int unsynced = 0;
+
+	private static Logger logger = LogManager.getLogger("RideJournal");
+
+	private RideJournal(File f, long records) throws IOException {
+		file = new RandomAccessFile(f, "rw");
+		channel = file.getChannel();
+		this.records = records;
+	}
+
+	/**
+	 * Starts a new journal, any existing file is truncated.
+	 */
+	public static RideJournal create(File f) throws IOException {
+		RideJournal journal = new RideJournal(f, 0);
+		try {
+			journal.channel.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putInt(MAGIC);
+			header.putShort(VERSION);
+			header.putShort((short) RECORD);
+			header.putLong(System.currentTimeMillis());
+			header.flip();
+			journal.channel.write(header, 0);
+			journal.channel.position(HEADER);
+			journal.channel.force(true);
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		}
+		return journal;
+	}
+
+	/**
+	 * Continues an existing journal after its last good record. A missing or
+	 * unreadable journal is started again.
+	 */
+	public static RideJournal append(File f) throws IOException {
+		long good = f.exists() ? scan(f, null) : -1;
+		if (good < 0) {
+			return create(f);
+		}
+
+		RideJournal journal = new RideJournal(f, good);
+		long end = HEADER + good * RECORD;
+		try {
+			if (journal.channel.size() > end) {
+				logger.info("Dropping " + (journal.channel.size() - end)
+						+ " bytes after record " + good);
+				try {
+					journal.channel.truncate(end);
+				} catch (IOException e) {
+					// Windows won't truncate while the scan is still mapped,
+					// new records overwrite the bad one instead
+					logger.warn("Can't truncate journal "
+							+ e.getLocalizedMessage());
+				}
+			}
+			journal.channel.position(end);
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		}
+		return journal;
+	}
+
+	/**
+	 * Reads all good records from a journal.
+	 *
+	 * @return recovered ride, empty if the journal is missing or unreadable
+	 */
+	public static TelemetrySeries read(File f) throws IOException {
+		TelemetrySeries data = new TelemetrySeries();
+		if (f.exists()) {
+			scan(f, data);
+		}
+		return data;
+	}
+
+	/**
+	 * Reads a journal written by earlier versions, a stream of serialized
+	 * Telemetry objects. Reading stops at the first one that can't be read.
+	 *
+	 * @return recovered ride, empty if the journal is missing
+	 */
+	public static TelemetrySeries readLegacy(File f) throws IOException {
+		TelemetrySeries data = new TelemetrySeries();
+		if (!f.exists()) {
+			return data;
+		}
+
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+				new FileInputStream(f)));
+		try {
+			while (true) {
+				data.add((Telemetry) in.readObject());
+			}
+		} catch (EOFException e) {
+			// end of journal
+		} catch (Exception e) {
+			logger.info("Bad record " + data.size() + " in " + f + ", "
+					+ e.getLocalizedMessage());
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+
+	/*
+	 * Checks the header and counts good records, adding them to data if it
+	 * isn't null. Returns -1 if the header is bad.
+	 */
+	private static long scan(File f, TelemetrySeries data) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			long size = ch.size();
+			if (size < HEADER) {
+				return -1;
+			}
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+					size);
+			if (map.getInt() != MAGIC || map.getShort() != VERSION
+					|| map.getShort() != RECORD) {
+				logger.error("Not a journal file " + f);
+				return -1;
+			}
+			map.position(HEADER);
+
+			byte[] rec = new byte[RECORD];
+			ByteBuffer buf = ByteBuffer.wrap(rec);
+			CRC32 crc = new CRC32();
+			Telemetry t = new Telemetry();
+			long count = 0;
+			while (map.remaining() >= RECORD) {
+				map.get(rec);
+				crc.reset();
+				crc.update(rec, 0, DATA);
+				buf.clear();
+				if (buf.getInt(DATA) != (int) crc.getValue()) {
+					logger.info("Bad record " + count + ", journal truncated");
+					break;
+				}
+				if (data != null) {
+					read(buf, t);
+					data.add(t);
+				}
+				count++;
+			}
+			return count;
+		} finally {
+			raf.close();
+		}
+	}
+
+	public void write(Telemetry t) throws IOException {
+		buffer.clear();
+		buffer.putLong(t.getTime());
+		buffer.putInt(t.getPower());
+		buffer.putInt(t.getHeartRate());
+		buffer.putInt(t.getCadence());
+		buffer.putInt(t.getResistance());
+		buffer.putDouble(t.getSpeed());
+		buffer.putDouble(t.getDistanceMeters());
+		buffer.putDouble(t.getElevation());
+		buffer.putDouble(t.getGradient());
+		buffer.putDouble(t.getLatitude());
+		buffer.putDouble(t.getLongitude());
+		crc.reset();
+		crc.update(record, 0, DATA);
+		buffer.putInt((int) crc.getValue());
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		records++;
+
+		if (++unsynced >= SYNC_RECORDS) {
+			sync();
+		}
+	}
+
+	private static void read(ByteBuffer buf, Telemetry t) {
+		t.setTime(buf.getLong());
+		t.setPower(buf.getInt());
+		t.setHeartRate(buf.getInt());
+		t.setCadence(buf.getInt());
+		t.setResistance(buf.getInt());
+		t.setSpeed(buf.getDouble());
+		t.setDistanceMeters(buf.getDouble());
+		t.setElevation(buf.getDouble());
+		t.setGradient(buf.getDouble());
+		t.setLatitude(buf.getDouble());
+		t.setLongitude(buf.getDouble());
+	}
+
+	/**
+	 * Forces written records to disk
+	 */
+	public void sync() throws IOException {
+		channel.force(false);
+		unsynced = 0;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (unsynced > 0 && channel.isOpen()) {
+				sync();
+			}
+		} finally {
+			file.close();
+		}
+	}
+}
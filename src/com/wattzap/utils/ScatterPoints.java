@@ -0,0 +1,118 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Arrays;
+
+/**
+ * Points of a scatter plot held in two primitive arrays, in the order they
+ * were added.
+ *
+ * A plot of many rides is drawn either as the points in view, or when there
+ * are too many of those as a count of the points in each cell of a grid. Both
+ * are a single pass over the arrays.
+ */
+public class ScatterPoints {
+	private double[] x = new double[1024];
+	private double[] y = new double[1024];
+	private int size = 0;
+	private double minX = Double.POSITIVE_INFINITY;
+	private double maxX = Double.NEGATIVE_INFINITY;
+	private double minY = Double.POSITIVE_INFINITY;
+	private double maxY = Double.NEGATIVE_INFINITY;
+
+	public void add(double px, double py) {
+		if (size == x.length) {
+			x = Arrays.copyOf(x, size + (size >> 1));
+			y = Arrays.copyOf(y, x.length);
+		}
+		x[size] = px;
+		y[size] = py;
+		size++;
+		minX = Math.min(minX, px);
+		maxX = Math.max(maxX, px);
+		minY = Math.min(minY, py);
+		maxY = Math.max(maxY, py);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getX(int i) {
+		return x[i];
+	}
+
+	public double getY(int i) {
+		return y[i];
+	}
+
+	public double getMinX() {
+		return minX;
+	}
+
+	public double getMaxX() {
+		return maxX;
+	}
+
+	public double getMinY() {
+		return minY;
+	}
+
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * @return indices of the points inside the rectangle, null if there are
+	 *         more than limit
+	 */
+	public int[] select(double x0, double x1, double y0, double y1, int limit) {
+		int[] selected = new int[Math.min(limit, size)];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (x[i] >= x0 && x[i] <= x1 && y[i] >= y0 && y[i] <= y1) {
+				if (count == limit) {
+					return null;
+				}
+				selected[count++] = i;
+			}
+		}
+		return Arrays.copyOf(selected, count);
+	}
+
+	/**
+	 * Counts the points in each cell of a grid over the rectangle, points
+	 * outside it are ignored.
+	 * 
+	 * @return counts by row from y0, then by column from x0
+	 */
+	public int[] bin(double x0, double x1, double y0, double y1, int cols,
+			int rows) {
+		int[] counts = new int[cols * rows];
+		double w = cols / (x1 - x0);
+		double h = rows / (y1 - y0);
+		for (int i = 0; i < size; i++) {
+			if (x[i] >= x0 && x[i] <= x1 && y[i] >= y0 && y[i] <= y1) {
+				// points on the far edges go in the last cell
+				int col = Math.min((int) ((x[i] - x0) * w), cols - 1);
+				int row = Math.min((int) ((y[i] - y0) * h), rows - 1);
+				counts[row * cols + col]++;
+			}
+		}
+		return counts;
+	}
+}
@@ -17,7 +17,6 @@ package com.wattzap.utils;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
 
 import org.apache.log4j.LogManager;
@@ -28,6 +27,7 @@ import org.xml.sax.helpers.DefaultHandler;
 import com.wattzap.model.GPXReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.model.power.Power;
 
@@ -42,8 +42,9 @@ public class TcxImporter extends DefaultHandler {
 	StringBuilder buffer;
 	protected static final String TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
 	private final SimpleDateFormat timestampFormatter;
-	ArrayList<Telemetry> data;
+	TelemetrySeries data;
 	Telemetry point;
+	Telemetry last = null;
 	double distance = 0;
 
 	Rolling rSpeed = new Rolling(20);
@@ -57,7 +58,7 @@ public class TcxImporter extends DefaultHandler {
 		super();
 		currentState = State.UNDEFINED;
 		timestampFormatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
-		data = new ArrayList<Telemetry>();
+		data = new TelemetrySeries();
 	}
 
 	public void startElement(String uri, String name, String qName,
@@ -135,10 +136,7 @@ public class TcxImporter extends DefaultHandler {
 					currentState = State.TRACKPOINT;
 				} else if ("Trackpoint".equalsIgnoreCase(name)) {
 					// finalize data
-					int current = data.size();
-					if (current > 0) {
-						Telemetry last = data.get(current - 1);
-
+					if (last != null) {
 						double d = GPXReader.distance(point.getLatitude(),
 								last.getLatitude(), point.getLongitude(),
 								last.getLongitude(), point.getElevation(),
@@ -185,6 +183,7 @@ public class TcxImporter extends DefaultHandler {
 						}
 					}
 					data.add(point);
+					last = point;
 
 					currentState = State.UNDEFINED;
 				}
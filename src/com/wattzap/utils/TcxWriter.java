@@ -328,7 +328,12 @@ public class TcxWriter /* implements TrackWriter */{
 		date.setTimeInMillis(time);
 		int season = date.get(Calendar.YEAR);
 
-		String workoutName = fileTSFormatter.format(new Date(time));
+		String workoutName;
+		// SimpleDateFormat isn't thread safe, workouts are saved in parallel
+		// on import
+		synchronized (fileTSFormatter) {
+			workoutName = fileTSFormatter.format(new Date(time));
+		}
 
 		return season + "/" + workoutName + ".tcx";
 	}
@@ -0,0 +1,179 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.wattzap.controller.DistributionAccessor;
+import com.wattzap.model.dto.TelemetrySeries;
+
+/**
+ * Time spent at each raw value of one channel (watts, rpm, bpm) over one or
+ * more rides.
+ *
+ * Rides are scanned once into a primitive array with one bin per unit value,
+ * bucketing the histogram at any scale is then a pass over the bins, not the
+ * samples. Samples the accessor flags as zero are also counted on their own
+ * so they can be taken out again when zeroes are hidden.
+ *
+ * Several rides are scanned in parallel by of() and the histograms merged.
+ */
+public class TimeHistogram {
+	private static final int THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	// shared by all graphs, the threads die when idle
+	private static final ExecutorService scanner = DaemonPool.create(
+			"Histogram", THREADS);
+
+	// value of the first bin, usually 0 but power can be -1
+	private int base = 0;
+	private long[] time = new long[0];
+	private long[] zeroes = new long[0];
+
+	/**
+	 * Empty histogram, use with merge()
+	 */
+	public TimeHistogram() {
+	}
+
+	public TimeHistogram(TelemetrySeries ride, DistributionAccessor da) {
+		for (int i = 1; i < ride.size(); i++) {
+			int v = da.getValue(ride, i);
+			if (v == DistributionAccessor.IGNORE) {
+				continue;
+			}
+			long interval = ride.getTime(i) - ride.getTime(i - 1);
+			int bin = bin(v);
+			time[bin] += interval;
+			if (da.isZero(ride, i)) {
+				zeroes[bin] += interval;
+			}
+		}
+	}
+
+	/**
+	 * Scans the rides in parallel, getValue() and isZero() of the accessor
+	 * must be thread safe.
+	 */
+	public static TimeHistogram of(TelemetrySeries[] rides,
+			final DistributionAccessor da) {
+		TimeHistogram all = new TimeHistogram();
+		if (rides.length == 1) {
+			all.merge(new TimeHistogram(rides[0], da));
+			return all;
+		}
+
+		List<Future<TimeHistogram>> scans = new ArrayList<Future<TimeHistogram>>();
+		for (final TelemetrySeries ride : rides) {
+			scans.add(scanner.submit(new Callable<TimeHistogram>() {
+				@Override
+				public TimeHistogram call() {
+					return new TimeHistogram(ride, da);
+				}
+			}));
+		}
+		try {
+			for (Future<TimeHistogram> scan : scans) {
+				all.merge(scan.get());
+			}
+		} catch (InterruptedException e) {
+			for (Future<TimeHistogram> scan : scans) {
+				scan.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return all;
+	}
+
+	public void merge(TimeHistogram h) {
+		if (h.time.length == 0) {
+			return;
+		}
+		bin(h.base);
+		int offset = bin(h.base + h.time.length - 1) - (h.time.length - 1);
+		for (int i = 0; i < h.time.length; i++) {
+			time[offset + i] += h.time[i];
+			zeroes[offset + i] += h.zeroes[i];
+		}
+	}
+
+	/**
+	 * @return milliseconds spent at value v, including zeroes
+	 */
+	public long getTime(int v) {
+		int bin = v - base;
+		if (bin < 0 || bin >= time.length) {
+			return 0;
+		}
+		return time[bin];
+	}
+
+	/**
+	 * Totals the time in each key of the accessor, at its current scale and
+	 * keepZeroes setting.
+	 * 
+	 * @return milliseconds indexed by key
+	 */
+	public long[] getBuckets(DistributionAccessor da) {
+		int[] keys = new int[time.length];
+		int max = -1;
+		for (int i = 0; i < time.length; i++) {
+			keys[i] = time[i] == 0 ? -1 : da.getKey(base + i);
+			max = Math.max(max, keys[i]);
+		}
+
+		long[] buckets = new long[max + 1];
+		for (int i = 0; i < time.length; i++) {
+			if (keys[i] >= 0) {
+				buckets[keys[i]] += da.keepZeroes ? time[i] : time[i]
+						- zeroes[i];
+			}
+		}
+		return buckets;
+	}
+
+	/*
+	 * Index of the bin for v, growing the arrays to hold it
+	 */
+	private int bin(int v) {
+		if (time.length == 0) {
+			base = v;
+		}
+		int lo = Math.min(base, v);
+		int hi = Math.max(base + time.length - 1, v);
+		if (lo != base || hi - lo + 1 != time.length) {
+			// grow by half so a rising value doesn't copy every sample
+			int size = hi - lo + 1;
+			int extra = v > base ? size / 2 : 0;
+			long[] t = new long[size + extra];
+			long[] z = new long[size + extra];
+			System.arraycopy(time, 0, t, base - lo, time.length);
+			System.arraycopy(zeroes, 0, z, base - lo, zeroes.length);
+			time = t;
+			zeroes = z;
+			base = lo;
+		}
+		return v - base;
+	}
+}
@@ -0,0 +1,269 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Arrays;
+
+import com.wattzap.model.UserPreferences;
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.WorkoutData;
+
+/**
+ * Workout summary kept up to date as samples are recorded, so saving or
+ * showing the analysis of a ride doesn't go back over the whole ride.
+ *
+ * Gives the same results as TrainingAnalysis.analyze() over the same
+ * samples. Totals, maxima and time weighted sums are updated per sample,
+ * heart rate time is kept per bpm for the 20 minute heart rate. Power is
+ * resampled to seconds as MeanMaxPower does, with running sums so the best
+ * effort at each duration on the curve and the 30 second rolling average
+ * for normalized power are a subtraction per second.
+ *
+ * Not thread safe, samples are added and the summary read on one thread.
+ */
+public class WorkoutAnalyzer {
+	// rolling average for normalized power
+	private static final int NP_WINDOW = 30;
+
+	private int samples;
+	private long firstTime;
+	private long lastTime;
+	private double firstDistance;
+	private double lastDistance;
+
+	private int maxPower;
+	private int maxHR;
+	private int minHR;
+	private int maxCadence;
+	private double squares;
+	private double energy;
+	private long heartBeats;
+	private long pedalStrokes;
+	// time at each heart rate, offset by one for missing (-1)
+	private long[] hrTime;
+
+	// power per second as running sums, sum[s] is the first s seconds
+	private long[] sum;
+	private int seconds;
+	private long carry;
+	// best sum over duration(i) seconds
+	private long[] best;
+	private double np4;
+	private int npCount;
+
+	public WorkoutAnalyzer() {
+		reset();
+	}
+
+	public void reset() {
+		samples = 0;
+		firstTime = lastTime = 0;
+		firstDistance = lastDistance = 0;
+		maxPower = maxHR = maxCadence = 0;
+		minHR = 220;
+		squares = energy = 0;
+		heartBeats = pedalStrokes = 0;
+		hrTime = new long[257];
+		sum = new long[3601];
+		seconds = 0;
+		carry = 0;
+		best = new long[0];
+		np4 = 0;
+		npCount = 0;
+	}
+
+	public void add(Telemetry t) {
+		add(t.getTime(), t.getPower(), t.getHeartRate(), t.getCadence(),
+				t.getDistanceMeters());
+	}
+
+	public void add(long time, int power, int heartRate, int cadence,
+			double distance) {
+		if (samples == 0) {
+			firstTime = time;
+			firstDistance = distance;
+		} else {
+			long interval = time - lastTime;
+			hrTime(heartRate, interval);
+			energy += power * interval;
+			if (heartRate > 0) {
+				heartBeats += heartRate * interval;
+			}
+			pedalStrokes += cadence * interval;
+			addSeconds(interval, power);
+		}
+		samples++;
+		lastTime = time;
+		lastDistance = distance;
+
+		if (maxPower < power) {
+			maxPower = power;
+		}
+		squares += power * power;
+		if (heartRate > maxHR) {
+			maxHR = heartRate;
+		}
+		if (cadence > maxCadence) {
+			maxCadence = cadence;
+		}
+		if (heartRate != -1 && heartRate < minHR) {
+			minHR = heartRate;
+		}
+	}
+
+	private void hrTime(int heartRate, long interval) {
+		int i = heartRate + 1;
+		if (i < 0) {
+			return;
+		}
+		if (i >= hrTime.length) {
+			hrTime = Arrays.copyOf(hrTime, i + 1);
+		}
+		hrTime[i] += interval;
+	}
+
+	/*
+	 * Same resampling as MeanMaxPower.toSeconds()
+	 */
+	private void addSeconds(long interval, int power) {
+		carry += interval;
+		int dt = (int) (carry / 1000);
+		carry -= dt * 1000L;
+		if (dt <= 0) {
+			return;
+		}
+
+		int p = Math.max(0, power);
+		int hold = dt;
+		int stopped = 0;
+		if (dt > MeanMaxPower.MAX_GAP) {
+			hold = 1;
+			stopped = Math.min(dt - 1, MeanMaxPower.MAX_STOP);
+		}
+		for (int i = 0; i < hold; i++) {
+			addSecond(p);
+		}
+		for (int i = 0; i < stopped; i++) {
+			addSecond(0);
+		}
+	}
+
+	private void addSecond(int power) {
+		if (seconds + 1 == sum.length) {
+			sum = Arrays.copyOf(sum, sum.length * 2);
+		}
+		seconds++;
+		sum[seconds] = sum[seconds - 1] + power;
+
+		// a new point on the curve once the ride is as long as its duration
+		int points = best.length;
+		if (MeanMaxPower.duration(points) <= seconds) {
+			best = Arrays.copyOf(best, points + 1);
+		}
+		for (int i = 0; i < best.length; i++) {
+			int d = MeanMaxPower.duration(i);
+			long s = sum[seconds] - sum[seconds - d];
+			if (s > best[i]) {
+				best[i] = s;
+			}
+		}
+
+		if (seconds >= NP_WINDOW) {
+			double average = (double) (sum[seconds] - sum[seconds
+					- NP_WINDOW])
+					/ NP_WINDOW;
+			np4 += average * average * average * average;
+			npCount++;
+		}
+	}
+
+	public int size() {
+		return samples;
+	}
+
+	/**
+	 * @return best average power for duration(i) seconds, as MeanMaxPower
+	 */
+	public double[] getCurve() {
+		double[] curve = new double[best.length];
+		for (int i = 0; i < curve.length; i++) {
+			curve[i] = (double) best[i] / MeanMaxPower.duration(i);
+		}
+		return curve;
+	}
+
+	/**
+	 * 30 second rolling average power, averaged to the fourth power
+	 * 
+	 * @return watts, 0 for rides under 30 seconds
+	 */
+	public int getNormalizedPower() {
+		if (npCount == 0) {
+			return 0;
+		}
+		return (int) Math.pow(np4 / npCount, 0.25);
+	}
+
+	/**
+	 * @return the summary of the ride so far, null if there are no samples
+	 */
+	public WorkoutData getWorkoutData() {
+		if (samples == 0) {
+			return null;
+		}
+		WorkoutData workoutData = new WorkoutData();
+		long len = lastTime - firstTime;
+		workoutData.setTime(len);
+		workoutData.setDate(firstTime);
+		workoutData.setDistanceMeters(lastDistance - firstDistance);
+
+		MeanMaxPower mmp = MeanMaxPower.fromCurve(getCurve());
+		workoutData.setFiveSecondPwr(mmp.get(5));
+		workoutData.setFiveMinutePwr(mmp.get(300));
+		workoutData.setOneMinutePwr(mmp.get(60));
+		workoutData.setTwentyMinutePwr(mmp.get(1200));
+		workoutData.setPowerCurve(getCurve());
+		workoutData.setQuadraticPower((int) Math.sqrt(squares / samples));
+		workoutData.setNormalizedPower(getNormalizedPower());
+
+		// highest heart rate held for 20 minutes in total
+		int twentyMinHR = 0;
+		long timeInMillis = 0;
+		for (int i = hrTime.length - 1; i >= 0; i--) {
+			timeInMillis += hrTime[i];
+			if (timeInMillis >= 1200000 && hrTime[i] > 0) {
+				twentyMinHR = i - 1;
+				break;
+			}
+		}
+		workoutData.setFtHR(twentyMinHR);
+
+		// always save as Kilograms
+		workoutData.setWeight(UserPreferences.INSTANCE.getWeightKG());
+		workoutData.setMaxHR(maxHR);
+		workoutData.setMinHR(minHR);
+		workoutData.setMaxCadence(maxCadence);
+		if (len > 0) {
+			workoutData.setAveCadence((int) (pedalStrokes / len));
+			workoutData.setAveHR((int) (heartBeats / len));
+			workoutData.setAvePower((int) (energy / len));
+		}
+		workoutData.setMaxPower(maxPower);
+		workoutData.setTotalPower((int) (energy / (3600000)));
+
+		return workoutData;
+	}
+}
@@ -25,7 +25,9 @@ import javax.swing.JFrame;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.usb4java.javax.IrpStatistics;
 
+import com.wattzap.controller.AsyncSubscriber;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
@@ -57,6 +59,7 @@ public class MainFrame extends JFrame implements ActionListener,
 			public void windowClosing(WindowEvent e) {
 				// remember position and size
 				MessageBus.INSTANCE.send(Messages.CLOSE, null);
+				logBusStats();
 				UserPreferences.INSTANCE.shutDown();
 				System.exit(0);
 			}
@@ -71,11 +74,22 @@ public class MainFrame extends JFrame implements ActionListener,
 		
 			// QUIT
 			MessageBus.INSTANCE.send(Messages.CLOSE, null);
+			logBusStats();
 			UserPreferences.INSTANCE.shutDown();
 			System.exit(0);
 
 	}
 
+	private void logBusStats() {
+		for (AsyncSubscriber s : MessageBus.INSTANCE.getAsyncSubscribers()) {
+			logger.info(s);
+		}
+		logger.info("USB queues: " + IrpStatistics.getIrpsProcessed()
+				+ " irps, " + IrpStatistics.getThreadsStarted()
+				+ " threads, " + IrpStatistics.getBuffersAllocated()
+				+ " buffers");
+	}
+
 	@Override
 	public void callback(Messages message, Object o) {
 		logger.info(message);
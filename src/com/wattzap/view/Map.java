@@ -22,6 +22,7 @@ import org.apache.log4j.Logger;
 
 import com.gpxcreator.gpxpanel.GPXFile;
 import com.gpxcreator.gpxpanel.GPXPanel;
+import com.wattzap.controller.AsyncSubscriber;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
@@ -58,7 +59,9 @@ public class Map extends GPXPanel implements MessageCallback {
 		this.frame = frame;
 		setVisible(false);
 
-		MessageBus.INSTANCE.register(Messages.SPEED, this);
+		// display only, runs on the event thread with the latest speed
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, this,
+				MessageBus.EDT, 4, AsyncSubscriber.Overflow.COALESCE);
 		MessageBus.INSTANCE.register(Messages.CLOSE, this);
 		MessageBus.INSTANCE.register(Messages.GPXLOAD, this);
 	}
@@ -31,6 +31,7 @@ import net.miginfocom.swing.MigLayout;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
+import com.wattzap.controller.AsyncSubscriber;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
@@ -211,7 +212,9 @@ public class Odometer extends JPanel implements MessageCallback {
 		
 		doText();
 
-		MessageBus.INSTANCE.register(Messages.SPEED, this);
+		// display only, runs on the event thread with the latest speed
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, this,
+				MessageBus.EDT, 4, AsyncSubscriber.Overflow.COALESCE);
 		MessageBus.INSTANCE.register(Messages.GPXLOAD, this);
 		MessageBus.INSTANCE.register(Messages.START, this);
 		MessageBus.INSTANCE.register(Messages.LOCALE, this);
@@ -34,6 +34,7 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.xy.XYDataset;
 import org.jfree.data.xy.XYSeriesCollection;
 
+import com.wattzap.controller.AsyncSubscriber;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
@@ -60,7 +61,9 @@ public class Profile extends JPanel implements MessageCallback {
 
 		// this.setPreferredSize(d);
 
-		MessageBus.INSTANCE.register(Messages.SPEED, this);
+		// display only, runs on the event thread with the latest speed
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, this,
+				MessageBus.EDT, 4, AsyncSubscriber.Overflow.COALESCE);
 		MessageBus.INSTANCE.register(Messages.STARTPOS, this);
 		MessageBus.INSTANCE.register(Messages.CLOSE, this);
 		MessageBus.INSTANCE.register(Messages.GPXLOAD, this);
@@ -40,6 +40,7 @@ import uk.co.caprica.vlcj.player.embedded.FullScreenStrategy;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
+import com.wattzap.model.RouteIndex;
 import com.wattzap.model.RouteReader;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Point;
@@ -78,6 +79,7 @@ public class VideoPlayer extends JFrame implements MessageCallback {
 	long lastMapTime;
 	long lastVideoTime;
 	RouteReader routeData;
+	RouteIndex.Cursor routeCursor;
 	long len;
 	float fps;
 	JPanel odo;
@@ -127,7 +129,7 @@ public class VideoPlayer extends JFrame implements MessageCallback {
 	}
 
 	private void setSpeed(Telemetry t) {
-		Point p = routeData.getPoint(t.getDistanceKM());
+		Point p = routeCursor.getPoint(t.getDistanceMeters());
 
 		if (startTime == 0) {
 			// first time through, start video
@@ -299,7 +301,8 @@ public class VideoPlayer extends JFrame implements MessageCallback {
 				return;
 			}
 
-			Point p = routeData.getAbsolutePoint(startDistance);
+			// seek to the frame between route points
+			Point p = routeData.getIndex().interpolate(startDistance * 1000);
 			if (p != null) {
 				mapStartTime = p.getTime();
 				if (mapStartTime > 0 && len > 0) {
@@ -335,6 +338,7 @@ public class VideoPlayer extends JFrame implements MessageCallback {
 			break;
 		case GPXLOAD:
 			routeData = (RouteReader) o;
+			routeCursor = routeData.getIndex().cursor();
 			startTime = 0;
 			if (routeData.routeType() == RouteReader.SLOPE) {
 				// smooth GPX type courses
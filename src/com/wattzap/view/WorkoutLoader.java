@@ -0,0 +1,138 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.view;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.wattzap.model.dto.TelemetrySeries;
+import com.wattzap.utils.ActivityReader;
+import com.wattzap.utils.DaemonPool;
+
+/**
+ * Reads the rides of the selected workouts for the analysis windows.
+ *
+ * Files are parsed in parallel on a shared pool. The last selection read is
+ * kept, windows opened one after the other on the same selection, or while
+ * it is still being read, share the one read. Changing the selection cancels
+ * it.
+ */
+class WorkoutLoader {
+	private static final int THREADS = Runtime.getRuntime()
+			.availableProcessors();
+	private static Logger logger = LogManager.getLogger("Workout Loader");
+
+	// shared by all loads, the threads die when idle
+	private static final ExecutorService pool = DaemonPool.create(
+			"Workout Loader", THREADS);
+
+	private List<String> files = null;
+	private Load current = null;
+
+	/**
+	 * Starts reading the files, unless they are already read or being read.
+	 * 
+	 * @param files
+	 *            full paths of the TCX files
+	 */
+	synchronized Load load(List<String> files) {
+		if (current != null && files.equals(this.files)
+				&& !current.isCancelled()) {
+			return current;
+		}
+		cancel();
+		this.files = new ArrayList<String>(files);
+		current = new Load(this.files);
+		return current;
+	}
+
+	/**
+	 * Reads the files without sharing the read, it isn't cancelled by
+	 * cancel()
+	 */
+	Load read(List<String> files) {
+		return new Load(files);
+	}
+
+	/**
+	 * Stops any read in progress and forgets the last selection
+	 */
+	synchronized void cancel() {
+		if (current != null) {
+			current.cancel();
+		}
+		current = null;
+		files = null;
+	}
+
+	/**
+	 * The rides of one selection, in the order selected
+	 */
+	static class Load {
+		private final List<Future<TelemetrySeries>> rides = new ArrayList<Future<TelemetrySeries>>();
+
+		private Load(List<String> files) {
+			for (final String file : files) {
+				rides.add(pool.submit(new Callable<TelemetrySeries>() {
+					@Override
+					public TelemetrySeries call() throws Exception {
+						return ActivityReader.readSeries(file);
+					}
+				}));
+			}
+		}
+
+		int size() {
+			return rides.size();
+		}
+
+		/**
+		 * Waits for ride i
+		 * 
+		 * @return the ride, null if it couldn't be read
+		 */
+		TelemetrySeries get(int i) throws InterruptedException {
+			try {
+				return rides.get(i).get();
+			} catch (ExecutionException e) {
+				logger.error(e.getCause().getLocalizedMessage());
+				return null;
+			}
+		}
+
+		private boolean isCancelled() {
+			for (Future<TelemetrySeries> ride : rides) {
+				if (ride.isCancelled()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void cancel() {
+			for (Future<TelemetrySeries> ride : rides) {
+				ride.cancel(true);
+			}
+		}
+	}
+}
@@ -23,17 +23,22 @@ import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 import java.util.TimeZone;
-import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -49,6 +54,9 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -64,11 +72,14 @@ import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
 import com.wattzap.model.UserPreferences;
-import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.TrainingItem;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.utils.ActivityReader;
+import com.wattzap.utils.MeanMaxPower;
+import com.wattzap.utils.ScatterPoints;
 import com.wattzap.utils.TcxWriter;
+import com.wattzap.utils.TimeHistogram;
 import com.wattzap.view.graphs.DistributionGraph;
 import com.wattzap.view.graphs.GPanel;
 import com.wattzap.view.graphs.GenericScatterGraph;
@@ -86,14 +97,15 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 	private static final long serialVersionUID = 1L;
 	private List<WorkoutData> workoutList;
 	private List<Integer> selectedRows;
-	WorkoutData workoutData = null;
 	public final static String IMPORTDIR = "/Imports/";
 
-	private boolean listChanged = true;
 	private final JTable table;
 	private final JFrame frame;
 
-	ArrayList<Telemetry> telemetry[] = null;
+	// rides of the selection, read for the analysis windows
+	private final WorkoutLoader loader = new WorkoutLoader();
+	// analysis windows being computed, by command and selection
+	private final Map<String, Analysis<?>> jobs = new HashMap<String, Analysis<?>>();
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
 
 	private static final Logger logger = LogManager.getLogger("Workouts");
@@ -113,6 +125,7 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 	private final static String tlGraph = "TLDG";
 	private final static String tlhrGraph = "TLHRDG";
 	public final static String importer = "IMP";
+	private final static String reanalyzer = "REA";
 
 	// menus
 	private final JMenu summaryMenu;
@@ -171,6 +184,8 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 					 */
 					public void valueChanged(ListSelectionEvent e) {
 						if (!e.getValueIsAdjusting()) {
+							// windows for the old selection aren't wanted
+							cancelJobs();
 							ListSelectionModel lsm = (ListSelectionModel) e
 									.getSource();
 
@@ -186,7 +201,6 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 										selectedRows.add(i);
 									}
 								}
-								listChanged = true;
 							}
 						}
 					}
@@ -303,6 +317,73 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 		MessageBus.INSTANCE.register(Messages.LOCALE, this);
 	}
 
+	/*
+	 * Imports workouts on a background thread, the importer reports progress
+	 * to a monitor dialog and the table is updated on the event thread when
+	 * it finishes.
+	 */
+	private void importWorkouts(final List<String> files) {
+		final ProgressMonitor monitor = new ProgressMonitor(frame,
+				userPrefs.getString("import"), null, 0, files.size());
+		monitor.setMillisToPopup(500);
+		importMenuItem.setEnabled(false);
+
+		final ActivityReader ar = new ActivityReader();
+		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() {
+				ar.readActivities(files, new ActivityReader.ImportListener() {
+					@Override
+					public void progress(final int done, int total,
+							String fileName) {
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								// the reader stops after the current file and
+								// commits what it has read, so done() sees
+								// every imported workout
+								if (monitor.isCanceled()) {
+									ar.cancel();
+								}
+								monitor.setProgress(done);
+							}
+						});
+					}
+				});
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				monitor.close();
+				importMenuItem.setEnabled(true);
+
+				List<String> imported = new ArrayList<String>(ar
+						.getImportedFileList());
+				StringBuilder importedFiles = new StringBuilder();
+				if (imported.isEmpty()) {
+					importedFiles.append(userPrefs.getString("noFiles"));
+				} else {
+
+					importedFiles.append(userPrefs.getString("imported")
+							+ ":\n\n");
+					for (String file : imported) {
+						importedFiles.append(file);
+						importedFiles.append("\n");
+					}// for
+
+					updateModel();
+
+				}
+				JOptionPane.showMessageDialog(Workouts.this,
+						importedFiles.toString(),
+						userPrefs.getString("import"),
+						JOptionPane.INFORMATION_MESSAGE);
+			}
+		};
+		worker.execute();
+	}
+
 	public void updateModel() {
 		DefaultTableModel tableModel = (DefaultTableModel) table.getModel();
 		loadData(tableModel);
@@ -384,13 +465,12 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 			String workoutDir = UserPreferences.INSTANCE.getUserDataDirectory()
 					+ IMPORTDIR;
 
-			ActivityReader ar = new ActivityReader();
-
+			List<String> files = new ArrayList<String>();
 			File dir = new File(workoutDir);
 			for (File entry : dir.listFiles()) {
 				if (entry.isFile()) {
 					try {
-						ar.readActivity(entry.getCanonicalPath());
+						files.add(entry.getCanonicalPath());
 					} catch (IOException e1) {
 						// TODO Auto-generated catch block
 						e1.printStackTrace();
@@ -398,35 +478,19 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 				}
 			}
 
-			StringBuilder importedFiles = new StringBuilder();
-			if (ar.getImportedFileList().isEmpty()) {
-				importedFiles.append(userPrefs.getString("noFiles"));
-			} else {
-
-				importedFiles.append(userPrefs.getString("imported") + ":\n\n");
-				for (String file : ar.getImportedFileList()) {
-					importedFiles.append(file);
-					importedFiles.append("\n");
-				}// for
-
-				updateModel();
-
-			}
-			JOptionPane.showMessageDialog(this, importedFiles.toString(),
-					userPrefs.getString("import"),
-					JOptionPane.INFORMATION_MESSAGE);
+			importWorkouts(files);
+			return;
+		}
 
+		if (mmpGraph.equals(command)) {
+			mmpGraph();
 			return;
 		}
 
 		/*
-		 * Load selected data for other graphs
+		 * Other graphs read the selected rides
 		 */
-		if (!load()) {
-			return;
-		}
-		if (mmpGraph.equals(command)) {
-			mmpGraph();
+		if (!hasSelection()) {
 			return;
 		}
 		if (scGraph.equals(command)) {
@@ -444,42 +508,47 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 		}
 		if (pdGraph.equals(command)) {
 			// Power distribution graph
-			DistributionGraph(new DistributionAccessor() {
-				public int getKey(Telemetry t) {
-					return getKey(t.getPower());
+			DistributionGraph(pdGraph, new DistributionAccessor() {
+				public int getValue(TelemetrySeries t, int i) {
+					return t.getPower(i);
 				}
 			}, 15, userPrefs.getString("pdGr"), userPrefs.getString("poWtt"));
 			return;
 		}
 		if (cdGraph.equals(command)) {
 			// Cadence distribution graph
-			DistributionGraph(new DistributionAccessor() {
-				public int getKey(Telemetry t) {
-					return getKey(t.getCadence());
+			DistributionGraph(cdGraph, new DistributionAccessor() {
+				public int getValue(TelemetrySeries t, int i) {
+					return t.getCadence(i);
 				}
 			}, 5, userPrefs.getString("cDgr"), userPrefs.getString("cDrpm"));
 			return;
 		}
 		if (hrdGraph.equals(command)) {
-			DistributionGraph(new DistributionAccessor() {
-				public int getKey(Telemetry t) {
-					if (t.getHeartRate() < 30) {
-						return -1; // ignore these values
+			DistributionGraph(hrdGraph, new DistributionAccessor() {
+				public int getValue(TelemetrySeries t, int i) {
+					if (t.getHeartRate(i) < 30) {
+						return IGNORE; // ignore these values
 					}
 
-					return getKey(t.getHeartRate());
+					return t.getHeartRate(i);
 				}
 			}, 10, userPrefs.getString("hrDgr"), userPrefs.getString("hrBpm"));
 			return;
 		}
 		if (tlGraph.equals(command)) {
 			// Training Zone Graph
-			DistributionGraph(new DistributionAccessor() {
-				public int getKey(Telemetry t) {
-					if (!keepZeroes && t.getPower() < 5) {
-						return -1;
-					}
-					return TrainingItem.getTrainingLevel(t.getPower());
+			DistributionGraph(tlGraph, new DistributionAccessor() {
+				public int getValue(TelemetrySeries t, int i) {
+					return t.getPower(i);
+				}
+
+				public boolean isZero(TelemetrySeries t, int i) {
+					return t.getPower(i) < 5;
+				}
+
+				public int getKey(int v) {
+					return TrainingItem.getTrainingLevel(v);
 				}
 
 				public String getValueLabel(int v) {
@@ -491,12 +560,17 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 		}
 		if (tlhrGraph.equals(command)) {
 			// Training Zone Graph
-			DistributionGraph(new DistributionAccessor() {
-				public int getKey(Telemetry t) {
-					if (!keepZeroes && t.getPower() < 5) {
-						return -1;
-					}
-					return TrainingItem.getHRTrainingLevel(t.getHeartRate());
+			DistributionGraph(tlhrGraph, new DistributionAccessor() {
+				public int getValue(TelemetrySeries t, int i) {
+					return t.getHeartRate(i);
+				}
+
+				public boolean isZero(TelemetrySeries t, int i) {
+					return t.getPower(i) < 5;
+				}
+
+				public int getKey(int v) {
+					return TrainingItem.getHRTrainingLevel(v);
 				}
 
 				public String getValueLabel(int v) {
@@ -509,46 +583,15 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 	}
 
 	/**
-	 * Load one or more workouts selected in view. We concatenate all data into
-	 * a telemetry array.
-	 * 
-	 * Side effect: Global workoutData points to the last workout data loaded.
-	 * FIX: we should change this
-	 * 
-	 * @return false - no data could be loaded due to a selection error. True :
-	 *         data is ready to use.
+	 * @return true if workouts are selected, otherwise tells the user
 	 */
-	private boolean load() {
+	private boolean hasSelection() {
 		if (selectedRows == null || selectedRows.isEmpty()) {
 			JOptionPane.showMessageDialog(this,
 					userPrefs.getString("noDataDisp"),
 					userPrefs.getString("noData"), JOptionPane.ERROR_MESSAGE);
 			return false;
-		} else if (listChanged == false && telemetry != null) {
-			// data already loaded and nothing changed
-			return true;
 		}
-
-		String workoutDir = UserPreferences.INSTANCE.getUserDataDirectory()
-				+ TcxWriter.WORKOUTDIR;
-
-		telemetry = new ArrayList[selectedRows.size()];
-
-		int count = 0;
-		for (int i : selectedRows) {
-			workoutData = workoutList.get(i);
-			String fileName = workoutData.getTcxFile();
-			try {
-				telemetry[count] = ActivityReader.readTelemetry(workoutDir
-						+ fileName);
-			} catch (Exception e1) {
-				// bah, do nothing
-				logger.error(e1.getLocalizedMessage());
-			}
-			count++;
-		}// for
-
-		listChanged = false;
 		return true;
 	}
 
@@ -557,43 +600,204 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 	 * database.
 	 */
 	void reanalyze() {
-		if (selectedRows == null || selectedRows.isEmpty()) {
-			JOptionPane.showMessageDialog(this,
-					userPrefs.getString("noDataDisp"),
-					userPrefs.getString("noData"), JOptionPane.ERROR_MESSAGE);
+		if (!hasSelection()) {
 			return;
 		}
 
-		String workoutDir = UserPreferences.INSTANCE.getUserDataDirectory()
-				+ TcxWriter.WORKOUTDIR;
+		// writes as it goes, so it stops between rides rather than being
+		// cancelled and the rows it saved are always shown
+		new Analysis<List<WorkoutData>>(reanalyzer, true, false) {
+			@Override
+			List<WorkoutData> compute(TelemetrySeries[] rides) {
+				List<WorkoutData> analyzed = new ArrayList<WorkoutData>();
+				for (int i = 0; i < rides.length && !isStopping(); i++) {
+					WorkoutData workout = loaded.get(i);
+					try {
+						WorkoutData data = TrainingAnalysis.analyze(rides[i]);
+						data.setTcxFile(workout.getTcxFile());
+						data.setFtp(workout.getFtp());
+						userPrefs.updateWorkout(data); // saves data to RDBMS
+						analyzed.add(data);
+					} catch (Exception e1) {
+						logger.error(e1.getLocalizedMessage());
+					}
+				}// for
+				return analyzed;
+			}
 
-		telemetry = new ArrayList[selectedRows.size()];
+			@Override
+			void show(List<WorkoutData> analyzed) {
+				for (WorkoutData data : analyzed) {
+					for (int i = 0; i < workoutList.size(); i++) {
+						if (workoutList.get(i).getTcxFile().equals(
+								data.getTcxFile())) {
+							// FIXME updates local cache of workouts but won't
+							// fire list changed event?
+							workoutList.set(i, data);
+						}
+					}
+				}
+			}
+		}.start();
+	}
 
-		int count = 0;
-		for (int i : selectedRows) {
-			workoutData = workoutList.get(i);
-			String fileName = workoutData.getTcxFile();
-			int ftp = workoutData.getFtp();
-			try {
-				telemetry[count] = ActivityReader.readTelemetry(workoutDir
-						+ fileName);
-
-				workoutData = TrainingAnalysis.analyze(telemetry[count]);
-				workoutData.setTcxFile(fileName);
-				workoutData.setFtp(ftp);
-				userPrefs.updateWorkout(workoutData); // saves data to RDBMS
-				workoutList.set(i, workoutData); // FIXME updates local cache of
-													// workouts but won't fire
-													// list changed event?
-			} catch (Exception e1) {
-				logger.error(e1.getLocalizedMessage());
+	/*
+	 * Cancels the analysis windows, reanalyze is left to finish
+	 */
+	private void cancelJobs() {
+		Iterator<Analysis<?>> i = jobs.values().iterator();
+		while (i.hasNext()) {
+			Analysis<?> job = i.next();
+			if (job.cancellable) {
+				job.cancel(true);
+				i.remove();
 			}
-			count++;
+		}
+		loader.cancel();
+	}
 
-		}// for
+	/*
+	 * Work for an analysis window, for the workouts selected when it is
+	 * created. Rides are read and the result computed on a worker thread,
+	 * with a progress monitor if that takes a while, then the window is shown
+	 * on the event thread. The same analysis of the same selection only runs
+	 * once at a time, changing the selection cancels it.
+	 *
+	 * Work that can't be cancelled part way reads its own rides and stops
+	 * when isStopping(), its result is still shown.
+	 */
+	private abstract class Analysis<T> extends SwingWorker<T, Void> {
+		final List<WorkoutData> workouts = new ArrayList<WorkoutData>();
+		// workouts of the rides that could be read
+		final List<WorkoutData> loaded = new ArrayList<WorkoutData>();
+		private final boolean readRides;
+		private final boolean cancellable;
+		private final String key;
+		private ProgressMonitor monitor;
+		private volatile boolean stopping = false;
+
+		Analysis(String command, boolean readRides) {
+			this(command, readRides, true);
+		}
 
-		listChanged = false;
-		return;
+		Analysis(String command, boolean readRides, boolean cancellable) {
+			this.readRides = readRides;
+			this.cancellable = cancellable;
+			StringBuilder key = new StringBuilder(command);
+			for (int i : selectedRows) {
+				WorkoutData data = workoutList.get(i);
+				workouts.add(data);
+				key.append('|').append(data.getTcxFile());
+			}
+			this.key = key.toString();
+		}
+
+		/**
+		 * Runs on the worker thread
+		 * 
+		 * @param rides
+		 *            the rides that could be read, null if they weren't wanted
+		 */
+		abstract T compute(TelemetrySeries[] rides) throws Exception;
+
+		/**
+		 * Runs on the event thread
+		 */
+		abstract void show(T result);
+
+		/**
+		 * @return true once the user has asked to stop
+		 */
+		boolean isStopping() {
+			return stopping || isCancelled();
+		}
+
+		void start() {
+			if (jobs.containsKey(key)) {
+				// already on its way
+				return;
+			}
+			jobs.put(key, this);
+
+			monitor = new ProgressMonitor(frame,
+					userPrefs.getString("training_analysis"), null, 0, 100);
+			monitor.setMillisToPopup(500);
+			addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent evt) {
+					if ("progress".equals(evt.getPropertyName())) {
+						if (monitor.isCanceled()) {
+							if (cancellable) {
+								cancel(true);
+							} else {
+								stopping = true;
+							}
+						} else {
+							monitor.setProgress((Integer) evt.getNewValue());
+						}
+					}
+				}
+			});
+			execute();
+		}
+
+		@Override
+		protected T doInBackground() throws Exception {
+			TelemetrySeries[] rides = null;
+			if (readRides) {
+				rides = read();
+				if (rides.length == 0) {
+					throw new IOException("No workouts could be read");
+				}
+			}
+			return compute(rides);
+		}
+
+		private TelemetrySeries[] read() throws InterruptedException {
+			String workoutDir = UserPreferences.INSTANCE.getUserDataDirectory()
+					+ TcxWriter.WORKOUTDIR;
+			List<String> files = new ArrayList<String>();
+			for (WorkoutData data : workouts) {
+				files.add(workoutDir + data.getTcxFile());
+			}
+
+			// a shared read is cancelled with the selection
+			WorkoutLoader.Load load = cancellable ? loader.load(files)
+					: loader.read(files);
+			List<TelemetrySeries> rides = new ArrayList<TelemetrySeries>();
+			for (int i = 0; i < load.size(); i++) {
+				TelemetrySeries ride = load.get(i);
+				if (ride != null) {
+					rides.add(ride);
+					loaded.add(workouts.get(i));
+				}
+				// reading is most of the work
+				setProgress((i + 1) * 90 / load.size());
+			}
+			return rides.toArray(new TelemetrySeries[rides.size()]);
+		}
+
+		@Override
+		protected void done() {
+			monitor.close();
+			if (jobs.get(key) == this) {
+				jobs.remove(key);
+			}
+			if (isCancelled()) {
+				return;
+			}
+			try {
+				show(get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// a read cancelled by a new selection
+				if (!(e.getCause() instanceof CancellationException)) {
+					logger.error(e.getCause().getLocalizedMessage(),
+							e.getCause());
+				}
+			}
+		}
 	}
 
 	/*
@@ -606,80 +810,104 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 	/**
 	 * Create Mean Maximal Power Graph
 	 * 
-	 * This is a graph of power plotted by time.
+	 * This is a graph of power plotted by time. Uses the power curves stored
+	 * with each workout, workouts saved before curves were kept are read
+	 * once and their curve stored.
 	 */
 	public void mmpGraph() {
-		TreeMap<Integer, Long> powerValues = new TreeMap<Integer, Long>();
-		for (int i = 0; i < telemetry.length; i++) {
-			Telemetry first = null;
-			for (Telemetry t : telemetry[i]) {
-				if (first == null) {
-					// first time through
-					first = t;
-				} else {
-					int power = t.getPower();
-					if (power > 50) {
-						if (powerValues.containsKey(power)) {
-							long time = powerValues.get(power);
-							powerValues.put(power,
-									time + (t.getTime() - first.getTime()));
-						} else {
-							powerValues.put(power,
-									t.getTime() - first.getTime());
-						}
+		if (!hasSelection()) {
+			return;
+		}
 
-						first = t;
+		new Analysis<PowerCurves>(mmpGraph, false) {
+			@Override
+			PowerCurves compute(TelemetrySeries[] rides) {
+				String workoutDir = UserPreferences.INSTANCE
+						.getUserDataDirectory() + TcxWriter.WORKOUTDIR;
+
+				// best effort at each duration over all selected rides
+				PowerCurves curves = new PowerCurves();
+				long latest = 0;
+				for (int i = 0; i < workouts.size(); i++) {
+					if (isCancelled()) {
+						return null;
 					}
-				}
-			}// for
-		}// for
+					WorkoutData data = workouts.get(i);
+					double[] power = userPrefs.getPowerCurve(data.getTcxFile());
+					if (power == null) {
+						try {
+							power = new MeanMaxPower(
+									ActivityReader.readSeries(workoutDir
+											+ data.getTcxFile())).getCurve();
+						} catch (Exception e1) {
+							logger.error(e1.getLocalizedMessage());
+							continue;
+						}
+						data.setPowerCurve(power);
+						userPrefs.savePowerCurve(data);
+					}
+					curves.best.merge(MeanMaxPower.fromCurve(power));
+					latest = Math.max(latest, data.getDate());
+					setProgress((i + 1) * 100 / workouts.size());
+				}// for
 
-		int ftp20 = 0;
-		long ftp20T = 0;
-		int ftp = 0;
-		long ftpT = 0;
-		long total = 0;
-		XYSeries series = new XYSeries(userPrefs.getString("mmp"));
-		for (Entry<Integer, Long> entry : powerValues.descendingMap()
-				.entrySet()) {
-			Integer pwr = entry.getKey(); // power, Y axis
-
-			if (total == 0) {
-				// first time thru
-				total = entry.getValue();
-				if (total > 1) {
-					// add extra point at 1 second
-					series.addOrUpdate(1, (double) pwr);
-				}
-			} else {
-				total += entry.getValue(); // time in milliseconds - X axis
-			}
-			if (total > (20 * 60 * 1000) && ftp20 == 0) {
-				// 20 minutes
-				ftp20 = pwr;
-				ftp20T = total / 1000;
+				// season best for the year of the latest ride
+				Calendar cal = Calendar.getInstance();
+				cal.setTimeInMillis(latest);
+				curves.year = cal.get(Calendar.YEAR);
+				curves.season = MeanMaxPower.fromCurve(userPrefs
+						.getSeasonBest(curves.year));
+				return curves;
 			}
-			if (total > (60 * 60 * 1000) && ftp == 0) {
+
+			@Override
+			void show(PowerCurves curves) {
+				XYSeries series = curveSeries(userPrefs.getString("mmp"),
+						curves.best);
+
 				// 20 minutes
-				ftp = pwr;
-				ftpT = total / 1000;
+				int ftp20 = curves.best.get(20 * 60);
+				long ftp20T = 20 * 60;
+				// 60 minutes
+				int ftp = curves.best.get(60 * 60);
+				long ftpT = 60 * 60;
+
+				MMPGraph mmp = new MMPGraph(series, ftp20, ftp20T, ftp, ftpT);
+				mmp.addSeries(curveSeries(userPrefs.getString("seasonBest")
+						+ " " + curves.year, curves.season));
+
+				showGraph(mmp, userPrefs.getString("mmp"));
 			}
+		}.start();
+	}
 
-			series.addOrUpdate(total / 1000, (double) pwr);
-		}// for
+	private static class PowerCurves {
+		final MeanMaxPower best = new MeanMaxPower();
+		MeanMaxPower season;
+		int year;
+	}
 
-		MMPGraph mmp = new MMPGraph(series, ftp20, ftp20T, ftp, ftpT);
+	private XYSeries curveSeries(String title, MeanMaxPower curve) {
+		XYSeries series = new XYSeries(title);
+		for (int i = 0; i < curve.size(); i++) {
+			// time in seconds - X axis, power - Y axis
+			series.add(MeanMaxPower.duration(i), curve.getPower(i));
+		}// for
+		return series;
+	}
 
-		String title = userPrefs.getString("mmp");
+	/*
+	 * Opens a graph in its own window
+	 */
+	private void showGraph(JPanel graph, String title) {
 		JFrame frame = new JFrame(title);
 		ImageIcon img = new ImageIcon("icons/turbo.jpg");
 		frame.setIconImage(img.getImage());
 		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
 		// Create and set up the content pane.
-
-		mmp.setOpaque(true); // content panes must be opaque
-		frame.setContentPane(new GPanel(mmp, removeNonASCII(title)));
+		graph.setOpaque(true); // content panes must be opaque
+		frame.setContentPane(new GPanel(graph, removeNonASCII(title)));
 
 		// Display the window.
 		frame.pack();
@@ -690,22 +918,38 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 	 * Quadrant Analysis
 	 */
 	private void QuadrantAnalysis() {
-		XYSeries series = new XYSeries(userPrefs.getString("forceVeloc"));
-
-		for (int i = 0; i < telemetry.length; i++) {
-			for (Telemetry t : telemetry[i]) {
-
-				if (t.getCadence() > 50 && t.getPower() > 50) {
-					// CPV - (Cadence * crankLength (meters) * 2 * Pi) / 60
-					double cpv = (t.getCadence() * 0.1725 * 2 * pi) / 60;
-					// AEPF = (power * 60) / (Cadence * 2 * Pi * Crank Length)
-					double aepf = (t.getPower() * 60)
-							/ (t.getCadence() * 2 * pi * 0.1725);
-					series.addOrUpdate(cpv, aepf);
-				}
-			}// for
-		}// for
+		new Analysis<ScatterPoints>(qaGraph, true) {
+			@Override
+			ScatterPoints compute(TelemetrySeries[] telemetry) {
+				ScatterPoints series = new ScatterPoints();
+
+				for (int i = 0; i < telemetry.length; i++) {
+					TelemetrySeries ride = telemetry[i];
+					for (int t = 0; t < ride.size(); t++) {
+						int cadence = ride.getCadence(t);
+						int power = ride.getPower(t);
+
+						if (cadence > 50 && power > 50) {
+							// CPV - (Cadence * crankLength (meters) * 2 * Pi) / 60
+							double cpv = (cadence * 0.1725 * 2 * pi) / 60;
+							// AEPF = (power * 60) / (Cadence * 2 * Pi * Crank Length)
+							double aepf = (power * 60)
+									/ (cadence * 2 * pi * 0.1725);
+							series.add(cpv, aepf);
+						}
+					}// for
+				}// for
+				return series;
+			}
 
+			@Override
+			void show(ScatterPoints series) {
+				QuadrantAnalysis(series);
+			}
+		}.start();
+	}
+
+	private void QuadrantAnalysis(ScatterPoints series) {
 		GenericScatterGraph mmp = new GenericScatterGraph(series, "CPV (m/s)",
 				"AEPF (newtons)");
 
@@ -734,105 +978,84 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 		series3.add(3, aepf);
 		mmp.addLine(series3);
 
-		String title = userPrefs.getString("quadAnal");
-		JFrame frame = new JFrame(title);
-		ImageIcon img = new ImageIcon("icons/turbo.jpg");
-		frame.setIconImage(img.getImage());
-		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-
-		// Create and set up the content pane.
-		mmp.setOpaque(true); // content panes must be opaque
-		frame.setContentPane(new GPanel(mmp, removeNonASCII(title)));
-
-		// Display the window.
-		frame.pack();
-		frame.setVisible(true);
+		showGraph(mmp, userPrefs.getString("quadAnal"));
 	}
 
 	/**
 	 * Cadence / Speed Scatter plot
 	 */
 	private void CSScatterPlot() {
-		XYSeries series = new XYSeries(userPrefs.getString("cadPow"));
+		new Analysis<ScatterPoints>(scGraph, true) {
+			@Override
+			ScatterPoints compute(TelemetrySeries[] telemetry) {
+				ScatterPoints series = new ScatterPoints();
 
-		for (int i = 0; i < telemetry.length; i++) {
-			for (Telemetry t : telemetry[i]) {
+				for (int i = 0; i < telemetry.length; i++) {
+					TelemetrySeries ride = telemetry[i];
+					for (int t = 0; t < ride.size(); t++) {
 
-				if (t.getCadence() > 0 && t.getPower() > 0) {
-					series.addOrUpdate(t.getPower(), t.getCadence());
-				}
-			}// for
-		}// for
-
-		GenericScatterGraph mmp = new GenericScatterGraph(series,
-				userPrefs.getString("poWtt"), userPrefs.getString("cDrpm"));
-		
-		String title = userPrefs.getString("cadPow");
-		JFrame frame = new JFrame(title);
-		ImageIcon img = new ImageIcon("icons/turbo.jpg");
-		frame.setIconImage(img.getImage());
-		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-
-		// Create and set up the content pane.
-
-		mmp.setOpaque(true); // content panes must be opaque
-		frame.setContentPane(new GPanel(mmp, removeNonASCII(title)));
+						if (ride.getCadence(t) > 0 && ride.getPower(t) > 0) {
+							series.add(ride.getPower(t), ride.getCadence(t));
+						}
+					}// for
+				}// for
+				return series;
+			}
 
-		// Display the window.
-		frame.pack();
-		frame.setVisible(true);
+			@Override
+			void show(ScatterPoints series) {
+				GenericScatterGraph mmp = new GenericScatterGraph(series,
+						userPrefs.getString("poWtt"),
+						userPrefs.getString("cDrpm"));
+				showGraph(mmp, userPrefs.getString("cadPow"));
+			}
+		}.start();
 	}
 
 	public void HRWattsScatterPlot() {
-		XYSeries series = new XYSeries(userPrefs.getString("hrWatts"));
-
-		for (int i = 0; i < telemetry.length; i++) {
-			for (Telemetry t : telemetry[i]) {
-
-				if (t.getHeartRate() > 0 && t.getPower() > 0) {
-					series.addOrUpdate(t.getPower(), t.getHeartRate());
-				}
-			}// for
-		}// for
+		new Analysis<ScatterPoints>(hrWattsGraph, true) {
+			@Override
+			ScatterPoints compute(TelemetrySeries[] telemetry) {
+				ScatterPoints series = new ScatterPoints();
 
-		GenericScatterGraph mmp = new GenericScatterGraph(series,
-				userPrefs.getString("poWtt"), userPrefs.getString("hrBpm"));
-		
-		String title = userPrefs.getString("hrPow");
-		JFrame frame = new JFrame(title);
-		ImageIcon img = new ImageIcon("icons/turbo.jpg");
-		frame.setIconImage(img.getImage());
-		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+				for (int i = 0; i < telemetry.length; i++) {
+					TelemetrySeries ride = telemetry[i];
+					for (int t = 0; t < ride.size(); t++) {
 
-		// Create and set up the content pane.
-
-		mmp.setOpaque(true); // content panes must be opaque
-		frame.setContentPane(new GPanel(mmp, removeNonASCII(title)));
+						if (ride.getHeartRate(t) > 0 && ride.getPower(t) > 0) {
+							series.add(ride.getPower(t), ride.getHeartRate(t));
+						}
+					}// for
+				}// for
+				return series;
+			}
 
-		// Display the window.
-		frame.pack();
-		frame.setVisible(true);
+			@Override
+			void show(ScatterPoints series) {
+				GenericScatterGraph mmp = new GenericScatterGraph(series,
+						userPrefs.getString("poWtt"),
+						userPrefs.getString("hrBpm"));
+				showGraph(mmp, userPrefs.getString("hrPow"));
+			}
+		}.start();
 	}
 
-	public void DistributionGraph(DistributionAccessor da, int scale,
-			String title, String label) {
-		DistributionGraph dgGraph = new DistributionGraph(telemetry, da, label,
-				scale);
-		dgGraph.updateValues(scale, true);
-
-		JFrame frame = new JFrame(title);
-		ImageIcon img = new ImageIcon("icons/turbo.jpg");
-		frame.setIconImage(img.getImage());
-		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-
-		// Create and set up the content pane.
-
-		dgGraph.setOpaque(true); // content panes must be opaque
-		frame.setContentPane(new GPanel(dgGraph, removeNonASCII(title)));
+	public void DistributionGraph(String command, final DistributionAccessor da,
+			final int scale, final String title, final String label) {
+		new Analysis<TimeHistogram>(command, true) {
+			@Override
+			TimeHistogram compute(TelemetrySeries[] telemetry) {
+				return TimeHistogram.of(telemetry, da);
+			}
 
-		// Display the window.
-		frame.pack();
-		frame.setVisible(true);
+			@Override
+			void show(TimeHistogram histogram) {
+				DistributionGraph dgGraph = new DistributionGraph(histogram,
+						da, label, scale);
+				dgGraph.updateValues(scale, true);
+				showGraph(dgGraph, title);
+			}
+		}.start();
 	}
 
 	/**
@@ -844,27 +1067,25 @@ public class Workouts extends JPanel implements ActionListener, MessageCallback
 					userPrefs.getString("selErr"), JOptionPane.ERROR_MESSAGE);
 			return;
 		}
-		if (!load()) {
+		if (!hasSelection()) {
 			return;
 		}
 
-		SCHRGraph pchrGraph = new SCHRGraph(telemetry);
-		// show data with smoothing of 1 second
-		pchrGraph.updateValues(1);
-		pchrGraph.updateWorkoutData(workoutData);
-
-		String title = userPrefs.getString("rideSum");
-		JFrame frame = new JFrame(title);
-		ImageIcon img = new ImageIcon("icons/turbo.jpg");
-		frame.setIconImage(img.getImage());
-		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-
-		pchrGraph.setOpaque(true); // content panes must be opaque
-		frame.setContentPane(new GPanel(pchrGraph, removeNonASCII(title)));
+		new Analysis<TelemetrySeries[]>(schrGraph, true) {
+			@Override
+			TelemetrySeries[] compute(TelemetrySeries[] telemetry) {
+				return telemetry;
+			}
 
-		// Display the window.
-		frame.pack();
-		frame.setVisible(true);
+			@Override
+			void show(TelemetrySeries[] telemetry) {
+				SCHRGraph pchrGraph = new SCHRGraph(telemetry);
+				// show data with smoothing of 1 second
+				pchrGraph.updateValues(1);
+				pchrGraph.updateWorkoutData(loaded.get(0));
+				showGraph(pchrGraph, userPrefs.getString("rideSum"));
+			}
+		}.start();
 	}
 
 	void delete() {
@@ -18,9 +18,6 @@ package com.wattzap.view.graphs;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.GradientPaint;
-import java.util.ArrayList;
-import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import javax.swing.JPanel;
 
@@ -38,7 +35,7 @@ import org.jfree.chart.renderer.category.BarRenderer;
 import org.jfree.data.category.DefaultCategoryDataset;
 
 import com.wattzap.controller.DistributionAccessor;
-import com.wattzap.model.dto.Telemetry;
+import com.wattzap.utils.TimeHistogram;
 
 /* 
  * Distribution Chart
@@ -52,14 +49,19 @@ public class DistributionGraph extends JPanel {
 	private ChartPanel chartPanel = null;
 
 	CategoryPlot plot;
-	private final ArrayList<Telemetry> telemetry[];
 	private final DistributionAccessor da;
-
-	public DistributionGraph(ArrayList<Telemetry> telemetry[],
+	// re-bucketed when the scale changes
+	private final TimeHistogram histogram;
+
+	/**
+	 * @param histogram
+	 *            rides scanned with the accessor, see TimeHistogram.of()
+	 */
+	public DistributionGraph(TimeHistogram histogram,
 			DistributionAccessor da, String domainLabel, int scale) {
 		super();
 
-		this.telemetry = telemetry;
+		this.histogram = histogram;
 		this.da = da;
 
 		// create the chart...
@@ -112,42 +114,24 @@ public class DistributionGraph extends JPanel {
 		setVisible(true);
 	}
 
+	/**
+	 * Buckets the time at the given scale, a pass over the histogram rather
+	 * than the rides.
+	 */
 	public void updateValues(int scale, boolean keepZeroes) {
 		da.setBucketSize(scale);
 		da.setKeepZeroes(keepZeroes);
 
+		long[] data = histogram.getBuckets(da);
 		long totalTime = 0;
-		TreeMap<Integer, Long> data = new TreeMap<Integer, Long>();
-		for (int i = 0; i < telemetry.length; i++) {
-			Telemetry last = null;
-			for (Telemetry t : telemetry[i]) {
-
-				if (last == null) {
-					// first time through
-					last = t;
-				} else {
-					int key = da.getKey(t);
-					if (key != -1) {
-						if (data.containsKey(key)) {
-							// add time to current key
-							long time = data.get(key);
-							data.put(key, time + (t.getTime() - last.getTime()));
-						} else {
-							data.put(key, t.getTime() - last.getTime());
-						}
-						totalTime += t.getTime() - last.getTime();
-
-					}
-					last = t;
-				}
-			}// for
-		}// for
+		for (long time : data) {
+			totalTime += time;
+		}
 
 		DefaultCategoryDataset dataset = new DefaultCategoryDataset();
 
-		for (Entry<Integer, Long> entry : data.entrySet()) {
-			int key = entry.getKey();
-			double p = ((double) entry.getValue() * 100 / totalTime);
+		for (int key = 0; key < data.length; key++) {
+			double p = ((double) data[key] * 100 / totalTime);
 			if (p > 0.5) {
 				dataset.addValue(p, "", da.getValueLabel(key));
 			}
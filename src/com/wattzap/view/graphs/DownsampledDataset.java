@@ -0,0 +1,92 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.view.graphs;
+
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+import com.wattzap.utils.LevelOfDetail;
+
+/**
+ * One series drawn from a LevelOfDetail, only the samples picked for the
+ * visible range are handed to the renderer.
+ */
+class DownsampledDataset extends AbstractXYDataset {
+	private final String key;
+	private final long[] x;
+	private LevelOfDetail lod;
+	private int[] selected = new int[0];
+
+	DownsampledDataset(String key, long[] x, LevelOfDetail lod) {
+		this.key = key;
+		this.x = x;
+		this.lod = lod;
+	}
+
+	/**
+	 * Picks the samples between from and to for a chart buckets pixels wide
+	 */
+	void select(int from, int to, int buckets) {
+		selected = lod.select(from, to, buckets);
+		fireDatasetChanged();
+	}
+
+	void setLevelOfDetail(LevelOfDetail lod) {
+		this.lod = lod;
+	}
+
+	@Override
+	public DomainOrder getDomainOrder() {
+		return DomainOrder.ASCENDING;
+	}
+
+	@Override
+	public int getSeriesCount() {
+		return 1;
+	}
+
+	@Override
+	public Comparable<String> getSeriesKey(int series) {
+		return key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		return selected.length;
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		return x[selected[item]];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		return lod.getValue(selected[item]);
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return getXValue(series, item);
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return getYValue(series, item);
+	}
+
+	private static final long serialVersionUID = 1L;
+}
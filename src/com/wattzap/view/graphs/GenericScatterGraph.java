@@ -17,8 +17,12 @@ package com.wattzap.view.graphs;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Paint;
 import java.awt.Shape;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
 
 import javax.swing.JPanel;
 
@@ -26,17 +30,26 @@ import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.chart.plot.DatasetRenderingOrder;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.PaintScale;
 import org.jfree.chart.renderer.xy.StandardXYItemRenderer;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.AbstractXYZDataset;
 import org.jfree.data.xy.IntervalXYDataset;
-import org.jfree.data.xy.XYDataset;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.ui.RectangleAnchor;
 import org.jfree.util.ShapeUtilities;
 
+import com.wattzap.utils.ScatterPoints;
+
 /* 
  * Generic Scatter Graph
  * 
@@ -44,15 +57,31 @@ import org.jfree.util.ShapeUtilities;
  * @date 18 April 2014
  */
 public class GenericScatterGraph extends JPanel {
+	// more points than this in view are drawn as a density grid
+	private static final int MAX_POINTS = 5000;
+	// size of a grid cell in pixels
+	private static final int CELL = 4;
+
 	ValueMarker marker = null;
 	XYPlot plot;
 	private ChartPanel chartPanel = null;
-	int line = 1;
+	// 0 is the points, 1 the density grid
+	int line = 2;
 
-	public GenericScatterGraph(XYSeries series, String xAxis, String yAxis) {
-		super();
+	private final ScatterPoints points;
+	private final PointsDataset pointsData;
+	private final DensityDataset densityData;
+	private final XYBlockRenderer densityRenderer;
+	private final DensityScale densityScale = new DensityScale();
+	// area and size in pixels last drawn
+	private Rectangle2D.Double view = null;
+	private Dimension pixels = null;
 
-		XYDataset xyDataset = new XYSeriesCollection(series);
+	public GenericScatterGraph(ScatterPoints points, String xAxis, String yAxis) {
+		super();
+		this.points = points;
+		pointsData = new PointsDataset(points);
+		densityData = new DensityDataset();
 
 		JFreeChart chart = ChartFactory.createScatterPlot("", // chart title
 				xAxis, // x axis label
@@ -64,7 +93,7 @@ public class GenericScatterGraph extends JPanel {
 
 		chart.setBackgroundPaint(Color.darkGray);
 		plot = chart.getXYPlot();
-		plot.setDataset(0, xyDataset);
+		plot.setDataset(0, pointsData);
 		plot.setBackgroundPaint(Color.white);
 		plot.setDomainGridlinePaint(Color.lightGray);
 		plot.setRangeGridlinePaint(Color.lightGray);
@@ -72,9 +101,17 @@ public class GenericScatterGraph extends JPanel {
 		// Shape cross = ShapeUtilities.createDiamond(0.5f);
 		Shape cross = ShapeUtilities.createDiagonalCross(0.5f, 0.5f);
 		XYItemRenderer renderer = plot.getRenderer();
-		renderer.setSeriesPaint(0, new Color(252, 141, 89));
+		renderer.setSeriesPaint(0, POINT);
 		renderer.setSeriesShape(0, cross);
 
+		// heat map, under any lines added
+		densityRenderer = new XYBlockRenderer();
+		densityRenderer.setPaintScale(densityScale);
+		densityRenderer.setBlockAnchor(RectangleAnchor.BOTTOM_LEFT);
+		plot.setRenderer(1, densityRenderer);
+		plot.setDataset(1, densityData);
+		plot.setDatasetRenderingOrder(DatasetRenderingOrder.FORWARD);
+
 		ValueAxis domainAxis = plot.getDomainAxis();
 		domainAxis.setTickLabelPaint(Color.white);
 		domainAxis.setLabelPaint(Color.white);
@@ -90,10 +127,88 @@ public class GenericScatterGraph extends JPanel {
 		add(chartPanel, BorderLayout.CENTER);
 		setBackground(Color.black);
 
+		// zooming in brings back the points
+		AxisChangeListener zoom = new AxisChangeListener() {
+			@Override
+			public void axisChanged(AxisChangeEvent event) {
+				refine();
+			}
+		};
+		domainAxis.addChangeListener(zoom);
+		rangeAxis.addChangeListener(zoom);
+		chartPanel.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				refine();
+			}
+		});
+		refine();
+
 		chartPanel.revalidate();
 		setVisible(true);
 	}
 
+	/*
+	 * Shows the points in view, or a grid of counts when there are too many
+	 */
+	private void refine() {
+		if (points.size() == 0) {
+			return;
+		}
+		ValueAxis domainAxis = plot.getDomainAxis();
+		ValueAxis rangeAxis = plot.getRangeAxis();
+		Rectangle2D.Double area = new Rectangle2D.Double();
+		if (domainAxis.isAutoRange()) {
+			area.x = points.getMinX();
+			area.width = points.getMaxX() - points.getMinX();
+		} else {
+			area.x = domainAxis.getLowerBound();
+			area.width = domainAxis.getUpperBound() - area.x;
+		}
+		if (rangeAxis.isAutoRange()) {
+			area.y = points.getMinY();
+			area.height = points.getMaxY() - points.getMinY();
+		} else {
+			area.y = rangeAxis.getLowerBound();
+			area.height = rangeAxis.getUpperBound() - area.y;
+		}
+		Rectangle2D dataArea = chartPanel.getScreenDataArea();
+		Dimension size = new Dimension((int) dataArea.getWidth(),
+				(int) dataArea.getHeight());
+		if (size.width <= 0 || size.height <= 0) {
+			size = new Dimension(680, 420);
+		}
+		if (area.equals(view) && size.equals(pixels)) {
+			return;
+		}
+		view = area;
+		pixels = size;
+
+		int[] selected = points.select(area.x, area.getMaxX(), area.y,
+				area.getMaxY(), MAX_POINTS);
+		if (selected != null) {
+			pointsData.setSelected(selected);
+			densityData.clear();
+			return;
+		}
+
+		int cols = Math.max(size.width / CELL, 1);
+		int rows = Math.max(size.height / CELL, 1);
+		int[] counts = points.bin(area.x, area.getMaxX(), area.y,
+				area.getMaxY(), cols, rows);
+		double w = area.width / cols;
+		double h = area.height / rows;
+		int max = 0;
+		for (int count : counts) {
+			max = Math.max(max, count);
+		}
+		densityScale.max = max;
+		densityRenderer.setBlockWidth(w);
+		densityRenderer.setBlockHeight(h);
+		pointsData.setSelected(new int[0]);
+		densityData.setCells(counts, cols, area.x, area.y, w, h);
+	}
+
 	public void addLine(XYSeries series) {
 		// add a second dataset and renderer...
 		final XYItemRenderer renderer = new StandardXYItemRenderer(){
@@ -123,5 +238,186 @@ public class GenericScatterGraph extends JPanel {
 		line++;
 	}
 
+	private static final Color POINT = new Color(252, 141, 89);
+
+	/*
+	 * White to the point colour to dark red, on a log scale so single points
+	 * still show next to a dense cluster
+	 */
+	private static class DensityScale implements PaintScale {
+		private static final Color DENSE = new Color(128, 0, 38);
+		int max = 1;
+
+		@Override
+		public double getLowerBound() {
+			return 0;
+		}
+
+		@Override
+		public double getUpperBound() {
+			return max;
+		}
+
+		@Override
+		public Paint getPaint(double count) {
+			double f = Math.log1p(count) / Math.log1p(Math.max(max, 1));
+			if (f < 0.5) {
+				return blend(new Color(255, 237, 160), POINT, f * 2);
+			}
+			return blend(POINT, DENSE, f * 2 - 1);
+		}
+
+		private static Color blend(Color a, Color b, double f) {
+			f = Math.max(0, Math.min(1, f));
+			return new Color(
+					(int) (a.getRed() + (b.getRed() - a.getRed()) * f),
+					(int) (a.getGreen() + (b.getGreen() - a.getGreen()) * f),
+					(int) (a.getBlue() + (b.getBlue() - a.getBlue()) * f));
+		}
+	}
+
+	/*
+	 * The points in view
+	 */
+	private static class PointsDataset extends AbstractXYDataset {
+		private final ScatterPoints points;
+		private int[] selected = new int[0];
+
+		PointsDataset(ScatterPoints points) {
+			this.points = points;
+		}
+
+		void setSelected(int[] selected) {
+			this.selected = selected;
+			fireDatasetChanged();
+		}
+
+		@Override
+		public int getSeriesCount() {
+			return 1;
+		}
+
+		@Override
+		public Comparable<String> getSeriesKey(int series) {
+			return "points";
+		}
+
+		@Override
+		public int getItemCount(int series) {
+			return selected.length;
+		}
+
+		@Override
+		public double getXValue(int series, int item) {
+			return points.getX(selected[item]);
+		}
+
+		@Override
+		public double getYValue(int series, int item) {
+			return points.getY(selected[item]);
+		}
+
+		@Override
+		public Number getX(int series, int item) {
+			return getXValue(series, item);
+		}
+
+		@Override
+		public Number getY(int series, int item) {
+			return getYValue(series, item);
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	/*
+	 * Grid cells with at least one point, x and y are the lower left corner
+	 * and z the count
+	 */
+	private static class DensityDataset extends AbstractXYZDataset {
+		private int[] cells = new int[0];
+		private int[] counts;
+		private int cols;
+		private double x0, y0, w, h;
+
+		void setCells(int[] counts, int cols, double x0, double y0, double w,
+				double h) {
+			int n = 0;
+			for (int count : counts) {
+				if (count > 0) {
+					n++;
+				}
+			}
+			cells = new int[n];
+			n = 0;
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] > 0) {
+					cells[n++] = i;
+				}
+			}
+			this.counts = counts;
+			this.cols = cols;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.w = w;
+			this.h = h;
+			fireDatasetChanged();
+		}
+
+		void clear() {
+			if (cells.length > 0) {
+				cells = new int[0];
+				fireDatasetChanged();
+			}
+		}
+
+		@Override
+		public int getSeriesCount() {
+			return 1;
+		}
+
+		@Override
+		public Comparable<String> getSeriesKey(int series) {
+			return "density";
+		}
+
+		@Override
+		public int getItemCount(int series) {
+			return cells.length;
+		}
+
+		@Override
+		public double getXValue(int series, int item) {
+			return x0 + (cells[item] % cols) * w;
+		}
+
+		@Override
+		public double getYValue(int series, int item) {
+			return y0 + (cells[item] / cols) * h;
+		}
+
+		@Override
+		public double getZValue(int series, int item) {
+			return counts[cells[item]];
+		}
+
+		@Override
+		public Number getX(int series, int item) {
+			return getXValue(series, item);
+		}
+
+		@Override
+		public Number getY(int series, int item) {
+			return getYValue(series, item);
+		}
+
+		@Override
+		public Number getZ(int series, int item) {
+			return getZValue(series, item);
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+
 	private static final long serialVersionUID = 1L;
 }
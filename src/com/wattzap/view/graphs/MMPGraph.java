@@ -51,6 +51,9 @@ public class MMPGraph extends JPanel {
 	ValueMarker marker = null;
 	XYPlot plot;
 	private ChartPanel chartPanel = null;
+	private final XYSeriesCollection dataset;
+	private final NumberAxis yAxis;
+	private final LogAxis xAxis;
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
 
 	private static Logger logger = LogManager.getLogger("MMPGraph");
@@ -58,14 +61,14 @@ public class MMPGraph extends JPanel {
 	public MMPGraph(XYSeries series, int ftp20, long ftp20T, int ftp, long ftpT) {
 		super();
 
-		NumberAxis yAxis = new NumberAxis(userPrefs.getString("poWtt"));
+		yAxis = new NumberAxis(userPrefs.getString("poWtt"));
 		yAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
 		double maxY = series.getMaxY();
 		yAxis.setRange(0, maxY + 20);
 		yAxis.setTickLabelPaint(Color.white);
 		yAxis.setLabelPaint(Color.white);
 
-		LogAxis xAxis = new LogAxis(userPrefs.getString("time"));
+		xAxis = new LogAxis(userPrefs.getString("time"));
 		xAxis.setTickLabelPaint(Color.white);
 		xAxis.setBase(4);
 		xAxis.setAutoRange(false);
@@ -112,7 +115,8 @@ public class MMPGraph extends JPanel {
 			}
 		});
 
-		XYPlot plot = new XYPlot(new XYSeriesCollection(series), xAxis, yAxis,
+		dataset = new XYSeriesCollection(series);
+		XYPlot plot = new XYPlot(dataset, xAxis, yAxis,
 				new XYLineAndShapeRenderer(true, false));
 
 		// show FTP20 line
@@ -172,5 +176,21 @@ public class MMPGraph extends JPanel {
 		setVisible(true);
 	}
 
+	/**
+	 * Adds another curve to the graph, eg. the season best for comparison
+	 */
+	public void addSeries(XYSeries series) {
+		if (series.isEmpty()) {
+			return;
+		}
+		dataset.addSeries(series);
+		if (series.getMaxY() + 20 > yAxis.getUpperBound()) {
+			yAxis.setRange(0, series.getMaxY() + 20);
+		}
+		if (series.getMaxX() + 500 > xAxis.getUpperBound()) {
+			xAxis.setRange(1, series.getMaxX() + 500);
+		}
+	}
+
 	private static final long serialVersionUID = 1L;
 }
@@ -23,10 +23,11 @@ import java.awt.Paint;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.Stroke;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.text.FieldPosition;
 import java.text.NumberFormat;
 import java.text.ParsePosition;
-import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.JPanel;
@@ -37,19 +38,18 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.chart.plot.DatasetRenderingOrder;
 import org.jfree.chart.plot.ValueMarker;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.StandardXYItemRenderer;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
-import org.jfree.data.xy.IntervalXYDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
 import com.wattzap.model.UserPreferences;
-import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
-import com.wattzap.utils.Rolling;
+import com.wattzap.utils.LevelOfDetail;
 
 /**
  * Speed, Cadence, Heart-Rate Graph
@@ -61,7 +61,7 @@ public class SCHRGraph extends JPanel {
 	ValueMarker marker = null;
 	XYPlot plot;
 	private ChartPanel chartPanel = null;
-	private final ArrayList<Telemetry> telemetry[];
+	private final TelemetrySeries telemetry[];
 	InfoPanel infoPanel;
 	// a few colors
 	private final static Color straw = new Color(255, 255, 191);// straw
@@ -73,7 +73,20 @@ public class SCHRGraph extends JPanel {
 
 	final ValueAxis powerAxis = new NumberAxis(userPrefs.getString("poWtt"));
 
-	public SCHRGraph(ArrayList<Telemetry> telemetry[]) {
+	private static final int POWER = 0;
+	private static final int CADENCE = 1;
+	private static final int HR = 2;
+	// samples after the first, time from the start
+	private long[] times = null;
+	// running sums of each channel, for smoothing
+	private long[][] sums = null;
+	private DownsampledDataset[] datasets = null;
+	// visible samples and the chart width they were picked for
+	private int from = -1;
+	private int to = -1;
+	private int pixels = -1;
+
+	public SCHRGraph(TelemetrySeries telemetry[]) {
 		super();
 		this.telemetry = telemetry;
 
@@ -82,6 +95,13 @@ public class SCHRGraph extends JPanel {
 		domainAxis.setVerticalTickLabels(true);
 		domainAxis.setTickLabelPaint(Color.black);
 		domainAxis.setAutoRange(true);
+		domainAxis.addChangeListener(new AxisChangeListener() {
+			@Override
+			public void axisChanged(AxisChangeEvent event) {
+				// zoomed, get the detail for the new range
+				refine(false);
+			}
+		});
 
 		domainAxis.setNumberFormatOverride(new NumberFormat() {
 			@Override
@@ -239,6 +259,12 @@ public class SCHRGraph extends JPanel {
 		chartPanel.setFillZoomRectangle(true);
 		chartPanel.setMouseWheelEnabled(true);
 		chartPanel.setBackground(Color.gray);
+		chartPanel.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				refine(false);
+			}
+		});
 
 		setLayout(new BorderLayout());
 		add(chartPanel, BorderLayout.CENTER);
@@ -252,39 +278,136 @@ public class SCHRGraph extends JPanel {
 		setVisible(true);
 	}
 
+	/**
+	 * Smoothed values come from running sums built on the first call, each
+	 * channel is then drawn from a level of detail pyramid at about two points
+	 * per pixel of the visible range.
+	 * 
+	 * @param smoothing
+	 *            moving average over this many samples
+	 */
 	public void updateValues(int smoothing) {
-		XYSeries powerSeries = new XYSeries(userPrefs.getString("power"));
-		XYSeries cadenceSeries = new XYSeries(userPrefs.getString("cadence"));
-		XYSeries hrSeries = new XYSeries(userPrefs.getString("heartrate"));
-
-		Rolling pAve = new Rolling(smoothing);
-		Rolling hrAve = new Rolling(smoothing);
-		Rolling cAve = new Rolling(smoothing);
-
-		long startTime = -1;
-		for (Telemetry t : telemetry[0]) {
-			if (startTime == -1) {
-				startTime = t.getTime();
-				continue;
+		TelemetrySeries ride = telemetry[0];
+		if (ride.isEmpty()) {
+			return;
+		}
+		if (sums == null) {
+			prepare(ride);
+		}
+
+		String[] keys = { userPrefs.getString("power"),
+				userPrefs.getString("cadence"),
+				userPrefs.getString("heartrate") };
+		boolean created = datasets == null;
+		if (created) {
+			datasets = new DownsampledDataset[keys.length];
+		}
+		double maxPower = 0;
+		for (int c = 0; c < keys.length; c++) {
+			double[] smoothed = smooth(sums[c], smoothing);
+			LevelOfDetail lod = new LevelOfDetail(smoothed);
+			if (created) {
+				datasets[c] = new DownsampledDataset(keys[c], times, lod);
+			} else {
+				datasets[c].setLevelOfDetail(lod);
+			}
+			if (c == POWER) {
+				for (double p : smoothed) {
+					maxPower = Math.max(maxPower, p);
+				}
 			}
-			powerSeries.add((t.getTime() - startTime), pAve.add(t.getPower()));
-			cadenceSeries.add((t.getTime() - startTime),
-					cAve.add(t.getCadence()));
-			hrSeries.add((t.getTime() - startTime), hrAve.add(t.getHeartRate()));
-		}// for
-
-		final IntervalXYDataset cadenceData = new XYSeriesCollection(
-				cadenceSeries);
-		final IntervalXYDataset hrData = new XYSeriesCollection(hrSeries);
-		final IntervalXYDataset powerData = new XYSeriesCollection(powerSeries);
-		powerAxis.setRange(0, powerSeries.getMaxY());
-		plot.setDataset(0, powerData);
-		plot.setDataset(1, cadenceData);
-		plot.setDataset(2, hrData);
+		}
+
+		powerAxis.setRange(0, maxPower);
+		if (created) {
+			plot.setDataset(0, datasets[POWER]);
+			plot.setDataset(1, datasets[CADENCE]);
+			plot.setDataset(2, datasets[HR]);
+		}
+		refine(true);
 
 		chartPanel.revalidate();
 	}
 
+	/*
+	 * Time from the start and running sums of power, cadence and heart rate.
+	 * The first sample is skipped as it always has been.
+	 */
+	private void prepare(TelemetrySeries ride) {
+		int n = ride.size() - 1;
+		long startTime = ride.getTime(0);
+		times = new long[n];
+		sums = new long[3][n + 1];
+		for (int i = 0; i < n; i++) {
+			int t = i + 1;
+			times[i] = ride.getTime(t) - startTime;
+			sums[POWER][i + 1] = sums[POWER][i] + ride.getPower(t);
+			sums[CADENCE][i + 1] = sums[CADENCE][i] + ride.getCadence(t);
+			sums[HR][i + 1] = sums[HR][i] + ride.getHeartRate(t);
+		}
+	}
+
+	/*
+	 * Moving average, same as feeding the samples through Rolling
+	 */
+	private static double[] smooth(long[] sum, int window) {
+		double[] smoothed = new double[sum.length - 1];
+		for (int i = 0; i < smoothed.length; i++) {
+			int n = Math.min(i + 1, window);
+			smoothed[i] = (double) (sum[i + 1] - sum[i + 1 - n]) / n;
+		}
+		return smoothed;
+	}
+
+	/*
+	 * Picks the samples for the visible time range and chart width, when
+	 * either has changed.
+	 */
+	private void refine(boolean force) {
+		if (datasets == null) {
+			return;
+		}
+		int first = 0;
+		int last = times.length;
+		ValueAxis domainAxis = plot.getDomainAxis();
+		if (!domainAxis.isAutoRange()) {
+			// one sample either side so lines run to the edges
+			first = Math.max(search(domainAxis.getLowerBound()) - 1, 0);
+			last = Math.min(search(domainAxis.getUpperBound()) + 1,
+					times.length);
+		}
+		int width = (int) chartPanel.getScreenDataArea().getWidth();
+		if (width <= 0) {
+			width = getPreferredSize().width;
+		}
+		if (!force && first == from && last == to && width == pixels) {
+			return;
+		}
+		from = first;
+		to = last;
+		pixels = width;
+		for (DownsampledDataset dataset : datasets) {
+			dataset.select(from, to, pixels);
+		}
+	}
+
+	/*
+	 * First sample at or after millis
+	 */
+	private int search(double millis) {
+		int lo = 0;
+		int hi = times.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] < millis) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
 	public void updateWorkoutData(WorkoutData data) {
 		if (infoPanel == null) {
 			infoPanel = new InfoPanel();
@@ -36,7 +36,9 @@ import org.apache.log4j.Logger;
 
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
+import com.wattzap.utils.MeanMaxPower;
 
 /**
  * Displays a summary analysis of a workout.
@@ -342,18 +344,21 @@ public class TrainingAnalysis extends JFrame {
 	}
 
 	public static WorkoutData analyze(ArrayList<Telemetry> data) {
+		return analyze(TelemetrySeries.fromList(data));
+	}
+
+	public static WorkoutData analyze(TelemetrySeries data) {
 		WorkoutData workoutData = new WorkoutData();
 
 		if (data == null || data.size() == 0) {
 			logger.info("No training data to analyze");
 			return null;
 		}
-		Telemetry firstPoint = data.get(0);
-		Telemetry lastPoint = data.get(data.size() - 1);
-		long len = (lastPoint.getTime() - firstPoint.getTime());
+		int lastPoint = data.size() - 1;
+		long len = (data.getTime(lastPoint) - data.getTime(0));
 		workoutData.setTime(len);
-		workoutData.setDate(firstPoint.getTime());
-		workoutData.setDistanceMeters(lastPoint.getDistanceMeters() - firstPoint.getDistanceMeters());
+		workoutData.setDate(data.getTime(0));
+		workoutData.setDistanceMeters(data.getDistanceMeters(lastPoint) - data.getDistanceMeters(0));
 
 		int maxCad = 0;
 		long aveCad = 0;
@@ -363,107 +368,79 @@ public class TrainingAnalysis extends JFrame {
 		double tPower = 0;
 
 		// five second power
-		Telemetry last = null;
+		int last = -1;
 
 		int maxPwr = 0;
 		double qPwr = 0;
 
 
-		TreeMap<Integer, Long> pow = new TreeMap<Integer, Long>();
 		TreeMap<Integer, Long> hr = new TreeMap<Integer, Long>();
-		Telemetry first = null;
-		for (Telemetry t : data) {
+		for (int t = 0; t < data.size(); t++) {
+			int power = data.getPower(t);
+			int heartRate = data.getHeartRate(t);
+			int cadence = data.getCadence(t);
 			/*
-			 * Produces a map of power buckets and their times. e.g.
-			 * 12w:5s,10w:7s,8w:9s,6w:7s,3w:5s
+			 * Produces a map of heart rate buckets and their times. e.g.
+			 * 160bpm:5s,155bpm:7s,150bpm:9s
 			 */
-			if (first == null) {
-				// first time through
-				first = t;
-			} else {
-				// Power Values
-				if (pow.containsKey(t.getPower())) {
-					long time = pow.get(t.getPower());
-					pow.put(t.getPower(), time
-							+ (t.getTime() - first.getTime()));
-				} else {
-					pow.put(t.getPower(), t.getTime() - first.getTime());
-				}
+			if (t > 0) {
+				long interval = data.getTime(t) - data.getTime(t - 1);
 				// Heart Rate Values
-				if (hr.containsKey(t.getHeartRate())) {
-					long time = hr.get(t.getHeartRate());
-					hr.put(t.getHeartRate(), time
-							+ (t.getTime() - first.getTime()));
+				if (hr.containsKey(heartRate)) {
+					long time = hr.get(heartRate);
+					hr.put(heartRate, time + interval);
 				} else {
-					hr.put(t.getHeartRate(), t.getTime() - first.getTime());
+					hr.put(heartRate, interval);
 				}
-
-				first = t;
 			}
 
-			if (maxPwr < t.getPower()) {
-				maxPwr = t.getPower();
+			if (maxPwr < power) {
+				maxPwr = power;
 			}
 
-			qPwr += t.getPower() * t.getPower();
-			if (t.getHeartRate() > maxHR) {
-				maxHR = t.getHeartRate();
+			qPwr += power * power;
+			if (heartRate > maxHR) {
+				maxHR = heartRate;
 			}
-			if (t.getCadence() > maxCad) {
-				maxCad = t.getCadence();
+			if (cadence > maxCad) {
+				maxCad = cadence;
 			}
-			if (t.getHeartRate() != -1 && t.getHeartRate() < minHR) {
-				minHR = t.getHeartRate();
+			if (heartRate != -1 && heartRate < minHR) {
+				minHR = heartRate;
 			}
-			if (last != null) {
+			if (last != -1) {
 				/*
 				 * if data is recovered after a crash we need to take into account the time
 				 * gap, so we check to see if T > T' by more than 2 seconds and
 				 * then we adjust last time
 				 */
-				tPower += t.getPower() * (t.getTime() - last.getTime());
-				if (t.getHeartRate() > 0) {
-					aveHR += t.getHeartRate() * (t.getTime() - last.getTime());
+				long interval = data.getTime(t) - data.getTime(last);
+				tPower += power * interval;
+				if (heartRate > 0) {
+					aveHR += heartRate * interval;
 				}
-				aveCad += t.getCadence() * (t.getTime() - last.getTime());
+				aveCad += cadence * interval;
 			}
 			last = t;
 		}// for
 
 		/*
-		 * Calculate five second, 1 minute, five minute and twenty minute power. We order power from highest to lowest.
+		 * Calculate five second, 1 minute, five minute and twenty minute power,
+		 * the best rolling average over each duration.
 		 */
-		int fiveSecPwr = 0;
-		int oneMinPwr = 0;
-		int fiveMinPwr = 0;
-		int twentyMinPwr = 0;
-		long timeInMillis = 0;
-		for (Map.Entry<Integer, Long> entry : pow.descendingMap().entrySet()) {
-			timeInMillis +=  entry.getValue();
-			if (timeInMillis >= 5000 && fiveSecPwr == 0) {
-				fiveSecPwr = entry.getKey();
-			}
-			if (timeInMillis >= 60000 && oneMinPwr == 0) {
-				oneMinPwr = entry.getKey();
-			}
-			if (timeInMillis >= 300000 && fiveMinPwr == 0) {
-				fiveMinPwr = entry.getKey();
-			}
-			if (timeInMillis >= 1200000 && twentyMinPwr == 0) {
-				twentyMinPwr = entry.getKey();
-			}
-		}// for
-		workoutData.setFiveSecondPwr(fiveSecPwr);
-		workoutData.setFiveMinutePwr(fiveMinPwr);
-		workoutData.setOneMinutePwr(oneMinPwr);
-		workoutData.setTwentyMinutePwr(twentyMinPwr);
+		MeanMaxPower mmp = new MeanMaxPower(data);
+		workoutData.setFiveSecondPwr(mmp.get(5));
+		workoutData.setFiveMinutePwr(mmp.get(300));
+		workoutData.setOneMinutePwr(mmp.get(60));
+		workoutData.setTwentyMinutePwr(mmp.get(1200));
+		workoutData.setPowerCurve(mmp.getCurve());
 		qPwr /= data.size();
 		qPwr = Math.sqrt(qPwr);
 		workoutData.setQuadraticPower((int) qPwr);
 		
 		// Calculate 20 minute heart rate
 		int twentyMinHR = 0;
-		timeInMillis = 0;
+		long timeInMillis = 0;
 		for (Map.Entry<Integer, Long> entry : hr.descendingMap().entrySet()) {
 			timeInMillis +=  entry.getValue();
 			if (timeInMillis >= 1200000 && twentyMinHR == 0) {
@@ -19,14 +19,12 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Toolkit;
-import java.io.EOFException;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
@@ -38,13 +36,19 @@ import org.apache.log4j.Logger;
 import com.sun.tools.visualvm.charts.ChartFactory;
 import com.sun.tools.visualvm.charts.SimpleXYChartDescriptor;
 import com.sun.tools.visualvm.charts.SimpleXYChartSupport;
+import com.wattzap.controller.AsyncSubscriber;
 import com.wattzap.controller.MessageBus;
 import com.wattzap.controller.MessageCallback;
 import com.wattzap.controller.Messages;
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.TrainingData;
 import com.wattzap.model.dto.TrainingItem;
+import com.wattzap.model.dto.WorkoutData;
+import com.wattzap.utils.DaemonPool;
+import com.wattzap.utils.RideJournal;
+import com.wattzap.utils.WorkoutAnalyzer;
 
 /**
  * (c) 2013 David George / TrainingLoops.com
@@ -66,13 +70,25 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 	Iterator<TrainingItem> training;
 	TrainingData tData;
 	TrainingItem current;
-	private ArrayList<Telemetry> data;
+	private TelemetrySeries data;
+	// summary of data, updated as it is recorded
+	private final WorkoutAnalyzer analyzer = new WorkoutAnalyzer();
+	// current sample with heart rate and cadence, and its chart values
+	private final Telemetry sample = new Telemetry();
+	private long[] values;
 	int numElements;
 	JComponent chart = null;
-	ObjectOutputStream oos = null;
+	// only used on journalWriter
+	private RideJournal journal = null;
 	boolean antEnabled = true;
 
 	private static final long MILLISECSMINUTE = 60000;
+	private static final String JOURNAL = "/journal.wzj";
+	// written by earlier versions
+	private static final String LEGACY_JOURNAL = "/journal.ser";
+	// journal file writes and syncs, in order and off the Swing thread
+	private static final ExecutorService journalWriter = DaemonPool.create(
+			"Ride Journal", 1);
 
 	private final UserPreferences userPrefs = UserPreferences.INSTANCE;
 
@@ -82,9 +98,16 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 		setPreferredSize(new Dimension(screenSize.width / 2, 400));
 		setLayout(new BorderLayout());
 
-		MessageBus.INSTANCE.register(Messages.SPEED, this);
-		MessageBus.INSTANCE.register(Messages.CADENCE, this);
-		MessageBus.INSTANCE.register(Messages.HEARTRATE, this);
+		// sensor data on the Swing thread in order, so the chart can be
+		// updated directly and the pooled telemetry read without a copy.
+		// Every SPEED is recorded, so they queue up during a stall rather
+		// than being dropped
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, this,
+				MessageBus.EDT, 16, AsyncSubscriber.Overflow.KEEP);
+		MessageBus.INSTANCE.registerAsync(Messages.CADENCE, this,
+				MessageBus.EDT, 16, AsyncSubscriber.Overflow.COALESCE);
+		MessageBus.INSTANCE.registerAsync(Messages.HEARTRATE, this,
+				MessageBus.EDT, 16, AsyncSubscriber.Overflow.COALESCE);
 		MessageBus.INSTANCE.register(Messages.START, this);
 		MessageBus.INSTANCE.register(Messages.STARTPOS, this);
 		MessageBus.INSTANCE.register(Messages.STOP, this);
@@ -143,6 +166,7 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 					.setDetailsItems(new String[] { "<html><font size='+2'><b>Info" });
 		}
 
+		values = new long[numElements];
 		support = ChartFactory.createSimpleXYChart(descriptor);
 		
 		chart = support.getChart();
@@ -162,7 +186,8 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 			startTime = time; // start time
 		}
 
-		long[] values = new long[numElements];
+		long[] values = this.values;
+		Arrays.fill(values, 0);
 		values[0] = telemetry.getPower();
 		if (antEnabled) {
 			values[1] = telemetry.getHeartRate();
@@ -236,85 +261,154 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 		if (index == 0) {
 			// empty, first time through
 			data.add(t);
+			analyzer.add(t);
 		} else {
-			Telemetry tn = data.get(index - 1);
-			if (t.getTime() > tn.getTime() + 1000) {
+			if (t.getTime() > data.getTime(index - 1) + 1000) {
 				data.add(t);
+				analyzer.add(t);
+				writeJournal(t);
+			}
+		}
+	}
+
+	private void openJournal(final boolean create) {
+		final File f = new File(userPrefs.getWD() + JOURNAL);
+		journalWriter.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (journal != null) {
+					return;
+				}
+				try {
+					if (create) {
+						journal = RideJournal.create(f);
+					} else {
+						journal = RideJournal.append(f);
+					}
+				} catch (IOException e) {
+					logger.error("Can't create journal file "
+							+ e.getLocalizedMessage());
+				}
+			}
+		});
+	}
+
+	private void writeJournal(Telemetry t) {
+		// t is reused for the next sample
+		final Telemetry copy = new Telemetry(t);
+		copy.setResistance(t.getResistance());
+		journalWriter.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (journal == null) {
+					return;
+				}
 				try {
-					oos.writeObject(t);
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
+					journal.write(copy);
+				} catch (IOException e) {
 					logger.error("Can't write telemetry data to journal "
 							+ e.getLocalizedMessage());
 				}
 			}
+		});
+	}
+
+	/*
+	 * Waits for the journal to be written and closed, the application may be
+	 * about to exit
+	 */
+	private void closeJournal() {
+		try {
+			journalWriter.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (journal == null) {
+						return;
+					}
+					try {
+						journal.close();
+					} catch (IOException e) {
+						logger.error("Can't close journal file "
+								+ e.getLocalizedMessage());
+					}
+					journal = null;
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("Can't close journal file "
+					+ e.getLocalizedMessage());
 		}
 	}
 
-	public ArrayList<Telemetry> getData() {
+	public TelemetrySeries getData() {
 		return data;
 	}
 
+	/**
+	 * @return summary of the data recorded so far, null if there isn't any
+	 */
+	public WorkoutData getSummary() {
+		return analyzer.getWorkoutData();
+	}
+
+	/**
+	 * Recovers the ride from the journal after a crash. Records after the
+	 * first corrupt one are dropped, the journal is continued from there on
+	 * the next START.
+	 */
 	public void loadJournal() {
-		ObjectInputStream objectInputStream = null;
-		data = new ArrayList<Telemetry>();
-		Telemetry t = null;
 		try {
-			FileInputStream streamIn = new FileInputStream(userPrefs.getWD()
-					+ "/journal.ser");
-			objectInputStream = new ObjectInputStream(streamIn);
-
-			while ((t = (Telemetry) objectInputStream.readObject()) != null) {
-				data.add(t);
-			}// while
-
-		} catch (EOFException ex) {
-			logger.info("Journal file read " + data.size() + " records");
-		} catch (Exception e) {
-			// data = null;
-			logger.error("Cannot read journal file " + e.getLocalizedMessage()
-					+ " at position " + data.size());
-		} finally {
-			JOptionPane.showMessageDialog(this, "Recovered " + data.size()
-					+ " records", "Info", JOptionPane.INFORMATION_MESSAGE);
-			if (t != null) {
-				MessageBus.INSTANCE.send(Messages.STARTPOS, t.getDistanceKM());
-			}
-			if (objectInputStream != null) {
-				try {
-					objectInputStream.close();
-				} catch (IOException e) {
-					logger.error("Cannot close journal file "
-							+ e.getLocalizedMessage());
-				}
+			File f = new File(userPrefs.getWD() + JOURNAL);
+			File legacy = new File(userPrefs.getWD() + LEGACY_JOURNAL);
+			if (legacy.exists()
+					&& (!f.exists() || legacy.lastModified() > f.lastModified())) {
+				data = convertJournal(legacy, f);
+			} else {
+				data = RideJournal.read(f);
 			}
+			logger.info("Journal file read " + data.size() + " records");
+		} catch (IOException e) {
+			data = new TelemetrySeries();
+			logger.error("Cannot read journal file " + e.getLocalizedMessage());
+		}
+		analyzer.reset();
+		for (int i = 0; i < data.size(); i++) {
+			analyzer.add(data.getTime(i), data.getPower(i),
+					data.getHeartRate(i), data.getCadence(i),
+					data.getDistanceMeters(i));
 		}
 
-		// Now rewrite journal file (end might be corrupt)
-		ObjectOutputStream objectOutputStream = null;
-		// existing data, append to journal file
-		try {
-			FileOutputStream fout = new FileOutputStream(userPrefs.getWD()
-					+ "/journal.ser", true);
+		JOptionPane.showMessageDialog(this, "Recovered " + data.size()
+				+ " records", "Info", JOptionPane.INFORMATION_MESSAGE);
+		if (!data.isEmpty()) {
+			MessageBus.INSTANCE.send(Messages.STARTPOS,
+					data.getDistanceMeters(data.size() - 1) / 1000);
+		}
+	}
+
+	/*
+	 * Reads a journal left by an earlier version and carries it on in the
+	 * new format, the old file is removed once it has been copied
+	 */
+	private TelemetrySeries convertJournal(File legacy, File f)
+			throws IOException {
+		logger.info("Found old journal file " + legacy);
+		TelemetrySeries data = RideJournal.readLegacy(legacy);
 
-			objectOutputStream = new ObjectOutputStream(fout);
-			for (Telemetry telemetry : data) {
-				oos.writeObject(telemetry);
+		RideJournal converted = RideJournal.create(f);
+		try {
+			for (int i = 0; i < data.size(); i++) {
+				converted.write(data.get(i));
 			}
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			logger.error("Can't write telemetry data to journal "
-					+ e.getLocalizedMessage());
 		} finally {
-			try {
-				if (objectOutputStream != null) {
-					objectOutputStream.close();
-				}
-			} catch (IOException e) {
-				logger.error("Cannot close journal file "
-						+ e.getLocalizedMessage());
-			}
+			converted.close();
 		}
+		if (!legacy.delete()) {
+			logger.warn("Can't delete old journal file " + legacy);
+		}
+		return data;
 	}
 
 	@Override
@@ -326,13 +420,13 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 				// TODO: this is a race hazard, this method can be called before
 				// setup, hence this test.
 
-				// get a clone
-				Telemetry t = new Telemetry((Telemetry) o);
+				// the message is reused by its sender, copy it
+				sample.set((Telemetry) o);
 				// recover last heart rate data
-				t.setHeartRate(heartRate);
-				t.setCadence(cadence);
+				sample.setHeartRate(heartRate);
+				sample.setCadence(cadence);
 				
-				update(t);
+				update(sample);
 			}
 			break;
 			
@@ -346,8 +440,7 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 			
 		case STOP:
 			if (data != null && !data.isEmpty()) {
-				Telemetry lastPoint = data.get(data.size() - 1);
-				long split = lastPoint.getTime() - startTime;
+				long split = data.getTime(data.size() - 1) - startTime;
 				int minutes = userPrefs.getEvalTime();
 				minutes -= (split / MILLISECSMINUTE);
 				userPrefs.setEvalTime(minutes);
@@ -359,27 +452,14 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 			if (chart == null) {
 				createModels(null);
 			}
-			try {
-				if (oos == null) {
-					// oos is closed
-					if (data == null) {
-						// new training, truncate the journal file
-						data = new ArrayList<Telemetry>();
-						FileOutputStream fout = new FileOutputStream(
-								userPrefs.getWD() + "/journal.ser", false);
-
-						oos = new ObjectOutputStream(fout);
-					} else {
-						// existing data, append to journal file
-						FileOutputStream fout = new FileOutputStream(
-								userPrefs.getWD() + "/journal.ser", true);
-
-						oos = new ObjectOutputStream(fout);
-					}
-				}
-			} catch (Exception e) {
-				logger.error("Can't create journal file "
-						+ e.getLocalizedMessage());
+			if (data == null) {
+				// new training, truncate the journal file
+				data = new TelemetrySeries();
+				analyzer.reset();
+				openJournal(true);
+			} else {
+				// existing data, append to journal file unless it is open
+				openJournal(false);
 			}
 
 			startTime = 0;
@@ -418,16 +498,9 @@ public class TrainingDisplay extends JPanel implements MessageCallback {
 				chart = null;
 			}
 			tData = null;
-			if (oos != null) {
-				try {
-					oos.close();
-					oos = null;
-				} catch (IOException e) {
-					logger.error("Can't close journal file "
-							+ e.getLocalizedMessage());
-				}
-			}
+			closeJournal();
 			data = null;
+			analyzer.reset();
 			break;
 		}
 	}
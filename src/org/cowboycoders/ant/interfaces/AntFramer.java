@@ -0,0 +1,156 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cowboycoders.ant.interfaces;
+
+/**
+ * Splits the byte stream read from the ANT stick into messages.
+ *
+ * Bytes are appended to a fixed ring buffer, messages are found by index:
+ *
+ * [sync 0xA4][length][id][length bytes of data][checksum]
+ *
+ * The checksum is the xor of all the other bytes. Bytes before a sync byte,
+ * and sync bytes that don't start a valid message, are skipped. A message
+ * split over two reads is completed by the next read.
+ *
+ * The only allocation is the array returned for each message, which is
+ * handed to listeners on other threads so it can't be reused.
+ */
+class AntFramer {
+	static final byte SYNC = (byte) 0xA4;
+
+	// messages never span more than one read
+	private final int maxMessage;
+	private final byte[] ring;
+	private final int mask;
+	private int head = 0;
+	private int count = 0;
+
+	// statistics
+	private long skipped = 0;
+	private long badChecksums = 0;
+
+	/**
+	 * @param readSize
+	 *            largest single read, also bounds the message size
+	 */
+	AntFramer(int readSize) {
+		maxMessage = readSize;
+		int size = 1;
+		while (size < readSize * 4) {
+			size <<= 1;
+		}
+		ring = new byte[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Adds bytes read from the stick
+	 */
+	void add(byte[] data, int len) {
+		if (count + len > ring.length) {
+			// can't happen while next() is drained after every read
+			int drop = count + len - ring.length;
+			AntTransceiver.LOGGER.warning("ANT receive buffer full, dropping "
+					+ drop + " bytes");
+			skip(drop);
+			skipped += drop;
+		}
+		int tail = (head + count) & mask;
+		for (int i = 0; i < len; i++) {
+			ring[(tail + i) & mask] = data[i];
+		}
+		count += len;
+	}
+
+	/**
+	 * @return the next complete message without sync and checksum, null if
+	 *         more data is needed
+	 */
+	byte[] next() {
+		while (true) {
+			// look for sync
+			int n = 0;
+			while (n < count && ring[(head + n) & mask] != SYNC) {
+				n++;
+			}
+			if (n > 0) {
+				AntTransceiver.LOGGER.info("skipping " + n
+						+ " bytes before sync");
+				skip(n);
+				skipped += n;
+			}
+			if (count < 2) {
+				return null;
+			}
+
+			int msgLength = ring[(head + 1) & mask];
+			int checkSumIndex = msgLength + 3;
+			if (msgLength < 0 || checkSumIndex >= maxMessage - 1) {
+				AntTransceiver.LOGGER
+						.warning("msgLength appears to be incorrect (ignoring). Length : "
+								+ msgLength);
+				skipSync();
+				continue;
+			}
+			if (checkSumIndex >= count) {
+				// rest arrives with the next read
+				return null;
+			}
+
+			byte checksum = 0;
+			for (int i = 0; i < checkSumIndex; i++) {
+				checksum ^= ring[(head + i) & mask];
+			}
+			if (checksum != ring[(head + checkSumIndex) & mask]) {
+				AntTransceiver.LOGGER.warning("checksum incorrect : ignoring");
+				badChecksums++;
+				skipSync();
+				continue;
+			}
+
+			// length, id and data
+			byte[] msg = new byte[msgLength + 2];
+			for (int i = 0; i < msg.length; i++) {
+				msg[i] = ring[(head + 1 + i) & mask];
+			}
+			skip(checkSumIndex + 1);
+			return msg;
+		}
+	}
+
+	private void skipSync() {
+		skip(1);
+		skipped++;
+	}
+
+	private void skip(int n) {
+		head = (head + n) & mask;
+		count -= n;
+	}
+
+	int available() {
+		return count;
+	}
+
+	long getSkipped() {
+		return skipped;
+	}
+
+	long getBadChecksums() {
+		return badChecksums;
+	}
+}
@@ -34,7 +34,6 @@ package org.cowboycoders.ant.interfaces;
  *     along with formicidae.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -57,7 +56,6 @@ import javax.usb.UsbServices;
 
 import org.cowboycoders.ant.messages.StandardMessage;
 import org.cowboycoders.ant.messages.commands.ResetMessage;
-import org.cowboycoders.ant.utils.ByteUtils;
 import org.cowboycoders.ant.utils.UsbUtils;
 
 public class AntTransceiver extends AbstractAntTransceiver {
@@ -95,8 +93,6 @@ public class AntTransceiver extends AbstractAntTransceiver {
 
 	// private static final int MESSAGE_OFFSET_SYNC = 0;
 
-	private static final int MESSAGE_OFFSET_MSG_LENGTH = 1;
-
 	/**
 	 * Usb Interface
 	 */
@@ -195,6 +191,10 @@ public class AntTransceiver extends AbstractAntTransceiver {
 	}
 
 	private void logData(Level level, byte[] data, String tag) {
+		// called for every read, don't format unless it is logged
+		if (!LOGGER.isLoggable(level)) {
+			return;
+		}
 		StringBuffer logBuffer = new StringBuffer();
 
 		for (Byte b : data) {
@@ -207,51 +207,14 @@ public class AntTransceiver extends AbstractAntTransceiver {
 	}
 
 	public class UsbReader extends Thread {
-		private byte[] last;
-
 		private static final int BUFFER_SIZE = 64;
 
-		/**
-		 * @param data
-		 *            buffer to check
-		 * @return data remaining
-		 */
-		private byte[] lookForSync(byte[] data, int len) {
-			if (data == null || data.length < 1) {
-				return new byte[0];
-			}
-
-			if (data[0] != MESSAGE_TX_SYNC) {
-				int index = -1;
-				for (int i = 0; i < len; i++) {
-					if (data[i] == MESSAGE_TX_SYNC) {
-						index = i;
-						break;
-					}
-				}
-				// not found
-				if (index < 0) {
-					LOGGER.warning("data read from usb endpoint does not contain a sync byte : ignoring");
-					return new byte[0]; // zero length array
-				}
-				LOGGER.info("found non-zero sync byte index");
-				data = Arrays.copyOfRange(data, index, data.length);
-			}
-			return data;
-		}
-
-		// All this array copying inefficient but simple (could keep reference
-		// to current index instead)
-		private byte[] skipCurrentSync(byte[] data) {
-			if (data.length < 1) {
-				return new byte[0];
-			}
-			data = Arrays.copyOfRange(data, 1, data.length);
-			return data;
-		}
+		// reused for every read, framing works on indexes into the ring
+		private final byte[] data = new byte[BUFFER_SIZE];
+		private final AntFramer framer = new AntFramer(BUFFER_SIZE);
 
 		/**
-		 * Gets the next message and notifies interested listeners.
+		 * Gets the next messages and notifies interested listeners.
 		 * 
 		 * @param data
 		 *            - message data
@@ -259,65 +222,13 @@ public class AntTransceiver extends AbstractAntTransceiver {
 		 *            - message length
 		 */
 		void processBuffer(byte[] data, int len) {
-			while (len > 0) {
-				data = lookForSync(data, len);
-
-				if (data.length <= MESSAGE_OFFSET_MSG_LENGTH) {
-					LOGGER.info("data length too small, checking next packet");
-					// assume rest will arrive in next packet
-					last = data;
-					break;
-				}
-
-				int msgLength = data[MESSAGE_OFFSET_MSG_LENGTH];
-
-				// negative length does not make sense
-				if (msgLength < 0) {
-					LOGGER.warning("msgLength appears to be incorrect (ignorning). Length : "
-							+ msgLength);
-					data = skipCurrentSync(data);
-					continue;
-				}
-
-				int checkSumIndex = msgLength + 3;
-
-				if (checkSumIndex >= data.length) {
-					// unreasonably large checkSumIndex (dont span multiple
-					// buffers)
-					if (checkSumIndex >= BUFFER_SIZE - 1) {
-						LOGGER.warning("msgLength appears to be incorrect (ignorning). Length : "
-								+ msgLength);
-						data = skipCurrentSync(data);
-						continue;
-					}
-
-					// we try assume continued in next buffer
-					last = data;
-					break;
-				}
-
-				// data minus sync and checksum
-				byte[] cleanData = new byte[msgLength + 2];
-
-				for (int i = 0; i < msgLength + 2; i++) {
-					cleanData[i] = data[i + 1];
-				}
-
-				if (getChecksum(cleanData) != data[checkSumIndex]) {
-					LOGGER.warning("checksum incorrect : ignoring");
-					data = skipCurrentSync(data);
-					continue;
-				}
-
-				AntTransceiver.this.broadcastRxMessage(cleanData);
-				// cleandata length + sync + checksum
-				len -= (cleanData.length + 2);
-				data = Arrays.copyOfRange(data, cleanData.length + 2,
-						data.length);
+			framer.add(data, len);
+			byte[] msg;
+			while ((msg = framer.next()) != null) {
+				AntTransceiver.this.broadcastRxMessage(msg);
 			}
 		}
 
-		
 		/*
 		 * Two Modifications (David George - 11/June/2013)
 		 * 
@@ -335,8 +246,6 @@ public class AntTransceiver extends AbstractAntTransceiver {
 
 					try {
 						// interfaceLock.lock();
-						// byte [] data = new byte[MAX_MSG_LENGTH];
-						byte[] data = new byte[BUFFER_SIZE];
 						int len;
 						try {
 							// inPipe.open();
@@ -355,14 +264,8 @@ public class AntTransceiver extends AbstractAntTransceiver {
 
 						logData(Level.FINER, data, "read");
 
-						// process remaining bytes from last buffer
-						if (last != null) {
-							// TODO len is bigger due to remaining bytes
-							len += last.length;
-							data = ByteUtils.joinArray(last, data);
-							last = null;
-						}
-
+						// remaining bytes from the last read are still in the
+						// framer
 						processBuffer(data, len);
 
 					} finally {
@@ -5,8 +5,12 @@
 package org.usb4java.javax;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.usb.UsbControlIrp;
 import javax.usb.UsbException;
@@ -24,11 +28,23 @@ import org.usb4java.LibUsb;
  *            The type of IRPs this queue holds.
  */
 abstract class AbstractIrpQueue<T extends UsbIrp> {
+	/** How long an idle processor thread waits before it ends. */
+	private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+	/** Most transfer buffers kept per queue. */
+	private static final int MAX_BUFFERS = 8;
+
 	/** The queued packets. */
 	private final Queue<T> irps = new ConcurrentLinkedQueue<T>();
 
-	/** The queue processor thread. */
-	private volatile Thread processor;
+	/**
+	 * The queue processor thread, guarded by irps. It parks while the queue
+	 * is empty and only ends after being idle for IDLE_TIMEOUT.
+	 */
+	private Thread processor;
+
+	/** If an IRP is being processed. */
+	private volatile boolean processing;
 
 	/** If queue is currently aborting. */
 	private volatile boolean aborting;
@@ -36,6 +52,13 @@ abstract class AbstractIrpQueue<T extends UsbIrp> {
 	/** The USB device. */
 	private final AbstractDevice device;
 
+	/**
+	 * Direct transfer buffers by size, only used by the processor thread.
+	 * libusb takes the transfer length from the buffer capacity so each size
+	 * needs its own buffer.
+	 */
+	private final Map<Integer, ByteBuffer> buffers = new HashMap<Integer, ByteBuffer>();
+
 	/**
 	 * Constructor.
 	 * 
@@ -57,8 +80,13 @@ abstract class AbstractIrpQueue<T extends UsbIrp> {
 	public final void add(final T irp) {
 		this.irps.add(irp);
 
-		// Start the queue processor if not already running.
-		if (this.processor == null) {
+		synchronized (this.irps) {
+			if (this.processor != null) {
+				LockSupport.unpark(this.processor);
+				return;
+			}
+
+			// Start the queue processor if not already running.
 			this.processor = new Thread(new Runnable() {
 				@Override
 				public void run() {
@@ -67,58 +95,56 @@ abstract class AbstractIrpQueue<T extends UsbIrp> {
 			});
 			this.processor.setDaemon(true);
 			this.processor.setName("usb4java IRP Queue Processor");
+			IrpStatistics.threadStarted();
 			this.processor.start();
 		}
 	}
 
 	/**
-	 * Processes the queue. Methods returns when the queue is empty.
+	 * Processes the queue. Parks while the queue is empty and returns once it
+	 * has been idle for IDLE_TIMEOUT.
 	 */
 	final void process() {
-		try {
-			// Get the next IRP
-			T irp = this.irps.poll();
-
-			// If there are no IRPs to process then mark the thread as closing
-			// right away. Otherwise process the IRP (and more IRPs from the
-			// queue
-			// if present).
+		long idleSince = System.nanoTime();
+		while (true) {
+			this.processing = true;
+			final T irp = this.irps.poll();
 			if (irp == null) {
-				this.processor = null;
-			} else {
-				while (irp != null) {
-					// Process the IRP
-					try {
-						processIrp(irp);
-					} catch (final UsbException e) {
-						irp.setUsbException(e);
-					}
+				this.processing = false;
+				synchronized (this.irps) {
+					// wake up abort()
+					this.irps.notifyAll();
 
-					// Get next IRP and mark the thread as closing before
-					// sending
-					// the events for the previous IRP
-					final T nextIrp = this.irps.poll();
-					if (nextIrp == null)
+					if (this.irps.isEmpty()
+							&& System.nanoTime() - idleSince >= IDLE_TIMEOUT) {
+						// add() starts a new thread from here on
 						this.processor = null;
-
-					// Finish the previous IRP
-					irp.complete();
-					finishIrp(irp);
-
-					// Process next IRP (if present)
-					irp = nextIrp;
+						return;
+					}
 				}
+				// add() unparks, a permit given before this call returns at
+				// once
+				LockSupport.parkNanos(this, IDLE_TIMEOUT);
+				continue;
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			// No more IRPs are present in the queue so terminate the thread.
-			synchronized (this.irps) {
-				//System.out.println("done processing terminating thread");
-				this.irps.notifyAll();
+
+			try {
+				// Process the IRP
+				try {
+					processIrp(irp);
+				} catch (final UsbException e) {
+					irp.setUsbException(e);
+				}
+
+				// Finish the IRP
+				irp.complete();
+				finishIrp(irp);
+			} catch (Exception e) {
+				e.printStackTrace();
 			}
+			IrpStatistics.irpProcessed();
+			idleSince = System.nanoTime();
 		}
-
 	}
 
 	/**
@@ -168,7 +194,7 @@ abstract class AbstractIrpQueue<T extends UsbIrp> {
 	 * @return True if queue is busy, false if not.
 	 */
 	public final boolean isBusy() {
-		return !this.irps.isEmpty() || this.processor != null;
+		return !this.irps.isEmpty() || this.processing;
 	}
 
 	/**
@@ -199,7 +225,7 @@ abstract class AbstractIrpQueue<T extends UsbIrp> {
 	 */
 	protected final void processControlIrp(final UsbControlIrp irp)
 			throws UsbException {
-		final ByteBuffer buffer = ByteBuffer.allocateDirect(irp.getLength());
+		final ByteBuffer buffer = getBuffer(irp.getLength());
 		buffer.put(irp.getData(), irp.getOffset(), irp.getLength());
 		buffer.rewind();
 		final DeviceHandle handle = getDevice().open();
@@ -219,6 +245,28 @@ abstract class AbstractIrpQueue<T extends UsbIrp> {
 		}
 	}
 
+	/**
+	 * Returns a direct buffer for a transfer, reused by later transfers of
+	 * the same size. Must only be called from the processor thread.
+	 * 
+	 * @param size
+	 *            The transfer size, the capacity of the buffer.
+	 * @return The cleared buffer.
+	 */
+	protected final ByteBuffer getBuffer(final int size) {
+		ByteBuffer buffer = this.buffers.get(size);
+		if (buffer == null) {
+			if (this.buffers.size() >= MAX_BUFFERS) {
+				this.buffers.clear();
+			}
+			buffer = ByteBuffer.allocateDirect(size);
+			this.buffers.put(size, buffer);
+			IrpStatistics.bufferAllocated();
+		}
+		buffer.clear();
+		return buffer;
+	}
+
 	/**
 	 * Checks if this queue is currently aborting.
 	 * 
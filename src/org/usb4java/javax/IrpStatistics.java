@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 Klaus Reimer <k@ailis.de>
+ * See LICENSE.md for licensing information.
+ */
+package org.usb4java.javax;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the IRP queues, shared by all devices.
+ */
+public final class IrpStatistics {
+	private static final AtomicLong threads = new AtomicLong();
+	private static final AtomicLong buffers = new AtomicLong();
+	private static final AtomicLong irps = new AtomicLong();
+
+	private IrpStatistics() {
+	}
+
+	static void threadStarted() {
+		threads.incrementAndGet();
+	}
+
+	static void bufferAllocated() {
+		buffers.incrementAndGet();
+	}
+
+	static void irpProcessed() {
+		irps.incrementAndGet();
+	}
+
+	/**
+	 * @return The number of queue processor threads started.
+	 */
+	public static long getThreadsStarted() {
+		return threads.get();
+	}
+
+	/**
+	 * @return The number of direct transfer buffers allocated.
+	 */
+	public static long getBuffersAllocated() {
+		return buffers.get();
+	}
+
+	/**
+	 * @return The number of IRPs processed.
+	 */
+	public static long getIrpsProcessed() {
+		return irps.get();
+	}
+}
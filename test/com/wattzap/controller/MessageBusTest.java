@@ -0,0 +1,138 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageBusTest {
+	// runs tasks when the test says so
+	final List<Runnable> tasks = new ArrayList<Runnable>();
+	final Executor executor = new Executor() {
+		@Override
+		public void execute(Runnable r) {
+			tasks.add(r);
+		}
+	};
+
+	final List<Object> received = new ArrayList<Object>();
+	final MessageCallback callback = new MessageCallback() {
+		@Override
+		public void callback(Messages m, Object o) {
+			received.add(o);
+		}
+	};
+
+	@After
+	public void tearDown() {
+		MessageBus.INSTANCE.unregister(Messages.SPEED, callback);
+		MessageBus.INSTANCE.unregister(Messages.CADENCE, callback);
+	}
+
+	@Test
+	public void coalesce() {
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, callback, executor,
+				4, AsyncSubscriber.Overflow.COALESCE);
+		MessageBus.INSTANCE.registerAsync(Messages.CADENCE, callback,
+				executor, 4, AsyncSubscriber.Overflow.DROP_OLDEST);
+
+		MessageBus.INSTANCE.send(Messages.SPEED, 1);
+		MessageBus.INSTANCE.send(Messages.CADENCE, 90);
+		MessageBus.INSTANCE.send(Messages.SPEED, 2);
+		MessageBus.INSTANCE.send(Messages.SPEED, 3);
+		Assert.assertTrue(received.isEmpty());
+		Assert.assertEquals(1, tasks.size());
+
+		tasks.remove(0).run();
+		Assert.assertEquals("[3, 90]", received.toString());
+
+		AsyncSubscriber s = MessageBus.INSTANCE.getAsyncSubscribers().get(0);
+		Assert.assertEquals(2, s.getDelivered());
+		Assert.assertEquals(2, s.getCoalesced());
+		Assert.assertEquals(2, s.getMaxDepth());
+	}
+
+	@Test
+	public void dropOldest() {
+		MessageBus.INSTANCE.registerAsync(Messages.CADENCE, callback,
+				executor, 2, AsyncSubscriber.Overflow.DROP_OLDEST);
+		for (int i = 0; i < 5; i++) {
+			MessageBus.INSTANCE.send(Messages.CADENCE, i);
+		}
+		tasks.remove(0).run();
+		Assert.assertEquals("[3, 4]", received.toString());
+
+		// unregister discards anything still queued
+		MessageBus.INSTANCE.send(Messages.CADENCE, 5);
+		MessageBus.INSTANCE.unregister(Messages.CADENCE, callback);
+		MessageBus.INSTANCE.send(Messages.CADENCE, 6);
+		tasks.remove(0).run();
+		Assert.assertEquals("[3, 4]", received.toString());
+		Assert.assertTrue(MessageBus.INSTANCE.getAsyncSubscribers().isEmpty());
+	}
+
+	@Test
+	public void keep() {
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, callback, executor,
+				2, AsyncSubscriber.Overflow.KEEP);
+		MessageBus.INSTANCE.registerAsync(Messages.CADENCE, callback,
+				executor, 2, AsyncSubscriber.Overflow.DROP_OLDEST);
+		MessageBus.INSTANCE.send(Messages.CADENCE, 90);
+		for (int i = 0; i < 4; i++) {
+			MessageBus.INSTANCE.send(Messages.SPEED, i);
+		}
+		tasks.remove(0).run();
+		// the cadence made room, then the queue grew for the rest
+		Assert.assertEquals("[0, 1, 2, 3]", received.toString());
+
+		AsyncSubscriber s = MessageBus.INSTANCE.getAsyncSubscribers().get(0);
+		Assert.assertEquals(1, s.getDropped());
+		Assert.assertEquals(4, s.getMaxDepth());
+	}
+
+	@Test
+	public void unregisterDuringSend() {
+		final MessageCallback other = new MessageCallback() {
+			@Override
+			public void callback(Messages m, Object o) {
+				received.add("other");
+			}
+		};
+		MessageCallback first = new MessageCallback() {
+			@Override
+			public void callback(Messages m, Object o) {
+				// the send already under way still sees the old snapshot
+				MessageBus.INSTANCE.unregister(Messages.CADENCE, this);
+				MessageBus.INSTANCE.unregister(Messages.CADENCE, other);
+				MessageBus.INSTANCE.register(Messages.CADENCE, callback);
+			}
+		};
+		MessageBus.INSTANCE.register(Messages.CADENCE, first);
+		MessageBus.INSTANCE.register(Messages.CADENCE, other);
+		// registered once only
+		MessageBus.INSTANCE.register(Messages.CADENCE, other);
+
+		MessageBus.INSTANCE.send(Messages.CADENCE, 1);
+		Assert.assertEquals("[other]", received.toString());
+		MessageBus.INSTANCE.send(Messages.CADENCE, 2);
+		Assert.assertEquals("[other, 2]", received.toString());
+	}
+}
@@ -15,7 +15,10 @@
 */
 package com.wattzap.model;
 
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -76,10 +79,119 @@ public class DataStoreTest {
 
 	}
 
+	@Test
+	public void saveWorkouts() {
+		String user = System.getProperty("user.name");
+		List<WorkoutData> workouts = new ArrayList<WorkoutData>();
+		for (int i = 0; i < 3; i++) {
+			WorkoutData data = new WorkoutData();
+			data.setTcxFile("batch" + i + ".tcx");
+			data.setDate((new Date()).getTime());
+			workouts.add(data);
+			ds.deleteWorkout(user, data.getTcxFile());
+		}
+
+		Assert.assertTrue(ds.saveWorkOuts(user, workouts));
+		Assert.assertEquals("batch2.tcx", ds.getWorkout(user, "batch2.tcx")
+				.getTcxFile());
+
+		// already saved, the whole batch is rolled back
+		WorkoutData extra = new WorkoutData();
+		extra.setTcxFile("batch3.tcx");
+		extra.setDate((new Date()).getTime());
+		ds.deleteWorkout(user, extra.getTcxFile());
+		workouts.add(extra);
+		Assert.assertFalse(ds.saveWorkOuts(user, workouts));
+		Assert.assertNull(ds.getWorkout(user, "batch3.tcx"));
+	}
+
+	@Test
+	public void seasonBest() {
+		String user = System.getProperty("user.name");
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2001, Calendar.JUNE, 1);
+		ds.deleteWorkout(user, "curve1.tcx");
+		ds.deleteWorkout(user, "curve2.tcx");
+
+		WorkoutData first = new WorkoutData();
+		first.setTcxFile("curve1.tcx");
+		first.setDate(cal.getTimeInMillis());
+		first.setPowerCurve(new double[] { 400, 350, 300 });
+		ds.saveWorkOut(user, first);
+		Assert.assertEquals(350, ds.getPowerCurve(user, "curve1.tcx")[1], 0);
+
+		double[] best = ds.getSeasonBest(user, 2001);
+		Assert.assertEquals(3, best.length);
+		Assert.assertEquals(400, best[0], 0);
+
+		// merged into the stored season best
+		WorkoutData second = new WorkoutData();
+		second.setTcxFile("curve2.tcx");
+		second.setDate(cal.getTimeInMillis());
+		second.setPowerCurve(new double[] { 380, 360, 320, 250 });
+		ds.saveWorkOut(user, second);
+		best = ds.getSeasonBest(user, 2001);
+		Assert.assertArrayEquals(new double[] { 400, 360, 320, 250 }, best, 0);
+
+		// rebuilt without the deleted workout
+		ds.deleteWorkout(user, "curve2.tcx");
+		Assert.assertNull(ds.getPowerCurve(user, "curve2.tcx"));
+		best = ds.getSeasonBest(user, 2001);
+		Assert.assertArrayEquals(new double[] { 400, 350, 300 }, best, 0);
+	}
+
+	@Test
+	public void workoutsWithoutCurve() {
+		String user = System.getProperty("user.name");
+		ds.deleteWorkout(user, "nocurve.tcx");
+		WorkoutData data = new WorkoutData();
+		data.setTcxFile("nocurve.tcx");
+		data.setDate(System.currentTimeMillis());
+		ds.saveWorkOut(user, data);
+		Assert.assertTrue(hasWorkout(ds.listWorkoutsWithoutCurve(user),
+				"nocurve.tcx"));
+
+		data.setPowerCurve(new double[] { 300, 250 });
+		ds.savePowerCurve(user, data);
+		Assert.assertFalse(hasWorkout(ds.listWorkoutsWithoutCurve(user),
+				"nocurve.tcx"));
+		ds.deleteWorkout(user, "nocurve.tcx");
+	}
+
+	private static boolean hasWorkout(List<WorkoutData> workouts, String name) {
+		for (WorkoutData w : workouts) {
+			if (name.equals(w.getTcxFile())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	@Test
 	public void getWorkout() {
 		String user = System.getProperty("user.name");
 		WorkoutData data = ds.getWorkout(user, "test.tcx");
 		Assert.assertEquals("test.tcx", data.getTcxFile());
 	}
+
+	@Test
+	public void reuseStatements() {
+		String user = System.getProperty("user.name");
+		String sql = "SELECT v FROM props WHERE username = ? and k = ?";
+		// the constructor reads the database version
+		long count = ds.getStatementStats().get(sql).getCount();
+
+		ds.getProp(user, "weight");
+		ds.getProp(user, "wheelsize");
+		ds.getProp(user, "maxhr");
+
+		DataStore.StatementStats st = ds.getStatementStats().get(sql);
+		Assert.assertEquals(1, st.getPrepares());
+		Assert.assertEquals(count + 3, st.getCount());
+
+		// a snapshot, not the live counters
+		ds.getProp(user, "weight");
+		Assert.assertEquals(count + 3, st.getCount());
+	}
 }
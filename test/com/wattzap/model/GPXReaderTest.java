@@ -0,0 +1,101 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wattzap.model.dto.Point;
+
+public class GPXReaderTest {
+	File dir;
+	RouteCache saved;
+
+	@Before
+	public void setup() throws IOException {
+		dir = File.createTempFile("gpxreader", "");
+		dir.delete();
+		dir.mkdir();
+		saved = RouteReader.cache;
+		RouteReader.cache = new RouteCache(new File(dir, "cache"));
+	}
+
+	@After
+	public void tearDown() {
+		RouteReader.cache = saved;
+		for (File f : new File(dir, "cache").listFiles()) {
+			f.delete();
+		}
+		new File(dir, "cache").delete();
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void segments() throws IOException {
+		File f = new File(dir, "segments.gpx");
+		PrintWriter out = new PrintWriter(f, "UTF-8");
+		out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		out.println("<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">");
+		out.println("<metadata><time>2014-06-06T07:00:00Z</time></metadata>");
+		out.println("<trk><name>Test</name>");
+		// two segments, 1000m north then a 5 minute tunnel
+		for (int s = 0; s < 2; s++) {
+			out.println("<trkseg>");
+			for (int i = 0; i < 10; i++) {
+				int n = s * 10 + i;
+				out.println("<trkpt lat=\"" + (45 + n * 0.001)
+						+ "\" lon=\"5.0\"><ele>" + (100 + n)
+						+ "</ele><time>2014-06-06T07:"
+						+ String.format("%02d", n + s * 5) + ":00Z</time></trkpt>");
+			}
+			out.println("</trkseg>");
+		}
+		out.println("</trk>");
+		// ignored
+		out.println("<trk><trkseg><trkpt lat=\"0\" lon=\"0\"/></trkseg></trk>");
+		out.println("</gpx>");
+		out.close();
+
+		GPXReader reader = new GPXReader();
+		reader.load(f.getPath());
+		Point[] points = reader.getPoints();
+		Assert.assertEquals(20, points.length);
+		Assert.assertEquals(20, reader.getSeries().getItemCount());
+
+		// distance carries on over the gap, time doesn't
+		Assert.assertEquals(111.2, points[1].getDistanceFromStart(), 0.1);
+		Assert.assertEquals(2, points[19].getDistanceFromStart()
+				/ points[9].getDistanceFromStart(), 0.01);
+		Assert.assertEquals(60000, points[1].getTime());
+		Assert.assertEquals(points[9].getTime(), points[10].getTime());
+		Assert.assertEquals(18 * 60000, points[19].getTime());
+		Assert.assertEquals(6.7, points[0].getSpeed(), 0.1);
+		Assert.assertEquals(0.9, points[0].getGradient(), 0.01);
+		Assert.assertEquals(0.9, reader.getMaxSlope(), 0.01);
+
+		// map track built on demand, one route per segment
+		Assert.assertEquals(2, reader.getGpxFile().getRoutes().size());
+	}
+}
@@ -0,0 +1,79 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.model;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropertyCacheTest {
+	DataStore ds;
+	PropertyCache cache;
+	String user = System.getProperty("user.name");
+
+	@Before
+	public void setup() {
+		ds = new DataStore(".", "afghanistanbananastan");
+		ds.insertProp(user, "cached", "42");
+		cache = new PropertyCache(ds);
+	}
+
+	@After
+	public void tearDown() {
+		cache.close();
+		ds.close();
+	}
+
+	@Test
+	public void loadedAtStartup() {
+		Assert.assertEquals("42", cache.getProp(user, "cached"));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(0, cache.getMisses());
+	}
+
+	@Test
+	public void missingKeyQueriedOnce() {
+		Assert.assertNull(cache.getProp(user, "notthere"));
+		Assert.assertNull(cache.getProp(user, "notthere"));
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void writeThrough() {
+		cache.insertProp(user, "written", "69.0");
+		Assert.assertEquals("69.0", cache.getProp(user, "written"));
+
+		cache.close();
+		Assert.assertEquals("69.0", ds.getProp(user, "written"));
+	}
+
+	@Test
+	public void coalesceWrites() {
+		cache.insertProp("", "videoX", "1");
+		cache.insertProp("", "videoX", "2");
+		cache.insertProp("", "videoY", "3");
+		cache.insertProp("", "videoX", "4");
+		cache.flush();
+
+		Assert.assertEquals(4, cache.getWrites());
+		Assert.assertEquals(2, cache.getFlushed());
+		Assert.assertEquals(1, cache.getBatches());
+		Assert.assertEquals("4", ds.getProp("", "videoX"));
+		Assert.assertEquals("3", ds.getProp("", "videoY"));
+	}
+}
@@ -15,7 +15,14 @@
 */
 package com.wattzap.model;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -55,4 +62,66 @@ public class RLVReaderTest {
 		 */
 	}
 
+	@Test
+	public void loadSyntheticRoute() throws IOException {
+		File dir = File.createTempFile("rlv", "");
+		dir.delete();
+		dir.mkdir();
+		String base = dir.getPath() + "/Test";
+
+		ByteBuffer pgmf = ByteBuffer.allocate(1024).order(
+				ByteOrder.LITTLE_ENDIAN);
+		pgmf.putShort((short) RLVReader.PGMF_FINGERPRINT).putShort((short) 100)
+				.putShort((short) 0).putShort((short) 2);
+		pgmf.putShort((short) RLVReader.PGMF_INFORMATION).putShort((short) 100)
+				.putInt(1).putInt(70);
+		pgmf.putInt(0);
+		putString(pgmf, "Test", 34);
+		pgmf.putInt(RouteReader.SLOPE).putInt(RLVReader.DISTANCE)
+				.putDouble(600).putDouble(0).putFloat(100f).putInt(0);
+		pgmf.putShort((short) RLVReader.PGMF_PROGRAM).putShort((short) 100)
+				.putInt(3).putInt(12);
+		pgmf.putFloat(100).putFloat(2).putFloat(4);
+		pgmf.putFloat(200).putFloat(5).putFloat(4);
+		pgmf.putFloat(300).putFloat(-1).putFloat(4);
+		write(base + ".pgmf", pgmf);
+
+		ByteBuffer rlv = ByteBuffer.allocate(1024)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		rlv.putShort((short) RLVReader.RLV_FINGERPRINT).putShort((short) 100)
+				.putShort((short) 0).putShort((short) 2);
+		rlv.putShort((short) RLVReader.RLV_VIDEO_INFO).putShort((short) 100)
+				.putInt(1).putInt(534);
+		putString(rlv, "Test.avi", 522);
+		rlv.putFloat(25f).putFloat(75f).putInt(0);
+		rlv.putShort((short) RLVReader.RLV_FRAME_DISTANCE_MAPPING)
+				.putShort((short) 100).putInt(2).putInt(8);
+		rlv.putInt(1000).putInt(Float.floatToIntBits(0.3f));
+		rlv.putInt(2000).putInt(Float.floatToIntBits(0.3f));
+		write(base + ".rlv", rlv);
+
+		reader.load(base + ".rlv");
+		Assert.assertEquals("Test", reader.getName());
+		Assert.assertEquals(600, reader.getDistanceMeters(), 0.001);
+		Assert.assertEquals(4, reader.getPoints().length);
+		Assert.assertEquals(5, reader.getMaxSlope(), 0.001);
+		Assert.assertEquals(-1, reader.getMinSlope(), 0.001);
+		Assert.assertEquals(112, reader.getPoints()[2].getElevation(), 0.001);
+
+		new File(base + ".pgmf").delete();
+		new File(base + ".rlv").delete();
+		dir.delete();
+	}
+
+	private void putString(ByteBuffer buf, String s, int len) {
+		for (int i = 0; i < len / 2; i++) {
+			buf.putShort(i < s.length() ? (short) s.charAt(i) : 0);
+		}
+	}
+
+	private void write(String name, ByteBuffer buf) throws IOException {
+		FileOutputStream out = new FileOutputStream(name);
+		out.write(buf.array(), 0, buf.position());
+		out.close();
+	}
 }
@@ -0,0 +1,139 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wattzap.model.dto.Point;
+
+public class RouteCacheTest {
+	File dir;
+	File gpx;
+	RouteCache saved;
+
+	@Before
+	public void setup() throws IOException {
+		dir = File.createTempFile("routecache", "");
+		dir.delete();
+		dir.mkdir();
+		gpx = new File(dir, "colducoq.gpx");
+		copy(new File("resources/test/colducoq-6jun2014.gpx"), gpx);
+
+		saved = RouteReader.cache;
+		RouteReader.cache = new RouteCache(new File(dir, "cache"));
+	}
+
+	@After
+	public void tearDown() {
+		RouteReader.cache = saved;
+		delete(dir);
+	}
+
+	@Test
+	public void gpxRoute() {
+		GPXReader parsed = new GPXReader();
+		parsed.load(gpx.getPath());
+		Assert.assertEquals(1, new File(dir, "cache").list().length);
+
+		GPXReader cached = new GPXReader();
+		cached.load(gpx.getPath());
+		Assert.assertNotSame(parsed.getPoints(), cached.getPoints());
+		assertSame(parsed, cached);
+		Assert.assertEquals(parsed.getGpxFile().getMaxLat(), cached
+				.getGpxFile().getMaxLat(), 0);
+
+		// a changed file is parsed again
+		Assert.assertNotNull(RouteReader.cache.get(gpx));
+		gpx.setLastModified(gpx.lastModified() - 10000);
+		Assert.assertNull(RouteReader.cache.get(gpx));
+		cached = new GPXReader();
+		cached.load(gpx.getPath());
+		assertSame(parsed, cached);
+		Assert.assertNotNull(RouteReader.cache.get(gpx));
+	}
+
+	@Test
+	public void corruptEntry() throws IOException {
+		GPXReader parsed = new GPXReader();
+		parsed.load(gpx.getPath());
+		File entry = new File(dir, "cache").listFiles()[0];
+
+		// header, then the name and four fixed fields before the point count
+		RandomAccessFile raf = new RandomAccessFile(entry, "rw");
+		raf.skipBytes(4 + 2 + 4);
+		raf.skipBytes(raf.readInt() + 8 + 8);
+		raf.skipBytes(raf.readInt() + 4 + 8 + 8 + 8);
+		raf.writeInt(Integer.MAX_VALUE);
+		raf.close();
+
+		Assert.assertNull(RouteReader.cache.get(gpx));
+		Assert.assertFalse(entry.exists());
+
+		GPXReader cached = new GPXReader();
+		cached.load(gpx.getPath());
+		assertSame(parsed, cached);
+		Assert.assertNotNull(RouteReader.cache.get(gpx));
+	}
+
+	private static void assertSame(RouteReader expected, RouteReader actual) {
+		Assert.assertEquals(expected.getDistanceMeters(),
+				actual.getDistanceMeters(), 0);
+		Assert.assertEquals(expected.getMaxSlope(), actual.getMaxSlope(), 0);
+		Assert.assertEquals(expected.getMinSlope(), actual.getMinSlope(), 0);
+		Assert.assertEquals(expected.getSeries().getItemCount(), actual
+				.getSeries().getItemCount());
+
+		Point[] e = expected.getPoints();
+		Point[] a = actual.getPoints();
+		Assert.assertEquals(e.length, a.length);
+		for (int i = 0; i < e.length; i++) {
+			Assert.assertEquals(e[i].toString(), a[i].toString());
+		}
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		InputStream in = new FileInputStream(from);
+		OutputStream out = new FileOutputStream(to);
+		byte[] buf = new byte[8192];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		in.close();
+		out.close();
+	}
+
+	private static void delete(File f) {
+		File[] files = f.listFiles();
+		if (files != null) {
+			for (File c : files) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,90 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.model;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wattzap.model.dto.Point;
+
+public class RouteIndexTest {
+
+	@Test
+	public void matchesLinearScan() {
+		Random r = new Random(1);
+		Point[] points = new Point[500];
+		double d = 0;
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new Point();
+			// some points share a distance
+			d += r.nextInt(4) * 10;
+			points[i].setDistanceFromStart(d);
+		}
+		RouteIndex index = new RouteIndex(points);
+		RouteIndex.Cursor cursor = index.cursor();
+
+		for (int i = 0; i < 2000; i++) {
+			// mostly forward with the odd jump back
+			double m = i % 100 == 99 ? r.nextDouble() * d : i * d / 1900;
+			Point expected = scan(points, m);
+			Assert.assertSame(expected, index.getPoint(m));
+			Assert.assertSame(expected, cursor.getPoint(m));
+		}
+		Assert.assertNull(index.getPoint(d + 1));
+		Assert.assertSame(points[0], index.getPoint(-1));
+	}
+
+	@Test
+	public void interpolate() {
+		Point[] points = new Point[3];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new Point();
+			points[i].setDistanceFromStart(i * 100);
+			points[i].setElevation(100 + i * 10);
+			points[i].setGradient(i * 2);
+			points[i].setLatitude(45 + i);
+			points[i].setTime(i * 20000);
+			points[i].setPower(200 + i);
+		}
+		RouteIndex.Cursor cursor = new RouteIndex(points).cursor();
+
+		Point p = cursor.interpolate(125);
+		Assert.assertEquals(125, p.getDistanceFromStart(), 0);
+		Assert.assertEquals(112.5, p.getElevation(), 0.0001);
+		Assert.assertEquals(2.5, p.getGradient(), 0.0001);
+		Assert.assertEquals(46.25, p.getLatitude(), 0.0001);
+		Assert.assertEquals(25000, p.getTime());
+		Assert.assertEquals(201, p.getPower());
+
+		Assert.assertEquals(120, cursor.interpolate(200).getElevation(), 0);
+		Assert.assertEquals(100, cursor.interpolate(-5).getElevation(), 0);
+		Assert.assertNull(cursor.interpolate(201));
+	}
+
+	// the old RouteReader.getPoint
+	private static Point scan(Point[] points, double m) {
+		int i = 0;
+		while (i < points.length && points[i].getDistanceFromStart() < m) {
+			i++;
+		}
+		if (i == points.length) {
+			return null;
+		}
+		return i > 0 ? points[i - 1] : points[0];
+	}
+}
@@ -0,0 +1,155 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.model;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times loading the Tacx route files (.rlv with its .pgmf, .tts) under
+ * resources/test, or the files given on the command line.
+ *
+ * Each file is loaded through its reader, and its bytes are also read the way
+ * the readers used to: a short or int at a time from an unbuffered
+ * DataInputStream, against the same fields read from a mapped buffer. Run
+ * the class on an older checkout to time the old readers end to end.
+ *
+ * Not a unit test, run with: java com.wattzap.model.TacxReaderBenchmark
+ * [files]
+ */
+public class TacxReaderBenchmark {
+	private static final int RUNS = 20;
+
+	public static void main(String[] args) throws Exception {
+		List<File> files = new ArrayList<File>();
+		if (args.length > 0) {
+			for (String a : args) {
+				files.add(new File(a));
+			}
+		} else {
+			find(new File("resources/test"), files);
+		}
+		if (files.isEmpty()) {
+			System.out.println("No .rlv or .tts files found");
+			return;
+		}
+
+		for (File f : files) {
+			String name = f.getPath();
+			File data = f;
+			if (name.endsWith(".rlv")) {
+				// the program is in the pgmf, which is the larger file
+				data = new File(name.substring(0, name.length() - 4) + ".pgmf");
+			}
+
+			// warm up
+			load(name);
+			stream(data);
+			mapped(data);
+
+			long start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				load(name);
+			}
+			long loadNs = (System.nanoTime() - start) / RUNS;
+
+			start = System.nanoTime();
+			long check = 0;
+			for (int i = 0; i < RUNS; i++) {
+				check += stream(data);
+			}
+			long streamNs = (System.nanoTime() - start) / RUNS;
+
+			start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				check -= mapped(data);
+			}
+			long mappedNs = (System.nanoTime() - start) / RUNS;
+
+			System.out.println(String.format(
+					"%s: %d KB, load %.2f ms, fields from stream %.2f ms, "
+							+ "mapped %.2f ms%s", f.getName(),
+					data.length() / 1024, loadNs / 1e6, streamNs / 1e6,
+					mappedNs / 1e6, check == 0 ? "" : " (checksums differ)"));
+		}
+	}
+
+	private static void find(File dir, List<File> files) {
+		File[] list = dir.listFiles();
+		if (list == null) {
+			return;
+		}
+		for (File f : list) {
+			if (f.isDirectory()) {
+				find(f, files);
+			} else if (f.getName().endsWith(".rlv")
+					|| f.getName().endsWith(".tts")) {
+				files.add(f);
+			}
+		}
+	}
+
+	private static void load(String name) {
+		RouteReader reader = name.endsWith(".rlv") ? new RLVReader()
+				: new TTSReader();
+		reader.load(name);
+		reader.close();
+	}
+
+	// old access pattern, little endian ints a byte at a time
+	private static long stream(File f) throws IOException {
+		DataInputStream din = new DataInputStream(new FileInputStream(f));
+		long sum = 0;
+		try {
+			long ints = f.length() / 4;
+			for (long i = 0; i < ints; i++) {
+				int b0 = din.readUnsignedByte();
+				int b1 = din.readUnsignedByte();
+				int b2 = din.readUnsignedByte();
+				int b3 = din.readUnsignedByte();
+				sum += b3 << 24 | b2 << 16 | b1 << 8 | b0;
+			}
+		} finally {
+			din.close();
+		}
+		return sum;
+	}
+
+	private static long mapped(File f) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		long sum = 0;
+		try {
+			FileChannel ch = raf.getChannel();
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0,
+					ch.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			while (map.remaining() >= 4) {
+				sum += map.getInt();
+			}
+		} finally {
+			raf.close();
+		}
+		return sum;
+	}
+}
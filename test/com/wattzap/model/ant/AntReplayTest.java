@@ -0,0 +1,102 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.ant;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.cowboycoders.ant.messages.data.BroadcastDataMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AntReplayTest {
+
+	@Test
+	public void roundTrip() throws IOException, InterruptedException {
+		File file = File.createTempFile("replay", ".wzant");
+		file.deleteOnExit();
+
+		Collector speed = new Collector("C:SPD");
+		Collector hrm = new Collector("C:HRM");
+		AntRecorder recorder = new AntRecorder(file);
+		AntListener recSpeed = recorder.wrap(speed);
+		AntListener recHrm = recorder.wrap(hrm);
+		for (int i = 0; i < 50; i++) {
+			recSpeed.receiveMessage(message(i));
+			if (i % 5 == 0) {
+				recHrm.receiveMessage(message(100 + i));
+			}
+		}
+		recorder.close();
+		Assert.assertEquals(50, speed.received.size());
+
+		// heart rate isn't configured for the replay
+		Collector replayed = new Collector("C:SPD");
+		HashMap<String, AntListener> listeners = new HashMap<String, AntListener>();
+		listeners.put(replayed.getName(), replayed);
+		long n = new AntReplay(file, listeners, 0).replay();
+
+		Assert.assertEquals(50, n);
+		for (int i = 0; i < 50; i++) {
+			Assert.assertArrayEquals(speed.received.get(i),
+					replayed.received.get(i));
+		}
+		file.delete();
+	}
+
+	private static BroadcastDataMessage message(int i) {
+		BroadcastDataMessage m = new BroadcastDataMessage();
+		m.setData(new byte[] { 0, 0, 0, 0, (byte) i, (byte) (i >> 8),
+				(byte) (i * 3), 7 });
+		return m;
+	}
+
+	static class Collector extends AntListener {
+		final String name;
+		final ArrayList<byte[]> received = new ArrayList<byte[]>();
+
+		Collector(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void receiveMessage(BroadcastDataMessage message) {
+			received.add(message.getPrimitiveData());
+		}
+
+		@Override
+		public int getChannelId() {
+			return 0;
+		}
+
+		@Override
+		public int getChannelPeriod() {
+			return 0;
+		}
+
+		@Override
+		public int getDeviceType() {
+			return 0;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+	}
+}
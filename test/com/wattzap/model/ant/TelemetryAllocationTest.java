@@ -0,0 +1,186 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.ant;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wattzap.controller.AsyncSubscriber;
+import com.wattzap.controller.MessageBus;
+import com.wattzap.controller.MessageCallback;
+import com.wattzap.controller.Messages;
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetryPool;
+import com.wattzap.model.power.PowerTable;
+import com.wattzap.model.power.TacxSatoriBlueMotion;
+import com.wattzap.utils.Rolling;
+
+/**
+ * Steady state SPEED messages shouldn't allocate, from the listener's
+ * calculation to delivery by an async subscriber.
+ */
+public class TelemetryAllocationTest {
+	static final int MESSAGES = 20000;
+	static final Logger logger = LogManager.getLogger("SpeedListener");
+
+	// a view thread that runs every few messages
+	final List<Runnable> tasks = new ArrayList<Runnable>(4);
+	final Executor executor = new Executor() {
+		@Override
+		public void execute(Runnable r) {
+			tasks.add(r);
+		}
+	};
+
+	double total = 0;
+	final MessageCallback view = new MessageCallback() {
+		@Override
+		public void callback(Messages m, Object o) {
+			total += ((Telemetry) o).getSpeed();
+		}
+	};
+
+	Level level;
+
+	@Before
+	public void setup() {
+		// as in normal use, debug logging is off
+		level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		MessageBus.INSTANCE.registerAsync(Messages.SPEED, view, executor, 4,
+				AsyncSubscriber.Overflow.COALESCE);
+	}
+
+	@After
+	public void tearDown() {
+		MessageBus.INSTANCE.unregister(Messages.SPEED, view);
+		logger.setLevel(level);
+	}
+
+	@Test
+	public void speedListener() {
+		SpeedListener listener = new SpeedListener();
+		listener.callback(Messages.START, null);
+		listener.power = PowerTable.of(new TacxSatoriBlueMotion());
+
+		// 1/4s apart, 2 wheel turns each
+		int[] msg = new int[2];
+		send(listener, msg, 1000);
+		long before = allocated();
+		send(listener, msg, MESSAGES);
+		long bytes = allocated() - before;
+
+		Assert.assertTrue(total > 0);
+		Assert.assertTrue("allocated " + bytes + " bytes", bytes < MESSAGES);
+	}
+
+	@Test
+	public void powerListener() {
+		PowerListener listener = new PowerListener();
+		listener.callback(Messages.START, null);
+		listener.power = PowerTable.of(new TacxSatoriBlueMotion());
+		listener.averagePower = new Rolling(4);
+
+		int[] data = { 0x10, 0, 0xff, 90, 0, 0, 200, 0 };
+		power(listener, data, 1000);
+		long before = allocated();
+		power(listener, data, MESSAGES);
+		long bytes = allocated() - before;
+
+		Assert.assertTrue(total > 0);
+		Assert.assertTrue("allocated " + bytes + " bytes", bytes < MESSAGES);
+	}
+
+	@Test
+	public void poolReusesFrames() {
+		TelemetryPool pool = new TelemetryPool(2);
+		Telemetry a = pool.acquire();
+		a.setSpeed(30);
+		TelemetryPool.release(a);
+		Telemetry b = pool.acquire();
+		Telemetry c = pool.acquire();
+		Assert.assertNotSame(b, c);
+		Assert.assertEquals(2, pool.getAllocated());
+		// reset for the next sender
+		Assert.assertEquals(-1, b.getSpeed(), 0);
+
+		// all held
+		Telemetry d = pool.acquire();
+		Assert.assertEquals(4, pool.getAllocated());
+		TelemetryPool.release(b);
+		TelemetryPool.release(c);
+		TelemetryPool.release(d);
+		for (int i = 0; i < 10; i++) {
+			TelemetryPool.release(pool.acquire());
+		}
+		Assert.assertEquals(4, pool.getAllocated());
+	}
+
+	@Test
+	public void poolGrowsFromOne() {
+		TelemetryPool pool = new TelemetryPool(1);
+		Telemetry a = pool.acquire();
+		Telemetry b = pool.acquire();
+		Assert.assertEquals(2, pool.getAllocated());
+		Telemetry c = pool.acquire();
+		Assert.assertEquals(4, pool.getAllocated());
+		Assert.assertNotSame(a, c);
+		Assert.assertNotSame(b, c);
+	}
+
+	private void send(SpeedListener listener, int[] msg, int n) {
+		for (int i = 0; i < n; i++) {
+			msg[0] = (msg[0] + 256) & 0xffff;
+			msg[1] = (msg[1] + 2) & 0xffff;
+			Telemetry t = listener.getTelemetry(msg[0], msg[1]);
+			if (t != null) {
+				MessageBus.INSTANCE.send(Messages.SPEED, t);
+				TelemetryPool.release(t);
+			}
+			deliver(i);
+		}
+	}
+
+	private void power(PowerListener listener, int[] data, int n) {
+		for (int i = 0; i < n; i++) {
+			data[1] = (data[1] + 1) & 0xff;
+			listener.powerPage(data);
+			deliver(i);
+		}
+	}
+
+	private void deliver(int i) {
+		if (i % 3 == 0 && !tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+	}
+
+	private static long allocated() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+}
@@ -0,0 +1,73 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.model.dto;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TelemetrySeriesTest {
+
+	@Test
+	public void growAndRead() {
+		ArrayList<Telemetry> list = new ArrayList<Telemetry>();
+		for (int i = 0; i < 100; i++) {
+			Telemetry t = new Telemetry();
+			t.setTime(i * 1000);
+			t.setPower(200 + i);
+			t.setHeartRate(120);
+			t.setCadence(90);
+			t.setDistanceMeters(i * 8.5);
+			t.setLatitude(45.0 + i / 1000.0);
+			list.add(t);
+		}
+
+		// start small so the arrays have to grow
+		TelemetrySeries series = new TelemetrySeries(1);
+		for (Telemetry t : list) {
+			series.add(t);
+		}
+
+		Assert.assertEquals(100, series.size());
+		Assert.assertEquals(99000, series.getTime(99));
+		Assert.assertEquals(299, series.getPower(99));
+		Assert.assertEquals(841.5, series.getDistanceMeters(99), 0.0001);
+		Assert.assertEquals(181, series.getLongitude(0), 0.0001);
+
+		Telemetry t = series.get(50);
+		Assert.assertEquals(250, t.getPower());
+		Assert.assertEquals(45.05, t.getLatitude(), 0.0001);
+		Assert.assertEquals(100, series.toList().size());
+	}
+
+	@Test
+	public void setAfterAdd() {
+		TelemetrySeries series = new TelemetrySeries();
+		series.add(new Telemetry());
+		series.setPower(0, 250);
+		series.setDistanceMeters(0, 12.5);
+		Assert.assertEquals(250, series.getPower(0));
+		Assert.assertEquals(12.5, series.get(0).getDistanceMeters(), 0);
+
+		try {
+			// inside the capacity but past the last sample
+			series.setPower(1, 100);
+			Assert.fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+}
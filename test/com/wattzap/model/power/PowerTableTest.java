@@ -0,0 +1,89 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.model.power;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PowerTableTest {
+	static final Power[] PROFILES = { new EliteNovoPower(),
+			new TacxSatoriBlueMotion(), new TacxFlow(),
+			new KineticRoadMachine(), new CycleOpsSuperMagnetoPro() };
+
+	@Test
+	public void power() {
+		for (Power exact : PROFILES) {
+			PowerTable table = new PowerTable(exact);
+			for (int r = 0; r <= exact.getResitanceLevels(); r++) {
+				for (double s = 0; s < 80; s += 0.37) {
+					int expected;
+					try {
+						expected = exact.getPower(s, r);
+					} catch (RuntimeException e) {
+						// level not in this profile
+						break;
+					}
+					Assert.assertEquals(exact + " r " + r + " s " + s,
+							expected, table.getPower(s, r), 1);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void speed() {
+		for (Power exact : PROFILES) {
+			PowerTable table = new PowerTable(exact);
+			// some profiles solve with whatever the last level left behind
+			// for a level they don't have, only check levels they all have
+			for (int r = 1; r < exact.getResitanceLevels(); r++) {
+				for (int p = 0; p < 3000; p += 3) {
+					double expected = exact.getSpeed(p, r);
+					Assert.assertEquals(exact + " r " + r + " p " + p,
+							expected, table.getSpeed(p, r), 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void realSpeed() {
+		Power exact = new TacxFlow();
+		PowerTable table = new PowerTable(exact);
+		double max = 0;
+		for (double mass : new double[] { 85, 62.5 }) {
+			for (double slope = -0.3; slope < 0.3; slope += 0.0137) {
+				for (double p = 0; p < 2500; p += 7.3) {
+					double expected = exact.getRealSpeed(mass, slope, p);
+					double error = Math.abs(expected
+							- table.getRealSpeed(mass, slope, p));
+					max = Math.max(max, error);
+				}
+			}
+		}
+		// worst when coasting on the flat, where speed goes with the square
+		// root of the slope
+		Assert.assertTrue("max real speed error " + max, max < 0.05);
+	}
+
+	@Test
+	public void shared() {
+		Power p = new TacxFlow();
+		Assert.assertSame(PowerTable.of(p), PowerTable.of(new TacxFlow()));
+		Assert.assertSame(PowerTable.of(p), PowerTable.of(PowerTable.of(p)));
+		Assert.assertEquals(p.toString(), PowerTable.of(p).toString());
+	}
+}
@@ -16,7 +16,6 @@
 package com.wattzap.utils;
 
 import java.io.FileReader;
-import java.util.ArrayList;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -25,6 +24,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.view.training.TrainingAnalysis;
 
@@ -36,7 +36,7 @@ public class FitImporterTest {
 			String file = "resources/test/Lauteret-2014_10_16.fit";
 			FitImporter handler = new FitImporter(file);
 
-			ArrayList<Telemetry> gpxData = handler.data;
+			TelemetrySeries gpxData = handler.data;
 			Telemetry last = gpxData.get(gpxData.size() - 1);
 			System.out.println(last);
 			Assert.assertEquals(last.getDistanceKM(), 30.369, 0.001);
@@ -55,7 +55,7 @@ public class FitImporterTest {
 
 		FitImporter fitImporter = new FitImporter(fitFilename);
 		long time = 0;
-		for (Telemetry t : fitImporter.data) {
+		for (Telemetry t : fitImporter.data.toList()) {
 			if (time == 0) {
 				time = t.getTime();
 			}
@@ -78,13 +78,13 @@ public class FitImporterTest {
 			FileReader r = new FileReader(file);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> data = handler.data;
-			Telemetry last = data.get(data.size() - 1);
-			if (last.getDistanceMeters() == 0) {
-				last.setDistanceMeters(handler.distance);// hack if no distance data
+			TelemetrySeries data = handler.data;
+			int last = data.size() - 1;
+			if (data.getDistanceMeters(last) == 0) {
+				data.setDistanceMeters(last, handler.distance);// hack if no distance data
 			}
-			for (Telemetry t : data) {
-				System.out.println(t.getPower());
+			for (int i = 0; i < data.size(); i++) {
+				System.out.println(data.getPower(i));
 			}
 			WorkoutData d = TrainingAnalysis.analyze(data);
 			d.setFtp(220); // TODO !!!!
@@ -29,6 +29,7 @@ import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.wattzap.model.UserPreferences;
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.view.training.TrainingAnalysis;
 
@@ -46,7 +47,7 @@ public class GpxImporterTest {
 			FileReader r = new FileReader(file);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> gpxData = handler.data;
+			TelemetrySeries gpxData = handler.data;
 			Telemetry last = gpxData.get(gpxData.size() - 1);
 			Assert.assertEquals(last.getDistanceKM(), 32.557, 0.001);
 		} catch (Exception e) {
@@ -68,10 +69,10 @@ public class GpxImporterTest {
 			FileReader r = new FileReader(file);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> gpxData = handler.data;
+			TelemetrySeries gpxData = handler.data;
 
 			TcxWriter writer = new TcxWriter();
-			writer.save(gpxData, 0);
+			writer.save(gpxData.toList(), 0);
 
 			XMLReader xrTcx = XMLReaderFactory.createXMLReader();
 			TcxImporter tcxHandler = new TcxImporter();
@@ -87,7 +88,7 @@ public class GpxImporterTest {
 			r = new FileReader(fileName);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> tcxData = tcxHandler.data;
+			TelemetrySeries tcxData = tcxHandler.data;
 			Assert.assertEquals(tcxData.size(), gpxData.size());
 			// go through point by point
 			for (int i = 0; i < tcxData.size(); i++) {
@@ -116,7 +117,7 @@ public class GpxImporterTest {
 			FileReader r = new FileReader(file);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> gpxData = handler.data;
+			TelemetrySeries gpxData = handler.data;
 
 			FitlogImporter flHandler = new FitlogImporter();
 			xr.setContentHandler(flHandler);
@@ -126,17 +127,17 @@ public class GpxImporterTest {
 			xr.parse(new InputSource(r));
 
 			ArrayList<Telemetry> fitData = flHandler.data;
-			long first = gpxData.get(0).getTime();
+			long first = gpxData.getTime(0);
 			int count = 0;
-			for (Telemetry t : gpxData) {
-				long time = t.getTime() - first;
+			for (int i = 0; i < gpxData.size(); i++) {
+				long time = gpxData.getTime(i) - first;
 				Telemetry fl = fitData.get(count);
 				if (time < fl.getTime()) {
-					t.setCadence(fl.getCadence());
-					t.setHeartRate(fl.getHeartRate());
+					gpxData.setCadence(i, fl.getCadence());
+					gpxData.setHeartRate(i, fl.getHeartRate());
 				} else {
-					t.setCadence(fl.getCadence());
-					t.setHeartRate(fl.getHeartRate());
+					gpxData.setCadence(i, fl.getCadence());
+					gpxData.setHeartRate(i, fl.getHeartRate());
 					count++;
 				}
 
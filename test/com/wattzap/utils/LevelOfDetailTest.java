@@ -0,0 +1,82 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LevelOfDetailTest {
+
+	@Test
+	public void keepsPeaks() {
+		Random r = new Random(1);
+		double[] values = new double[20000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = r.nextInt(400);
+		}
+		LevelOfDetail lod = new LevelOfDetail(values);
+
+		for (int n = 0; n < 500; n++) {
+			int from = r.nextInt(values.length);
+			int to = from + 1 + r.nextInt(values.length - from);
+			int buckets = 1 + r.nextInt(2000);
+			int[] selected = lod.select(from, to, buckets);
+
+			Assert.assertEquals(from, selected[0]);
+			Assert.assertEquals(to - 1, selected[selected.length - 1]);
+			Assert.assertTrue(selected.length <= 2 * buckets + 6);
+			if (to - from <= 2 * buckets) {
+				Assert.assertEquals(to - from, selected.length);
+			}
+
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				min = Math.min(min, values[i]);
+				max = Math.max(max, values[i]);
+			}
+			double lo = Double.MAX_VALUE;
+			double hi = -Double.MAX_VALUE;
+			for (int i = 0; i < selected.length; i++) {
+				if (i > 0) {
+					Assert.assertTrue(selected[i] > selected[i - 1]);
+				}
+				lo = Math.min(lo, lod.getValue(selected[i]));
+				hi = Math.max(hi, lod.getValue(selected[i]));
+			}
+			Assert.assertEquals(min, lo, 0);
+			Assert.assertEquals(max, hi, 0);
+		}
+	}
+
+	@Test
+	public void small() {
+		LevelOfDetail lod = new LevelOfDetail(new double[] { 5 });
+		Assert.assertArrayEquals(new int[] { 0 }, lod.select(0, 1, 100));
+		Assert.assertEquals(0, new LevelOfDetail(new double[0]).select(0, 0,
+				100).length);
+
+		// a single spike survives heavy downsampling
+		double[] values = new double[1000];
+		values[777] = 1;
+		int[] selected = new LevelOfDetail(values).select(0, 1000, 10);
+		Assert.assertTrue(selected.length <= 26);
+		Assert.assertTrue(Arrays.binarySearch(selected, 777) >= 0);
+	}
+}
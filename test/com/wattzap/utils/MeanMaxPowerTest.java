@@ -0,0 +1,88 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.utils;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
+
+public class MeanMaxPowerTest {
+	@Test
+	public void bestWindow() {
+		// 100W with a 10 second 300W effort in the middle
+		int[] power = new int[600];
+		for (int i = 0; i < power.length; i++) {
+			power[i] = (i >= 300 && i < 310) ? 300 : 100;
+		}
+		MeanMaxPower mmp = new MeanMaxPower(power);
+
+		Assert.assertEquals(300, mmp.get(5));
+		Assert.assertEquals(300, mmp.get(10));
+		Assert.assertEquals(200, mmp.get(20));
+		Assert.assertEquals(110, mmp.get(200));
+		Assert.assertEquals(0, mmp.get(601));
+		// not on the curve, computed exactly
+		Assert.assertEquals(125, mmp.get(80));
+		Assert.assertEquals(300 * 10 + 100 * 117, (int) (mmp.best(127) * 127));
+	}
+
+	@Test
+	public void resample() {
+		TelemetrySeries data = new TelemetrySeries();
+		long time = 0;
+		for (int i = 0; i < 10; i++) {
+			data.add(sample(time, 200));
+			time += 5000;
+		}
+		// stopped for 10 minutes
+		time += 600000;
+		data.add(sample(time, 100));
+
+		int[] power = MeanMaxPower.toSeconds(data);
+		// 9 gaps of 5s then 1s of power and 604s stopped
+		Assert.assertEquals(45 + 605, power.length);
+		Assert.assertEquals(200, power[44]);
+		Assert.assertEquals(100, power[45]);
+		Assert.assertEquals(0, power[46]);
+	}
+
+	@Test
+	public void merge() {
+		int[] shortHard = new int[60];
+		Arrays.fill(shortHard, 400);
+		int[] longEasy = new int[1200];
+		Arrays.fill(longEasy, 200);
+
+		MeanMaxPower curve = new MeanMaxPower();
+		curve.merge(new MeanMaxPower(shortHard));
+		curve.merge(new MeanMaxPower(longEasy));
+
+		Assert.assertEquals(400, curve.get(60));
+		Assert.assertEquals(200, curve.get(1200));
+		Assert.assertEquals(0, curve.get(3600));
+	}
+
+	private Telemetry sample(long time, int power) {
+		Telemetry t = new Telemetry();
+		t.setTime(time);
+		t.setPower(power);
+		return t;
+	}
+}
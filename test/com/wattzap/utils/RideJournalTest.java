@@ -0,0 +1,132 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.wattzap.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
+
+public class RideJournalTest {
+	File f;
+
+	@Before
+	public void setup() throws IOException {
+		f = File.createTempFile("journal", ".wzj");
+	}
+
+	@After
+	public void tearDown() {
+		f.delete();
+	}
+
+	@Test
+	public void readBack() throws IOException {
+		write(RideJournal.create(f), 0, 100);
+
+		TelemetrySeries data = RideJournal.read(f);
+		Assert.assertEquals(100, data.size());
+		Assert.assertEquals(99000, data.getTime(99));
+		Assert.assertEquals(199, data.getPower(99));
+		Assert.assertEquals(1.5, data.getLatitude(99), 0);
+		Assert.assertEquals(990.0, data.getDistanceMeters(99), 0);
+	}
+
+	@Test
+	public void recover() throws IOException {
+		write(RideJournal.create(f), 0, 100);
+
+		// torn write at the end
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.seek(raf.length());
+		raf.write(new byte[] { 1, 2, 3, 4, 5 });
+		raf.close();
+		Assert.assertEquals(100, RideJournal.read(f).size());
+
+		// corrupt record 50, later records are dropped
+		raf = new RandomAccessFile(f, "rw");
+		raf.seek(16 + 50 * 76 + 10);
+		raf.write(0xff);
+		raf.close();
+		Assert.assertEquals(50, RideJournal.read(f).size());
+
+		// carries on after the last good record
+		RideJournal journal = RideJournal.append(f);
+		Assert.assertEquals(50, journal.getRecords());
+		write(journal, 50, 10);
+		TelemetrySeries data = RideJournal.read(f);
+		Assert.assertEquals(60, data.size());
+		Assert.assertEquals(59000, data.getTime(59));
+	}
+
+	@Test
+	public void notJournal() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.write(new byte[100]);
+		raf.close();
+		Assert.assertTrue(RideJournal.read(f).isEmpty());
+	}
+
+	@Test
+	public void readLegacy() throws IOException {
+		File legacy = File.createTempFile("journal", ".ser");
+		try {
+			ObjectOutputStream out = new ObjectOutputStream(
+					new FileOutputStream(legacy));
+			for (int i = 0; i < 20; i++) {
+				Telemetry t = new Telemetry();
+				t.setTime(i * 1000L);
+				t.setHeartRate(120 + i);
+				t.setCadence(90);
+				out.writeObject(t);
+			}
+			// torn write at the end
+			out.write(new byte[] { 1, 2, 3 });
+			out.close();
+
+			TelemetrySeries data = RideJournal.readLegacy(legacy);
+			Assert.assertEquals(20, data.size());
+			Assert.assertEquals(19000, data.getTime(19));
+			Assert.assertEquals(139, data.getHeartRate(19));
+			Assert.assertEquals(90, data.getCadence(19));
+		} finally {
+			legacy.delete();
+		}
+		Assert.assertTrue(RideJournal.readLegacy(legacy).isEmpty());
+	}
+
+	private void write(RideJournal journal, int from, int count)
+			throws IOException {
+		Telemetry t = new Telemetry();
+		for (int i = from; i < from + count; i++) {
+			t.setTime(i * 1000L);
+			t.setPower(100 + i);
+			t.setDistanceMeters(i * 10.0);
+			t.setLatitude(1.5);
+			journal.write(t);
+		}
+		journal.close();
+	}
+}
@@ -0,0 +1,79 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScatterPointsTest {
+
+	@Test
+	public void binAndSelect() {
+		Random r = new Random(1);
+		ScatterPoints points = new ScatterPoints();
+		for (int i = 0; i < 10000; i++) {
+			points.add(r.nextInt(600), 40 + r.nextInt(150));
+		}
+		Assert.assertEquals(10000, points.size());
+		Assert.assertEquals(0, points.getMinX(), 0);
+		Assert.assertEquals(599, points.getMaxX(), 0);
+		Assert.assertEquals(40, points.getMinY(), 0);
+		Assert.assertEquals(189, points.getMaxY(), 0);
+
+		// whole plot, every point in a cell
+		int[] counts = points.bin(0, 599, 40, 189, 30, 15);
+		Assert.assertEquals(10000, sum(counts));
+
+		// zoomed in
+		double x0 = 100, x1 = 200, y0 = 60, y1 = 70;
+		int inside = 0;
+		for (int i = 0; i < points.size(); i++) {
+			double x = points.getX(i);
+			double y = points.getY(i);
+			if (x >= x0 && x <= x1 && y >= y0 && y <= y1) {
+				inside++;
+			}
+		}
+		counts = points.bin(x0, x1, y0, y1, 10, 10);
+		Assert.assertEquals(inside, sum(counts));
+		// x 100-109.99 and y 60-60.99 in the first cell
+		int first = 0;
+		for (int i = 0; i < points.size(); i++) {
+			if (points.getX(i) < 110 && points.getX(i) >= 100
+					&& points.getY(i) == 60) {
+				first++;
+			}
+		}
+		Assert.assertEquals(first, counts[0]);
+
+		int[] selected = points.select(x0, x1, y0, y1, inside);
+		Assert.assertEquals(inside, selected.length);
+		for (int i : selected) {
+			Assert.assertTrue(points.getX(i) >= x0 && points.getY(i) <= y1);
+		}
+		Assert.assertNull(points.select(x0, x1, y0, y1, inside - 1));
+	}
+
+	private static int sum(int[] counts) {
+		int sum = 0;
+		for (int c : counts) {
+			sum += c;
+		}
+		return sum;
+	}
+}
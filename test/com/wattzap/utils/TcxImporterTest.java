@@ -16,7 +16,6 @@
 package com.wattzap.utils;
 
 import java.io.FileReader;
-import java.util.ArrayList;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
@@ -27,6 +26,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
 import com.wattzap.model.dto.WorkoutData;
 import com.wattzap.view.training.TrainingAnalysis;
 
@@ -45,7 +45,7 @@ public class TcxImporterTest {
 			FileReader r = new FileReader(file);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> gpxData = handler.data;
+			TelemetrySeries gpxData = handler.data;
 			Telemetry last = gpxData.get(gpxData.size() - 1);
 			Assert.assertEquals(last.getDistanceKM(), 20.266, 0.001);
 		} catch (Exception e) {
@@ -67,13 +67,13 @@ public class TcxImporterTest {
 			FileReader r = new FileReader(file);
 			xr.parse(new InputSource(r));
 
-			ArrayList<Telemetry> data = handler.data;
-			Telemetry last = data.get(data.size() - 1);
-			if (last.getDistanceMeters() == 0) {
-				last.setDistanceMeters(handler.distance);// hack if no distance data
+			TelemetrySeries data = handler.data;
+			int last = data.size() - 1;
+			if (data.getDistanceMeters(last) == 0) {
+				data.setDistanceMeters(last, handler.distance);// hack if no distance data
 			}
-			for (Telemetry t : data) {
-				System.out.println(t.getPower());
+			for (int i = 0; i < data.size(); i++) {
+				System.out.println(data.getPower(i));
 			}
 			WorkoutData d = TrainingAnalysis.analyze(data);
 			d.setFtp(220); // TODO !!!!
@@ -0,0 +1,142 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wattzap.controller.DistributionAccessor;
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
+
+public class TimeHistogramTest {
+	static final int[] SCALES = { 3, 5, 10, 15, 20, 25, 30, 40, 50 };
+
+	@Test
+	public void matchesScan() {
+		TelemetrySeries[] rides = rides();
+		DistributionAccessor da = new DistributionAccessor() {
+			public int getValue(TelemetrySeries t, int i) {
+				return t.getPower(i);
+			}
+		};
+		TimeHistogram histogram = TimeHistogram.of(rides, da);
+
+		for (int scale : SCALES) {
+			for (boolean keepZeroes : new boolean[] { true, false }) {
+				da.setBucketSize(scale);
+				da.setKeepZeroes(keepZeroes);
+				check(scan(rides, da), histogram.getBuckets(da));
+			}
+		}
+	}
+
+	@Test
+	public void zeroes() {
+		TelemetrySeries[] rides = rides();
+		// heart rate zones, zero when not pedalling
+		DistributionAccessor da = new DistributionAccessor() {
+			public int getValue(TelemetrySeries t, int i) {
+				if (t.getHeartRate(i) < 30) {
+					return IGNORE;
+				}
+				return t.getHeartRate(i);
+			}
+
+			public boolean isZero(TelemetrySeries t, int i) {
+				return t.getPower(i) < 5;
+			}
+
+			public int getKey(int v) {
+				return v / 40;
+			}
+		};
+		TimeHistogram histogram = TimeHistogram.of(rides, da);
+
+		da.setKeepZeroes(true);
+		check(scan(rides, da), histogram.getBuckets(da));
+		da.setKeepZeroes(false);
+		check(scan(rides, da), histogram.getBuckets(da));
+	}
+
+	@Test
+	public void merge() {
+		TelemetrySeries[] rides = rides();
+		DistributionAccessor da = new DistributionAccessor() {
+			public int getValue(TelemetrySeries t, int i) {
+				return t.getCadence(i);
+			}
+		};
+		TimeHistogram all = TimeHistogram.of(rides, da);
+		TimeHistogram merged = new TimeHistogram();
+		for (int i = rides.length - 1; i >= 0; i--) {
+			merged.merge(new TimeHistogram(rides[i], da));
+		}
+		for (int v = -1; v < 200; v++) {
+			Assert.assertEquals(all.getTime(v), merged.getTime(v));
+		}
+		Assert.assertEquals(0, all.getTime(100000));
+	}
+
+	// the old DistributionGraph loop
+	private static TreeMap<Integer, Long> scan(TelemetrySeries[] rides,
+			DistributionAccessor da) {
+		TreeMap<Integer, Long> data = new TreeMap<Integer, Long>();
+		for (TelemetrySeries ride : rides) {
+			for (int t = 1; t < ride.size(); t++) {
+				int key = da.getKey(ride, t);
+				if (key != -1) {
+					long interval = ride.getTime(t) - ride.getTime(t - 1);
+					Long time = data.get(key);
+					data.put(key, time == null ? interval : time + interval);
+				}
+			}
+		}
+		return data;
+	}
+
+	private static void check(TreeMap<Integer, Long> expected, long[] buckets) {
+		for (int key = 0; key < buckets.length; key++) {
+			Long time = expected.get(key);
+			Assert.assertEquals(time == null ? 0 : time, buckets[key]);
+		}
+		Assert.assertEquals(expected.isEmpty() ? 0 : expected.lastKey() + 1,
+				buckets.length);
+	}
+
+	private static TelemetrySeries[] rides() {
+		Random r = new Random(1);
+		TelemetrySeries[] rides = new TelemetrySeries[6];
+		for (int n = 0; n < rides.length; n++) {
+			rides[n] = new TelemetrySeries();
+			long time = 0;
+			for (int i = 0; i < 3000; i++) {
+				Telemetry t = new Telemetry();
+				time += 500 + r.nextInt(1000);
+				t.setTime(time);
+				// no power sensor at the start of some rides
+				t.setPower(i < 10 * n ? -1 : r.nextInt(400 + n * 100));
+				t.setCadence(r.nextInt(120));
+				t.setHeartRate(r.nextInt(190));
+				rides[n].add(t);
+			}
+		}
+		return rides;
+	}
+}
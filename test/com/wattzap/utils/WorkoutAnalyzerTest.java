@@ -0,0 +1,114 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wattzap.utils;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.wattzap.model.dto.Telemetry;
+import com.wattzap.model.dto.TelemetrySeries;
+import com.wattzap.model.dto.WorkoutData;
+import com.wattzap.view.training.TrainingAnalysis;
+
+public class WorkoutAnalyzerTest {
+
+	@Test
+	public void matchesAnalysis() {
+		Random r = new Random(1);
+		TelemetrySeries data = new TelemetrySeries();
+		WorkoutAnalyzer analyzer = new WorkoutAnalyzer();
+		long time = 1400000000000L;
+		double distance = 0;
+		for (int i = 0; i < 5000; i++) {
+			Telemetry t = new Telemetry();
+			// mostly a second apart, the odd pause or crash
+			time += i % 1000 == 999 ? 90000 : 1000 + r.nextInt(200);
+			distance += r.nextDouble() * 10;
+			t.setTime(time);
+			t.setDistanceMeters(distance);
+			t.setPower(i < 20 ? -1 : 100 + r.nextInt(250));
+			t.setHeartRate(i < 50 ? -1 : 120 + r.nextInt(40));
+			t.setCadence(r.nextInt(110));
+			data.add(t);
+			analyzer.add(t);
+		}
+
+		WorkoutData expected = TrainingAnalysis.analyze(data);
+		WorkoutData actual = analyzer.getWorkoutData();
+		Assert.assertEquals(expected.getTime(), actual.getTime());
+		Assert.assertEquals(expected.getDate(), actual.getDate());
+		Assert.assertEquals(expected.getDistanceMeters(),
+				actual.getDistanceMeters(), 0.0001);
+		Assert.assertEquals(expected.getMaxPower(), actual.getMaxPower());
+		Assert.assertEquals(expected.getAvePower(), actual.getAvePower());
+		Assert.assertEquals(expected.getTotalPower(), actual.getTotalPower());
+		Assert.assertEquals(expected.getQuadraticPower(),
+				actual.getQuadraticPower());
+		Assert.assertEquals(expected.getMaxHR(), actual.getMaxHR());
+		Assert.assertEquals(expected.getMinHR(), actual.getMinHR());
+		Assert.assertEquals(expected.getAveHR(), actual.getAveHR());
+		Assert.assertEquals(expected.getFtHR(), actual.getFtHR());
+		Assert.assertEquals(expected.getMaxCadence(), actual.getMaxCadence());
+		Assert.assertEquals(expected.getAveCadence(), actual.getAveCadence());
+		Assert.assertEquals(expected.getFiveSecondPwr(),
+				actual.getFiveSecondPwr());
+		Assert.assertEquals(expected.getOneMinutePwr(),
+				actual.getOneMinutePwr());
+		Assert.assertEquals(expected.getFiveMinutePwr(),
+				actual.getFiveMinutePwr());
+		Assert.assertEquals(expected.getTwentyMinutePwr(),
+				actual.getTwentyMinutePwr());
+		Assert.assertArrayEquals(expected.getPowerCurve(),
+				actual.getPowerCurve(), 0);
+		Assert.assertTrue(actual.getFtHR() > 0);
+
+		analyzer.reset();
+		Assert.assertNull(analyzer.getWorkoutData());
+	}
+
+	@Test
+	public void normalizedPower() {
+		WorkoutAnalyzer analyzer = new WorkoutAnalyzer();
+		// steady 200W for 10 minutes
+		for (int i = 0; i <= 600; i++) {
+			analyzer.add(i * 1000L, 200, 140, 90, i * 10);
+		}
+		Assert.assertEquals(200, analyzer.getNormalizedPower());
+		WorkoutData data = analyzer.getWorkoutData();
+		data.setFtp(250);
+		Assert.assertEquals(200, data.getNormalizedPower());
+		Assert.assertEquals(0.8, data.getIntensity(), 0.0001);
+		// 0.8 * 0.8 * 1/6 hour * 100
+		Assert.assertEquals(10, data.getStress());
+
+		// alternating 0 and 400W minutes rates higher than the 200W average
+		analyzer.reset();
+		for (int i = 0; i <= 1200; i++) {
+			analyzer.add(i * 1000L, (i / 60) % 2 == 0 ? 0 : 400, 140, 90,
+					i * 10);
+		}
+		data = analyzer.getWorkoutData();
+		data.setFtp(250);
+		Assert.assertEquals(200, data.getAvePower(), 1);
+		// the 30 second average ramps over each change
+		Assert.assertEquals(308, data.getNormalizedPower());
+		Assert.assertEquals(1.232, data.getIntensity(), 0.0001);
+		// 1.232 * 1.232 * 1/3 hour * 100
+		Assert.assertEquals(50, data.getStress());
+	}
+}
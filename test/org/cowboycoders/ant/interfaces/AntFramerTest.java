@@ -0,0 +1,98 @@
+/* This file is part of Wattzap Community Edition.
+ *
+ * Wattzap Community Edtion is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Wattzap Community Edition is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Wattzap.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package org.cowboycoders.ant.interfaces;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AntFramerTest {
+	// broadcast data on channel 0
+	static final byte[] MSG = { 9, 0x4e, 0, 1, 2, 3, 4, 5, 6, 7, 8 };
+
+	@Test
+	public void splitMessages() {
+		AntFramer framer = new AntFramer(64);
+		byte[] stream = concat(new byte[] { 0, 0 }, frame(MSG), frame(MSG));
+
+		// fed a few bytes at a time, messages straddle reads
+		int found = 0;
+		for (int i = 0; i < stream.length; i += 5) {
+			int len = Math.min(5, stream.length - i);
+			framer.add(Arrays.copyOfRange(stream, i, i + len), len);
+			byte[] msg;
+			while ((msg = framer.next()) != null) {
+				Assert.assertArrayEquals(MSG, msg);
+				found++;
+			}
+		}
+		Assert.assertEquals(2, found);
+		Assert.assertEquals(0, framer.available());
+		Assert.assertEquals(2, framer.getSkipped());
+	}
+
+	@Test
+	public void badChecksum() {
+		AntFramer framer = new AntFramer(64);
+		byte[] bad = frame(MSG);
+		bad[bad.length - 1]++;
+		byte[] stream = concat(bad, frame(MSG));
+		framer.add(stream, stream.length);
+
+		Assert.assertArrayEquals(MSG, framer.next());
+		Assert.assertNull(framer.next());
+		Assert.assertEquals(1, framer.getBadChecksums());
+	}
+
+	@Test
+	public void wraps() {
+		AntFramer framer = new AntFramer(16);
+		byte[] msg = { 1, 0x40, 7 };
+		byte[] f = frame(msg);
+		for (int i = 0; i < 100; i++) {
+			framer.add(f, f.length);
+			Assert.assertArrayEquals(msg, framer.next());
+		}
+		Assert.assertEquals(0, framer.available());
+	}
+
+	private static byte[] frame(byte[] msg) {
+		byte[] f = new byte[msg.length + 2];
+		f[0] = AntFramer.SYNC;
+		byte checksum = AntFramer.SYNC;
+		for (int i = 0; i < msg.length; i++) {
+			f[i + 1] = msg[i];
+			checksum ^= msg[i];
+		}
+		f[f.length - 1] = checksum;
+		return f;
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		int n = 0;
+		for (byte[] p : parts) {
+			n += p.length;
+		}
+		byte[] all = new byte[n];
+		n = 0;
+		for (byte[] p : parts) {
+			System.arraycopy(p, 0, all, n, p.length);
+			n += p.length;
+		}
+		return all;
+	}
+}